@@ -0,0 +1,444 @@
+package export;
+
+// Project imports:
+//      Document
+
+import org.apache.commons.lang.time.FastDateFormat;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Compiled CSV-line layout of a deposit type.
+ * <p>
+ * Column definitions are compiled once into a flat array of document field extractors separated by pre-encoded
+ * segments (delimiters, constant and empty values), so rows are encoded by a single loop without per-field type
+ * dispatch. Constant, composite and date style columns exist only as definitions and are resolved on compilation.
+ */
+public final class ColumnPlan {
+
+    /**
+     * Type of the column values
+     */
+    public enum ColumnType {
+        STRING,
+        DECIMAL,
+        DATE
+    }
+
+    /**
+     * Date column style, the format of the style is taken from the {@link ExportContext}
+     */
+    public enum DateStyle {
+        DATE_TIME,
+        DATE
+    }
+
+    /**
+     * Column definition
+     */
+    public interface Column {
+
+        /**
+         * @param document Document
+         *
+         * @return Typed column value of the document: {@link String}, {@link Number} or {@link Date}
+         */
+        Object getValue(Document document);
+
+        /**
+         * @return Type of the values or <tt>null</tt> for the empty column
+         */
+        ColumnType getType();
+    }
+
+    /**
+     * Compiled value writer of a column
+     */
+    public interface FieldExtractor {
+
+        /**
+         * Appends column value of the document
+         *
+         * @param document Document
+         * @param row      Target buffer
+         */
+        void append(Document document, CsvRowBuffer row);
+    }
+
+    /**
+     * Column written by itself, the columns created outside the factory methods must read no document fields,
+     * see {@link #getProjection()}
+     */
+    public interface ExtractorColumn extends Column, FieldExtractor {
+    }
+
+    /**
+     * Column reading a single document field, the other columns read no fields
+     */
+    private interface FieldColumn extends Column {
+
+        String getField();
+    }
+
+    private static final Column EMPTY = new ConstantColumn(null);
+
+    // segments[i] precedes fields[i], the last segment ends the line
+    private final byte[][] segments;
+    private final FieldExtractor[] fields;
+
+    // Source columns for typed access
+    private final Column[] columns;
+
+    // Document fields read by the columns
+    private final Set<String> projection;
+
+    private ColumnPlan(byte[][] segments, FieldExtractor[] fields, Column[] columns, Set<String> projection) {
+        this.segments = segments;
+        this.fields = fields;
+        this.columns = columns;
+        this.projection = projection;
+    }
+
+    /**
+     * Appends CSV-line of the document
+     *
+     * @param document Document
+     * @param row      Target buffer
+     */
+    public void append(Document document, CsvRowBuffer row) {
+        for (int i = 0; i < fields.length; i++) {
+            row.append(segments[i]);
+            fields[i].append(document, row);
+        }
+        row.append(segments[fields.length]);
+    }
+
+    /**
+     * @param column   Column index
+     * @param document Document
+     *
+     * @return Typed value of the column, <tt>null</tt> for empty columns
+     */
+    public Object getValue(int column, Document document) {
+        return columns[column].getValue(document);
+    }
+
+    /**
+     * @param column Column index
+     *
+     * @return Type of the column or <tt>null</tt> for the empty column
+     */
+    public ColumnType getType(int column) {
+        return columns[column].getType();
+    }
+
+    public int getColumnCount() {
+        return columns.length;
+    }
+
+    /**
+     * @return Names of the document fields read by the columns in the columns order
+     */
+    public Set<String> getProjection() {
+        return projection;
+    }
+
+    /**
+     * Compiles columns into the plan, adjacent constant values and delimiters are merged into a single segment
+     *
+     * @param columns Columns in the CSV-line order
+     * @param context Export settings: empty field value, delimiter, date formats
+     *
+     * @return Compiled plan
+     *
+     * @throws IllegalArgumentException if a column is neither a definition of the factory methods
+     *                                  nor an {@link ExtractorColumn}
+     */
+    public static ColumnPlan compile(List<Column> columns, ExportContext context) {
+        List<byte[]> segments = new ArrayList<>();
+        List<FieldExtractor> fields = new ArrayList<>();
+        Set<String> projection = new LinkedHashSet<>();
+        StringBuilder segment = new StringBuilder();
+        for (int i = 0; i < columns.size(); i++) {
+            if (i > 0) {
+                segment.append(context.getDelimiter());
+            }
+            for (Column part : flatten(columns.get(i))) {
+                if (part instanceof FieldColumn) {
+                    projection.add(((FieldColumn) part).getField());
+                }
+                if (part == EMPTY) {
+                    segment.append(context.getEmptyFieldValue());
+                } else if (part instanceof ConstantColumn) {
+                    segment.append(((ConstantColumn) part).value);
+                } else if (part instanceof StyledDateFieldColumn) {
+                    segments.add(encode(segment));
+                    fields.add(((StyledDateFieldColumn) part).bind(context));
+                    segment.setLength(0);
+                } else if (part instanceof ExtractorColumn) {
+                    segments.add(encode(segment));
+                    fields.add((ExtractorColumn) part);
+                    segment.setLength(0);
+                } else {
+                    throw new IllegalArgumentException(String.format("Column %s of %s cannot be compiled", i + 1, part));
+                }
+            }
+        }
+        segment.append(context.getEndOfLine());
+        segments.add(encode(segment));
+        return new ColumnPlan(
+                segments.toArray(new byte[segments.size()][]),
+                fields.toArray(new FieldExtractor[fields.size()]),
+                columns.toArray(new Column[columns.size()]),
+                Collections.unmodifiableSet(projection)
+        );
+    }
+
+    /**
+     * @return Column with the empty field value
+     */
+    public static Column empty() {
+        return EMPTY;
+    }
+
+    /**
+     * @return Column with the constant value
+     */
+    public static Column constant(String value) {
+        return new ConstantColumn(value);
+    }
+
+    /**
+     * @return Column with the string field value, <tt>null</tt> is written as an empty string
+     */
+    public static Column stringField(String field) {
+        return new StringFieldColumn(field, null);
+    }
+
+    /**
+     * @return Column with the string field value, <tt>null</tt> is written as <tt>nullValue</tt>
+     */
+    public static Column stringField(String field, String nullValue) {
+        return new StringFieldColumn(field, nullValue);
+    }
+
+    /**
+     * @return Column with the number field value as {@link Object#toString()} writes it
+     */
+    public static Column numberField(String field) {
+        return new NumberFieldColumn(field);
+    }
+
+    /**
+     * @return Column with the formatted date field value
+     */
+    public static Column dateField(String field, FastDateFormat format, CsvRowBuffer.DateResolution resolution) {
+        return new DateFieldColumn(field, format, resolution);
+    }
+
+    /**
+     * @return Column with the date field value formatted by the format of the style from the export context
+     */
+    public static Column dateField(String field, DateStyle style) {
+        return new StyledDateFieldColumn(field, style);
+    }
+
+    /**
+     * @return Column with the concatenated values of the parts
+     */
+    public static Column concat(Column... parts) {
+        return new CompositeColumn(parts);
+    }
+
+    private static List<Column> flatten(Column column) {
+        if (column instanceof CompositeColumn) {
+            List<Column> parts = new ArrayList<>();
+            for (Column part : ((CompositeColumn) column).parts) {
+                parts.addAll(flatten(part));
+            }
+            return parts;
+        }
+        return Arrays.asList(column);
+    }
+
+    private static byte[] encode(CharSequence value) {
+        return value.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static final class ConstantColumn implements Column {
+
+        private final String value;
+
+        private ConstantColumn(String value) {
+            this.value = value;
+        }
+
+        @Override
+        public Object getValue(Document document) {
+            return value;
+        }
+
+        @Override
+        public ColumnType getType() {
+            return value != null ? ColumnType.STRING : null;
+        }
+    }
+
+    private static final class CompositeColumn implements Column {
+
+        private final Column[] parts;
+
+        private CompositeColumn(Column[] parts) {
+            this.parts = parts.clone();
+        }
+
+        @Override
+        public Object getValue(Document document) {
+            StringBuilder value = new StringBuilder();
+            for (Column part : parts) {
+                Object partValue = part.getValue(document);
+                if (partValue != null) {
+                    value.append(partValue);
+                }
+            }
+            return value.toString();
+        }
+
+        @Override
+        public ColumnType getType() {
+            return ColumnType.STRING;
+        }
+    }
+
+    private static final class StringFieldColumn implements FieldColumn, ExtractorColumn {
+
+        private final String field;
+        private final String nullValue;
+
+        private StringFieldColumn(String field, String nullValue) {
+            this.field = field;
+            this.nullValue = nullValue;
+        }
+
+        @Override
+        public void append(Document document, CsvRowBuffer row) {
+            row.append((String) getValue(document));
+        }
+
+        @Override
+        public Object getValue(Document document) {
+            String value = document.getStringFieldValue(field);
+            return value != null ? value : nullValue;
+        }
+
+        @Override
+        public ColumnType getType() {
+            return ColumnType.STRING;
+        }
+
+        @Override
+        public String getField() {
+            return field;
+        }
+    }
+
+    private static final class NumberFieldColumn implements FieldColumn, ExtractorColumn {
+
+        private final String field;
+
+        private NumberFieldColumn(String field) {
+            this.field = field;
+        }
+
+        @Override
+        public void append(Document document, CsvRowBuffer row) {
+            row.appendNumber(document.getFieldValue(field));
+        }
+
+        @Override
+        public Object getValue(Document document) {
+            return document.getFieldValue(field);
+        }
+
+        @Override
+        public ColumnType getType() {
+            return ColumnType.DECIMAL;
+        }
+
+        @Override
+        public String getField() {
+            return field;
+        }
+    }
+
+    private static final class DateFieldColumn implements FieldColumn, ExtractorColumn {
+
+        private final String field;
+        private final FastDateFormat format;
+        private final CsvRowBuffer.DateResolution resolution;
+
+        private DateFieldColumn(String field, FastDateFormat format, CsvRowBuffer.DateResolution resolution) {
+            this.field = field;
+            this.format = format;
+            this.resolution = resolution;
+        }
+
+        @Override
+        public void append(Document document, CsvRowBuffer row) {
+            row.appendDate(format, resolution, document.getFieldValue(field));
+        }
+
+        @Override
+        public Object getValue(Document document) {
+            return document.getFieldValue(field);
+        }
+
+        @Override
+        public ColumnType getType() {
+            return ColumnType.DATE;
+        }
+
+        @Override
+        public String getField() {
+            return field;
+        }
+    }
+
+    private static final class StyledDateFieldColumn implements FieldColumn {
+
+        private final String field;
+        private final DateStyle style;
+
+        private StyledDateFieldColumn(String field, DateStyle style) {
+            this.field = field;
+            this.style = style;
+        }
+
+        private FieldExtractor bind(ExportContext context) {
+            FastDateFormat format = context.getDateFormat(style);
+            return new DateFieldColumn(field, format, CsvRowBuffer.DateResolution.of(format.getPattern()));
+        }
+
+        @Override
+        public Object getValue(Document document) {
+            return document.getFieldValue(field);
+        }
+
+        @Override
+        public ColumnType getType() {
+            return ColumnType.DATE;
+        }
+
+        @Override
+        public String getField() {
+            return field;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package export;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Reader of the columnar binary export format written by {@link ColumnarExportWriter}.
+ * <p>
+ * Values are read as {@link String}, {@link BigDecimal} or {@link Date}, empty values as <tt>null</tt>.
+ * Columns which are not requested are skipped without decoding.
+ */
+public class ColumnarExportReader {
+
+    private final DataInputStream input;
+    private final List<String> names;
+    private final List<ColumnPlan.ColumnType> types;
+
+    /**
+     * Reads the header
+     *
+     * @param input Columnar data, the stream is not closed by the reader
+     *
+     * @throws IOException if the data is not in the columnar format
+     */
+    public ColumnarExportReader(InputStream input) throws IOException {
+        this.input = new DataInputStream(input);
+        byte[] magic = new byte[ColumnarExportWriter.MAGIC.length];
+        this.input.readFully(magic);
+        int version = this.input.readInt();
+        if (!Arrays.equals(magic, ColumnarExportWriter.MAGIC) || version != ColumnarExportWriter.VERSION) {
+            throw new IOException(String.format("Unsupported columnar format: version %s", version));
+        }
+        int columnCount = this.input.readInt();
+        List<String> columnNames = new ArrayList<>(columnCount);
+        List<ColumnPlan.ColumnType> columnTypes = new ArrayList<>(columnCount);
+        for (int i = 0; i < columnCount; i++) {
+            columnNames.add(this.input.readUTF());
+            columnTypes.add(ColumnPlan.ColumnType.values()[this.input.readByte()]);
+        }
+        this.names = Collections.unmodifiableList(columnNames);
+        this.types = Collections.unmodifiableList(columnTypes);
+    }
+
+    public List<String> getColumnNames() {
+        return names;
+    }
+
+    public List<ColumnPlan.ColumnType> getColumnTypes() {
+        return types;
+    }
+
+    /**
+     * Reads the next block
+     *
+     * @param columns Names of the columns to decode, values of the other columns are <tt>null</tt>
+     *
+     * @return Rows of the block or <tt>null</tt> after the last block
+     *
+     * @throws IOException on read failure or truncated data
+     */
+    public List<Object[]> readBlock(Collection<String> columns) throws IOException {
+        int rowCount = input.readInt();
+        if (rowCount == 0) {
+            return null;
+        }
+        List<Object[]> rows = new ArrayList<>(rowCount);
+        for (int row = 0; row < rowCount; row++) {
+            rows.add(new Object[names.size()]);
+        }
+        for (int column = 0; column < names.size(); column++) {
+            int length = input.readInt();
+            if (columns.contains(names.get(column))) {
+                readColumn(column, rows);
+            } else {
+                skipFully(length);
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Reads all remaining rows with all columns
+     *
+     * @return Rows
+     *
+     * @throws IOException on read failure or truncated data
+     */
+    public List<Object[]> readAll() throws IOException {
+        List<Object[]> rows = new ArrayList<>();
+        for (List<Object[]> block = readBlock(names); block != null; block = readBlock(names)) {
+            rows.addAll(block);
+        }
+        return rows;
+    }
+
+    private void readColumn(int column, List<Object[]> rows) throws IOException {
+        byte[] nulls = new byte[(rows.size() + 7) / 8];
+        input.readFully(nulls);
+        switch (types.get(column)) {
+            case DECIMAL:
+                for (int row = 0; row < rows.size(); row++) {
+                    if (!isNull(nulls, row)) {
+                        int scale = input.readInt();
+                        rows.get(row)[column] = new BigDecimal(readUnscaledValue(), scale);
+                    }
+                }
+                break;
+            case DATE:
+                for (int row = 0; row < rows.size(); row++) {
+                    if (!isNull(nulls, row)) {
+                        rows.get(row)[column] = new Date(input.readLong());
+                    }
+                }
+                break;
+            default:
+                String[] dictionary = new String[input.readInt()];
+                for (int i = 0; i < dictionary.length; i++) {
+                    dictionary[i] = input.readUTF();
+                }
+                for (int row = 0; row < rows.size(); row++) {
+                    if (!isNull(nulls, row)) {
+                        rows.get(row)[column] = dictionary[input.readInt()];
+                    }
+                }
+        }
+    }
+
+    private void skipFully(int length) throws IOException {
+        int skipped = 0;
+        while (skipped < length) {
+            int step = input.skipBytes(length - skipped);
+            if (step == 0) {
+                throw new EOFException("Unexpected end of columnar data");
+            }
+            skipped += step;
+        }
+    }
+
+    private BigInteger readUnscaledValue() throws IOException {
+        byte[] unscaledValue = new byte[input.readInt()];
+        input.readFully(unscaledValue);
+        return new BigInteger(unscaledValue);
+    }
+
+    private static boolean isNull(byte[] nulls, int row) {
+        return (nulls[row / 8] & (1 << (row % 8))) != 0;
+    }
+}
@@ -0,0 +1,258 @@
+package export;
+
+// Project imports:
+//      Document
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writer of the columnar binary export format.
+ * <p>
+ * File layout (big-endian):
+ * <pre>
+ * header:  magic "DEPC", int version, int columnCount, columnCount * (UTF name, byte type)
+ * block:   int rowCount, columnCount * (int byteLength, column data)
+ * column:  null bitmap of ceil(rowCount / 8) bytes, then the non-null values:
+ *          DECIMAL - int scale, int byteLength, unscaled value in two's-complement (BigInteger#toByteArray)
+ *          DATE    - long epoch milliseconds
+ *          STRING  - int dictionarySize, dictionarySize * UTF entry, int dictionary index per value
+ * end:     int 0
+ * </pre>
+ * Every column of a block is prefixed with its length, so readers skip columns they do not need.
+ * <p>
+ * Values are converted to the column types when the row is added, a row with a value not representable in its
+ * column type (NaN or infinite number, date of another type) is rejected as a whole and the block is not affected.
+ */
+public class ColumnarExportWriter {
+
+    static final byte[] MAGIC   = {'D', 'E', 'P', 'C'};
+    static final int    VERSION = 2;
+
+    private static final int DEFAULT_BLOCK_SIZE = 4096;
+
+    private final CsvSink sink;
+    private final List<String> names;
+    private final List<ColumnPlan.ColumnType> types;
+    private final int blockSize;
+
+    private final List<Object[]> block;
+    private boolean headerWritten;
+
+    public ColumnarExportWriter(CsvSink sink, List<String> names, List<ColumnPlan.ColumnType> types) {
+        this(sink, names, types, DEFAULT_BLOCK_SIZE);
+    }
+
+    public ColumnarExportWriter(CsvSink sink, List<String> names, List<ColumnPlan.ColumnType> types, int blockSize) {
+        if (names.size() != types.size() || blockSize < 1) {
+            throw new IllegalArgumentException(String.format("Invalid columnar layout: %s columns, %s types, block size %s",
+                    names.size(), types.size(), blockSize));
+        }
+        this.sink = sink;
+        this.names = new ArrayList<>(names);
+        this.types = new ArrayList<>(types);
+        this.blockSize = blockSize;
+        this.block = new ArrayList<>(blockSize);
+    }
+
+    /**
+     * Adds the document row, a full block is written into the sink
+     *
+     * @param document   Document
+     * @param columnPlan Column plan of the document type
+     *
+     * @throws IllegalArgumentException if a value is not representable in its column type, the row is not added
+     * @throws IOException              on block write failure
+     */
+    public void addRow(Document document, ColumnPlan columnPlan) throws IOException {
+        Object[] values = new Object[types.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = toColumnValue(i, columnPlan.getValue(i, document));
+        }
+        block.add(values);
+        if (block.size() == blockSize) {
+            writeBlock();
+        }
+    }
+
+    /**
+     * Writes the last block and the end mark, the sink is not committed
+     *
+     * @throws IOException on write failure
+     */
+    public void finish() throws IOException {
+        writeBlock();
+        write(new Bytes().writeInt(0));
+    }
+
+    private void writeBlock() throws IOException {
+        if (!headerWritten) {
+            writeHeader();
+        }
+        if (block.isEmpty()) {
+            return;
+        }
+        Bytes blockBytes = new Bytes().writeInt(block.size());
+        for (int column = 0; column < types.size(); column++) {
+            byte[] columnBytes = encodeColumn(column);
+            blockBytes.writeInt(columnBytes.length).write(columnBytes);
+        }
+        write(blockBytes);
+        block.clear();
+    }
+
+    private void writeHeader() throws IOException {
+        Bytes header = new Bytes().write(MAGIC).writeInt(VERSION).writeInt(types.size());
+        for (int column = 0; column < types.size(); column++) {
+            header.writeUTF(names.get(column)).writeByte(types.get(column).ordinal());
+        }
+        write(header);
+        headerWritten = true;
+    }
+
+    private byte[] encodeColumn(int column) throws IOException {
+        BitSet nulls = new BitSet(block.size());
+        for (int row = 0; row < block.size(); row++) {
+            if (block.get(row)[column] == null) {
+                nulls.set(row);
+            }
+        }
+        Bytes bytes = new Bytes().write(toBitmap(nulls, block.size()));
+        switch (types.get(column)) {
+            case DECIMAL:
+                for (Object[] values : block) {
+                    if (values[column] != null) {
+                        BigDecimal value = (BigDecimal) values[column];
+                        byte[] unscaledValue = value.unscaledValue().toByteArray();
+                        bytes.writeInt(value.scale()).writeInt(unscaledValue.length).write(unscaledValue);
+                    }
+                }
+                break;
+            case DATE:
+                for (Object[] values : block) {
+                    if (values[column] != null) {
+                        bytes.writeLong((Long) values[column]);
+                    }
+                }
+                break;
+            default:
+                Map<String, Integer> dictionary = new HashMap<>();
+                List<String> entries = new ArrayList<>();
+                Bytes indexes = new Bytes();
+                for (Object[] values : block) {
+                    if (values[column] != null) {
+                        String value = values[column].toString();
+                        Integer index = dictionary.get(value);
+                        if (index == null) {
+                            index = entries.size();
+                            dictionary.put(value, index);
+                            entries.add(value);
+                        }
+                        indexes.writeInt(index);
+                    }
+                }
+                bytes.writeInt(entries.size());
+                for (String entry : entries) {
+                    bytes.writeUTF(entry);
+                }
+                bytes.write(indexes.toByteArray());
+        }
+        return bytes.toByteArray();
+    }
+
+    private void write(Bytes bytes) throws IOException {
+        byte[] array = bytes.toByteArray();
+        sink.write(array, 0, array.length);
+    }
+
+    private static byte[] toBitmap(BitSet bits, int size) {
+        byte[] bitmap = new byte[(size + 7) / 8];
+        for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+            bitmap[i / 8] |= 1 << (i % 8);
+        }
+        return bitmap;
+    }
+
+    /**
+     * @return Value of the column: {@link BigDecimal} for decimals, epoch milliseconds for dates,
+     *         the value itself for strings
+     */
+    private Object toColumnValue(int column, Object value) {
+        if (value == null) {
+            return null;
+        }
+        switch (types.get(column)) {
+            case DECIMAL:
+                if (value instanceof BigDecimal) {
+                    return value;
+                }
+                try {
+                    return new BigDecimal(value.toString());
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException(String.format("Invalid decimal value of column %s: %s",
+                            names.get(column), value), e);
+                }
+            case DATE:
+                if (value instanceof Date) {
+                    return ((Date) value).getTime();
+                }
+                if (value instanceof Calendar) {
+                    return ((Calendar) value).getTimeInMillis();
+                }
+                if (value instanceof Number) {
+                    return ((Number) value).longValue();
+                }
+                throw new IllegalArgumentException(String.format("Invalid date value of column %s: %s",
+                        names.get(column), value));
+            default:
+                return value;
+        }
+    }
+
+    /**
+     * Growable big-endian byte array
+     */
+    private static final class Bytes {
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream data = new DataOutputStream(bytes);
+
+        private Bytes write(byte[] value) throws IOException {
+            data.write(value);
+            return this;
+        }
+
+        private Bytes writeByte(int value) throws IOException {
+            data.writeByte(value);
+            return this;
+        }
+
+        private Bytes writeInt(int value) throws IOException {
+            data.writeInt(value);
+            return this;
+        }
+
+        private Bytes writeLong(long value) throws IOException {
+            data.writeLong(value);
+            return this;
+        }
+
+        private Bytes writeUTF(String value) throws IOException {
+            data.writeUTF(value);
+            return this;
+        }
+
+        private byte[] toByteArray() {
+            return bytes.toByteArray();
+        }
+    }
+}
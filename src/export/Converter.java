@@ -4,14 +4,26 @@ package export;
 //      Document
 //      SpecificDocumentType
 
-import org.apache.commons.lang.StringUtils;
-import org.apache.commons.lang.time.FastDateFormat;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import static export.ColumnPlan.Column;
+import static export.ColumnPlan.constant;
+import static export.ColumnPlan.dateField;
+import static export.ColumnPlan.empty;
+import static export.ColumnPlan.numberField;
+import static export.ColumnPlan.stringField;
 
 public class Converter {
 
     private static final String DELIMETER = ";";
     private static final String END_OF_LINE = "\n";
 
+    // Missing currency is concatenated to the option type as a string "null"
+    private static final String NULL_CONCATENATION_VALUE = "null";
+
     private static final String A_B_SIDE_VALUE             = "Constant business value";
     private static final String A_B_OPTION_TYPE_VALUE      = "Constant business value";
     private static final String B_IS_DELIVERABLE_VALUE     = "Constant business value";
@@ -21,10 +33,6 @@ public class Converter {
     private static final String B_UPPER_BARRIER_TYPE_VALUE = "Constant business value";
     private static final String B_LOWER_BARRIER_TYPE_VALUE = "Constant business value";
 
-    // Date formats
-    private static final FastDateFormat YYYY_MM_DD_HH_MM_SS_DATE_FORMAT = FastDateFormat.getInstance("yyyy-mm-dd hh:mm:ss");
-    private static final FastDateFormat DD_MM_YYYY_DATE_FORMAT          = FastDateFormat.getInstance("dd.MM.yyyy");
-
     /**
      * CSV-line with metadata:
      * <pre>
@@ -60,239 +68,301 @@ public class Converter {
      */
     public static final String META_LINE = "TradeID;Side;TradeDate;ValueDate;Put/Call Ccy1;Ccy1;Ccy2;Rate;Premium;PremiumCcy;Delta;IsDeliverable;OptionStyle;Barrier1;Barrier2;Version;SettCcy;OptionKind;BarrierStartDate;BarrierEndDate;Barrier1Typeid;Barrier2Typeid;CurrencyPair;Amount;StructuralDepositType;ApplicationStatus" + END_OF_LINE;
 
-    private static String emptyFieldValue = "";
+    /**  Java doc with business comment */
+    private static final Column TRADE_ID = numberField(SpecificDocumentType.FIELD_STRUCTUREID);
 
-    /**
-     * Returns CSV-line for document
-     *
-     * @param document    Document
-     * @param depositType Document type
-     *
-     * @return CSV-line
-     */
-    public static String depositToCSVLine(Document document, DepositType depositType) {
-        String[] values = {                                       // №   Field name
-                getTradeIdValue(document),                        // 1.  TradeID
-                getSideValue(),                                   // 2.  Side
-                getTradeDateValue(document),                      // 3.  TradeDate
-                getValueDateValue(document),                      // 4.  ValueDate
-                getOptionTypeValue(document),                     // 5.  Put/Call Ccy1
-                getDepositCcy1ISOValue(document),                 // 6.  Ccy1
-                getDepositCcy2ISOValue(document, depositType),    // 7.  Ccy2
-                getRateValue(document),                           // 8.  Rate
-                getPremiumValue(document, depositType),           // 9.  Premium
-                getPremiumCcyValue(document, depositType),        // 10. PremiumCcy
-                getDeltaValue(document, depositType),             // 11. Delta
-                getIsDeliverableValue(depositType),               // 12. IsDeliverable
-                getOptionStyleValue(depositType),                 // 13. OptionStyle
-                getBarrier1Value(document, depositType),          // 14. Barrier1
-                getBarrier2Value(document, depositType),          // 15. Barrier2
-                getVersionValue(),                                // 16. Version
-                getSettCcyValue(document, depositType),           // 17. SettCcy
-                getOptionKindValue(),                             // 18. OptionKind
-                getBarrierStartDateValue(document, depositType),  // 19. BarrierStartDate
-                getBarrierEndDateValue(document, depositType),    // 20. BarrierEndDate
-                getBarrier1TypeIdValue(depositType),              // 21. Barrier1Typeid
-                getBarrier2TypeIdValue(depositType),              // 22. Barrier2Typeid
-                getCurrencyPairValue(document),                   // 23. CurrencyPair
-                getAmountValue(document),                         // 24. Amount
-                depositType.getDepositType(),                     // 25. DocumentType
-                getApplicationStatusValue(document)               // 26. ApplicationStatus
-        };
-        return StringUtils.join(values, DELIMETER) + END_OF_LINE;
-    }
+    /**  Java doc with business comment */
+    private static final Column SIDE = constant(A_B_SIDE_VALUE);
 
     /**  Java doc with business comment */
-    private static String getTradeIdValue(Document document) {
-        return document.getFieldValue(SpecificDocumentType.FIELD_STRUCTUREID).toString();
-    }
+    private static final Column TRADE_DATE = dateField(SpecificDocumentType.FIELD_CONTRACTDATE, ColumnPlan.DateStyle.DATE_TIME);
 
     /**  Java doc with business comment */
-    private static String getSideValue() {
-        return A_B_SIDE_VALUE;
-    }
+    private static final Column VALUE_DATE = dateField(SpecificDocumentType.FIELD_DEPOSITTERMENDDATE, ColumnPlan.DateStyle.DATE);
 
     /**  Java doc with business comment */
-    private static String getTradeDateValue(Document document) {
-        return YYYY_MM_DD_HH_MM_SS_DATE_FORMAT.format(document.getFieldValue(SpecificDocumentType.FIELD_CONTRACTDATE));
-    }
+    private static final Column OPTION_TYPE = ColumnPlan.concat(
+            constant(A_B_OPTION_TYPE_VALUE + " "),
+            stringField(SpecificDocumentType.FIELD_EPOSITSUMCURRCODEISO, NULL_CONCATENATION_VALUE));
 
     /**  Java doc with business comment */
-    private static String getValueDateValue(Document document) {
-        return DD_MM_YYYY_DATE_FORMAT.format(document.getFieldValue(SpecificDocumentType.FIELD_DEPOSITTERMENDDATE));
-    }
+    private static final Column DEPOSIT_CCY1_ISO = stringField(SpecificDocumentType.FIELD_EPOSITSUMCURRCODEISO);
 
     /**  Java doc with business comment */
-    private static String getOptionTypeValue(Document document) {
-        return A_B_OPTION_TYPE_VALUE + " " + getDepositCcy1ISOValue(document);
-    }
+    private static final Column A_DEPOSIT_CCY2_ISO = stringField(SpecificDocumentType.FIELD_DEPOSITSUMALTCURRCODEISO);
 
     /**  Java doc with business comment */
-    private static String getDepositCcy1ISOValue(Document document) {
-        return document.getStringFieldValue(SpecificDocumentType.FIELD_EPOSITSUMCURRCODEISO);
-    }
+    private static final Column RATE = numberField(SpecificDocumentType.FIELD_BASEINTERESTRATE);
 
     /**  Java doc with business comment */
-    private static String getDepositCcy2ISOValue(Document document, DepositType typeDepositId) {
-        switch (typeDepositId) untitled{
-            case A:
-                return document.getStringFieldValue(SpecificDocumentType.FIELD_DEPOSITSUMALTCURRCODEISO);
-            default:
-                return emptyFieldValue;
-        }
-    }
+    private static final Column A_PREMIUM = numberField(SpecificDocumentType.FIELD_PREMIUM);
 
     /**  Java doc with business comment */
-    private static String getRateValue(Document document) {
-        return document.getFieldValue(SpecificDocumentType.FIELD_BASEINTERESTRATE).toString();
-    }
+    private static final Column A_PREMIUM_CCY = stringField(SpecificDocumentType.FIELD_PREMIUMCURRCODEISO);
 
     /**  Java doc with business comment */
-    private static String getPremiumValue(Document document, DepositType typeDepositId) {
-        switch (typeDepositId) {
-            case A:
-                return document.getFieldValue(SpecificDocumentType.FIELD_PREMIUM).toString();
-            default:
-                return emptyFieldValue;
-        }
-    }
+    private static final Column A_DELTA = numberField(SpecificDocumentType.FIELD_DELTA);
 
     /**  Java doc with business comment */
-    private static String getPremiumCcyValue(Document document, DepositType typeDepositId) {
-        switch (typeDepositId) {
-            case A:
-                return document.getStringFieldValue(SpecificDocumentType.FIELD_PREMIUMCURRCODEISO);
-            default:
-                return emptyFieldValue;
-        }
-    }
+    private static final Column B_IS_DELIVERABLE = constant(B_IS_DELIVERABLE_VALUE);
 
     /**  Java doc with business comment */
-    private static String getDeltaValue(Document document, DepositType typeDepositId) {
-        switch (typeDepositId) {
-            case A:
-                return document.getFieldValue(SpecificDocumentType.FIELD_DELTA).toString();
-            default:
-                return emptyFieldValue;
-        }
-    }
+    private static final Column B_OPTION_STYLE = constant(B_OPTION_STYLE_VALUE);
 
     /**  Java doc with business comment */
-    private static String getIsDeliverableValue(DepositType typeDepositId) {
-        switch (typeDepositId) {
-            case B:
-                return B_IS_DELIVERABLE_VALUE;
-            default:
-                return emptyFieldValue;
-        }
-    }
+    private static final Column B_BARRIER1 = numberField(SpecificDocumentType.FIELD_STRIKERANGELOWERBOUND);
 
     /**  Java doc with business comment */
-    private static String getOptionStyleValue(DepositType typeDepositId) {
-        switch (typeDepositId) {
-            case B:
-                return B_OPTION_STYLE_VALUE;
-            default:
-                return emptyFieldValue;
-        }
-    }
+    private static final Column B_BARRIER2 = numberField(SpecificDocumentType.FIELD_STRIKERANGEUPPERBOUND);
 
     /**  Java doc with business comment */
-    private static String getBarrier1Value(Document document, DepositType typeDepositId) {
-        switch (typeDepositId) {
-            case B:
-                return document.getFieldValue(SpecificDocumentType.FIELD_STRIKERANGELOWERBOUND).toString();
-            default:
-                return emptyFieldValue;
-        }
-    }
+    private static final Column VERSION = constant(A_B_VERSION_VALUE);
 
     /**  Java doc with business comment */
-    private static String getBarrier2Value(Document document, DepositType typeDepositId) {
-        switch (typeDepositId) {
-            case B:
-                return document.getFieldValue(SpecificDocumentType.FIELD_STRIKERANGEUPPERBOUND).toString();
-            default:
-                return emptyFieldValue;
-        }
-    }
+    private static final Column B_SETT_CCY = stringField(SpecificDocumentType.FIELD_DEPOSITSUMCURRCODEISO);
 
     /**  Java doc with business comment */
-    private static String getVersionValue() {
-        return A_B_VERSION_VALUE;
-    }
+    private static final Column OPTION_KIND = constant(A_B_OPTION_KIND_VALUE);
 
     /**  Java doc with business comment */
-    private static String getSettCcyValue(Document document, DepositType typeDepositId) {
-        switch (typeDepositId) {
-            case B:
-                return document.getStringFieldValue(SpecificDocumentType.FIELD_DEPOSITSUMCURRCODEISO);
-            default:
-                return emptyFieldValue;
-        }
-    }
+    private static final Column B_BARRIER_START_DATE = dateField(SpecificDocumentType.FIELD_CONTRACTDATE, ColumnPlan.DateStyle.DATE);
 
     /**  Java doc with business comment */
-    private static String getOptionKindValue() {
-        return A_B_OPTION_KIND_VALUE;
-    }
+    private static final Column B_BARRIER_END_DATE = dateField(SpecificDocumentType.FIELD_DEPOSITTERMENDDATE, ColumnPlan.DateStyle.DATE);
 
     /**  Java doc with business comment */
-    private static String getBarrierStartDateValue(Document document, DepositType typeDepositId) {
-        switch (typeDepositId) {
-            case B:
-                return DD_MM_YYYY_DATE_FORMAT.format(document.getFieldValue(SpecificDocumentType.FIELD_CONTRACTDATE));
-            default:
-                return emptyFieldValue;
-        }
-    }
+    private static final Column B_BARRIER1_TYPE_ID = constant(B_UPPER_BARRIER_TYPE_VALUE);
 
     /**  Java doc with business comment */
-    private static String getBarrierEndDateValue(Document document, DepositType typeDepositId) {
-        switch (typeDepositId) {
-            case B:
-                return DD_MM_YYYY_DATE_FORMAT.format(document.getFieldValue(SpecificDocumentType.FIELD_DEPOSITTERMENDDATE));
-            default:
-                return emptyFieldValue;
+    private static final Column B_BARRIER2_TYPE_ID = constant(B_LOWER_BARRIER_TYPE_VALUE);
+
+    /**  Java doc with business comment */
+    private static final Column CURRENCY_PAIR = stringField(SpecificDocumentType.FIELD_BASEASSET);
+
+    /**  Java doc with business comment */
+    private static final Column AMOUNT = numberField(SpecificDocumentType.FIELD_DEPOSITSUM);
+
+    /**  Java doc with business comment */
+    private static final Column APPLICATION_STATUS = new ColumnPlan.ExtractorColumn() {
+        @Override
+        public void append(Document document, CsvRowBuffer row) {
+            row.append(document.getBankDocState().getSystemName());
+        }
+
+        @Override
+        public Object getValue(Document document) {
+            return document.getBankDocState().getSystemName();
         }
+
+        @Override
+        public ColumnPlan.ColumnType getType() {
+            return ColumnPlan.ColumnType.STRING;
+        }
+    };
+
+    // Columns of the registered deposit types
+    private static final Map<DepositType, List<Column>> COLUMNS = new EnumMap<>(DepositType.class);
+
+    static {
+        registerColumns(DepositType.A,                    // №   Field name
+                TRADE_ID,                                 // 1.  TradeID
+                SIDE,                                     // 2.  Side
+                TRADE_DATE,                               // 3.  TradeDate
+                VALUE_DATE,                               // 4.  ValueDate
+                OPTION_TYPE,                              // 5.  Put/Call Ccy1
+                DEPOSIT_CCY1_ISO,                         // 6.  Ccy1
+                A_DEPOSIT_CCY2_ISO,                       // 7.  Ccy2
+                RATE,                                     // 8.  Rate
+                A_PREMIUM,                                // 9.  Premium
+                A_PREMIUM_CCY,                            // 10. PremiumCcy
+                A_DELTA,                                  // 11. Delta
+                empty(),                                  // 12. IsDeliverable
+                empty(),                                  // 13. OptionStyle
+                empty(),                                  // 14. Barrier1
+                empty(),                                  // 15. Barrier2
+                VERSION,                                  // 16. Version
+                empty(),                                  // 17. SettCcy
+                OPTION_KIND,                              // 18. OptionKind
+                empty(),                                  // 19. BarrierStartDate
+                empty(),                                  // 20. BarrierEndDate
+                empty(),                                  // 21. Barrier1Typeid
+                empty(),                                  // 22. Barrier2Typeid
+                CURRENCY_PAIR,                            // 23. CurrencyPair
+                AMOUNT,                                   // 24. Amount
+                constant(DepositType.A.getDepositType()), // 25. DocumentType
+                APPLICATION_STATUS                        // 26. ApplicationStatus
+        );
+        registerColumns(DepositType.B,                    // №   Field name
+                TRADE_ID,                                 // 1.  TradeID
+                SIDE,                                     // 2.  Side
+                TRADE_DATE,                               // 3.  TradeDate
+                VALUE_DATE,                               // 4.  ValueDate
+                OPTION_TYPE,                              // 5.  Put/Call Ccy1
+                DEPOSIT_CCY1_ISO,                         // 6.  Ccy1
+                empty(),                                  // 7.  Ccy2
+                RATE,                                     // 8.  Rate
+                empty(),                                  // 9.  Premium
+                empty(),                                  // 10. PremiumCcy
+                empty(),                                  // 11. Delta
+                B_IS_DELIVERABLE,                         // 12. IsDeliverable
+                B_OPTION_STYLE,                           // 13. OptionStyle
+                B_BARRIER1,                               // 14. Barrier1
+                B_BARRIER2,                               // 15. Barrier2
+                VERSION,                                  // 16. Version
+                B_SETT_CCY,                               // 17. SettCcy
+                OPTION_KIND,                              // 18. OptionKind
+                B_BARRIER_START_DATE,                     // 19. BarrierStartDate
+                B_BARRIER_END_DATE,                       // 20. BarrierEndDate
+                B_BARRIER1_TYPE_ID,                       // 21. Barrier1Typeid
+                B_BARRIER2_TYPE_ID,                       // 22. Barrier2Typeid
+                CURRENCY_PAIR,                            // 23. CurrencyPair
+                AMOUNT,                                   // 24. Amount
+                constant(DepositType.B.getDepositType()), // 25. DocumentType
+                APPLICATION_STATUS                        // 26. ApplicationStatus
+        );
     }
 
-    /**  Java doc with business comment */
-    private static String getBarrier1TypeIdValue(DepositType typeDepositId) {
-        switch (typeDepositId) {
-            case B:
-                return B_UPPER_BARRIER_TYPE_VALUE;
-            default:
-                return emptyFieldValue;
+    // Context with the default settings, created on demand and reset on columns registration
+    private static volatile ExportContext defaultContext;
+
+    private static final ThreadLocal<CsvRowBuffer> ROW_BUFFER = new ThreadLocal<CsvRowBuffer>() {
+        @Override
+        protected CsvRowBuffer initialValue() {
+            return new CsvRowBuffer();
         }
+    };
+
+    /**
+     * Returns CSV-line for document with the default settings
+     *
+     * @param document    Document
+     * @param depositType Document type
+     *
+     * @return CSV-line
+     */
+    public static String depositToCSVLine(Document document, DepositType depositType) {
+        return depositToCSVLine(document, depositType, getDefaultContext());
     }
 
-    /**  Java doc with business comment */
-    private static String getBarrier2TypeIdValue(DepositType typeDepositId) {
-        switch (typeDepositId) {
-            case B:
-                return B_LOWER_BARRIER_TYPE_VALUE;
-            default:
-                return emptyFieldValue;
+    /**
+     * Returns CSV-line for document
+     *
+     * @param document    Document
+     * @param depositType Document type
+     * @param context     Export settings
+     *
+     * @return CSV-line
+     */
+    public static String depositToCSVLine(Document document, DepositType depositType, ExportContext context) {
+        CsvRowBuffer row = ROW_BUFFER.get();
+        row.clear();
+        appendCSVLine(document, depositType, context, row);
+        return row.toString();
+    }
+
+    /**
+     * Appends UTF-8 encoded CSV-line for document with the default settings
+     *
+     * @see #appendCSVLine(Document, DepositType, ExportContext, CsvRowBuffer)
+     */
+    public static void appendCSVLine(Document document, DepositType depositType, CsvRowBuffer row) {
+        appendCSVLine(document, depositType, getDefaultContext(), row);
+    }
+
+    /**
+     * Appends UTF-8 encoded CSV-line for document to the buffer, the appended bytes are the same as
+     * {@link #depositToCSVLine} result encoded in UTF-8. On exception the buffer may contain a part of the line.
+     *
+     * @param document    Document
+     * @param depositType Document type
+     * @param context     Export settings
+     * @param row         Target buffer
+     */
+    public static void appendCSVLine(Document document, DepositType depositType, ExportContext context, CsvRowBuffer row) {
+        context.getColumnPlan(depositType).append(document, row);
+    }
+
+    /**
+     * @param depositType Document type
+     *
+     * @return CSV-line layout of the document type compiled with the default settings
+     */
+    public static ColumnPlan getColumnPlan(DepositType depositType) {
+        return getDefaultContext().getColumnPlan(depositType);
+    }
+
+    /**
+     * @return Context with the default settings
+     */
+    public static ExportContext getDefaultContext() {
+        ExportContext context = defaultContext;
+        if (context == null) {
+            context = ExportContext.defaults();
+            defaultContext = context;
         }
+        return context;
     }
 
-    /**  Java doc with business comment */
-    private static String getCurrencyPairValue(Document document) {
-        return document.getStringFieldValue(SpecificDocumentType.FIELD_BASEASSET);
+    /**
+     * Registers CSV-line columns of the document type, the columns must follow {@link #META_LINE}.
+     * Contexts created before the registration do not see the new columns.
+     *
+     * @param depositType Document type
+     * @param columns     Columns
+     */
+    public static synchronized void registerColumns(DepositType depositType, Column... columns) {
+        if (columns.length != getColumnNames().size()) {
+            throw new IllegalArgumentException(String.format("Invalid number of columns for %s: %s", depositType, columns.length));
+        }
+        COLUMNS.put(depositType, Arrays.asList(columns.clone()));
+        defaultContext = null;
     }
 
-    /**  Java doc with business comment */
-    private static String getAmountValue(Document document) {
-        return document.getFieldValue(SpecificDocumentType.FIELD_DEPOSITSUM).toString();
+    /**
+     * @return Column names of the {@link #META_LINE}
+     */
+    public static List<String> getColumnNames() {
+        return Arrays.asList(META_LINE.substring(0, META_LINE.length() - END_OF_LINE.length()).split(DELIMETER));
     }
 
-    /**  Java doc with business comment */
-    private static String getApplicationStatusValue(Document document) {
-        return document.getBankDocState().getSystemName();
+    /**
+     * Returns column types shared by all registered document types, empty columns take the type of the others
+     *
+     * @return Column types in the {@link #META_LINE} order, {@link ColumnPlan.ColumnType#STRING} for always empty columns
+     *
+     * @throws IllegalStateException if document types have different types of the same column
+     */
+    public static synchronized List<ColumnPlan.ColumnType> getColumnTypes() {
+        ColumnPlan.ColumnType[] types = new ColumnPlan.ColumnType[getColumnNames().size()];
+        for (Map.Entry<DepositType, List<Column>> entry : COLUMNS.entrySet()) {
+            for (int i = 0; i < types.length; i++) {
+                ColumnPlan.ColumnType type = entry.getValue().get(i).getType();
+                if (type != null && types[i] != null && types[i] != type) {
+                    throw new IllegalStateException(String.format("Column %s of %s is %s, expected %s", i + 1, entry.getKey(), type, types[i]));
+                }
+                if (type != null) {
+                    types[i] = type;
+                }
+            }
+        }
+        for (int i = 0; i < types.length; i++) {
+            if (types[i] == null) {
+                types[i] = ColumnPlan.ColumnType.STRING;
+            }
+        }
+        return Arrays.asList(types);
     }
 
-    public static void setEmptyFieldValue(String _emptyFieldValue) {
-        emptyFieldValue = _emptyFieldValue;
+    /**
+     * @param context Export settings
+     *
+     * @return Plans of the registered document types compiled with the settings
+     */
+    static synchronized Map<DepositType, ColumnPlan> compileColumnPlans(ExportContext context) {
+        Map<DepositType, ColumnPlan> plans = new EnumMap<>(DepositType.class);
+        for (Map.Entry<DepositType, List<Column>> entry : COLUMNS.entrySet()) {
+            plans.put(entry.getKey(), ColumnPlan.compile(entry.getValue(), context));
+        }
+        return plans;
     }
 }
@@ -0,0 +1,183 @@
+package export;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Export procedure metrics published over JMX
+ */
+public class CsvExportMetrics implements CsvExportMetricsMBean {
+
+    private static final String DEFAULT_OBJECT_NAME = "export:type=CsvExportProc,name=metrics";
+
+    private static final ExportRunMetrics NO_RUN = new ExportRunMetrics();
+
+    private final String objectName;
+
+    private volatile ExportRunMetrics lastRun = NO_RUN;
+
+    private final AtomicLong totalRuns = new AtomicLong();
+    private final AtomicLong totalRunsAborted = new AtomicLong();
+    private final AtomicLong totalDocumentsExported = new AtomicLong();
+    private final AtomicLong totalDocumentsFailed = new AtomicLong();
+    private final AtomicLong totalBytesWritten = new AtomicLong();
+
+    public CsvExportMetrics() {
+        this(DEFAULT_OBJECT_NAME);
+    }
+
+    public CsvExportMetrics(String objectName) {
+        this.objectName = objectName;
+    }
+
+    /**
+     * Registers the MBean in the platform MBean server
+     *
+     * @throws JMException on registration failure
+     */
+    public void register() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(objectName);
+        if (!server.isRegistered(name)) {
+            server.registerMBean(this, name);
+        }
+    }
+
+    /**
+     * Unregisters the MBean from the platform MBean server
+     *
+     * @throws JMException on unregistration failure
+     */
+    public void unregister() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(objectName);
+        if (server.isRegistered(name)) {
+            server.unregisterMBean(name);
+        }
+    }
+
+    /**
+     * Publishes metrics of the finished run, aborted runs included
+     *
+     * @param run Run metrics
+     */
+    public void runFinished(ExportRunMetrics run) {
+        lastRun = run;
+        totalRuns.incrementAndGet();
+        if (run.isAborted()) {
+            totalRunsAborted.incrementAndGet();
+        }
+        totalDocumentsExported.addAndGet(run.getDocumentsExported());
+        totalDocumentsFailed.addAndGet(run.getDocumentsFailed());
+        totalBytesWritten.addAndGet(run.getBytesWritten());
+    }
+
+    @Override
+    public long getLastRunDurationMillis() {
+        return lastRun.getDurationMillis();
+    }
+
+    @Override
+    public long getLastRunFilteringMillis() {
+        return lastRun.getFilteringMillis();
+    }
+
+    @Override
+    public long getLastRunDictionaryMillis() {
+        return lastRun.getDictionaryMillis();
+    }
+
+    @Override
+    public long getLastRunConversionMillis() {
+        return lastRun.getConversionMillis();
+    }
+
+    @Override
+    public long getLastRunIoMillis() {
+        return lastRun.getIoMillis();
+    }
+
+    @Override
+    public long getLastRunDocumentsScanned() {
+        return lastRun.getDocumentsScanned();
+    }
+
+    @Override
+    public long getLastRunDocumentsExported() {
+        return lastRun.getDocumentsExported();
+    }
+
+    @Override
+    public long getLastRunDocumentsFailed() {
+        return lastRun.getDocumentsFailed();
+    }
+
+    @Override
+    public long getLastRunBytesWritten() {
+        return lastRun.getBytesWritten();
+    }
+
+    @Override
+    public long getLastRunRowsPerSecond() {
+        return lastRun.getRowsPerSecond();
+    }
+
+    @Override
+    public long getLastRunConversionMeanMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(lastRun.getConversionLatency().getMeanNanos());
+    }
+
+    @Override
+    public long getLastRunConversionP50Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(lastRun.getConversionLatency().getPercentileNanos(50));
+    }
+
+    @Override
+    public long getLastRunConversionP99Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(lastRun.getConversionLatency().getPercentileNanos(99));
+    }
+
+    @Override
+    public long getLastRunGcCount() {
+        return lastRun.getGcCount();
+    }
+
+    @Override
+    public long getLastRunGcMillis() {
+        return lastRun.getGcMillis();
+    }
+
+    @Override
+    public long getLastRunHeapUsedBytes() {
+        return lastRun.getHeapUsedBytes();
+    }
+
+    @Override
+    public long getTotalRuns() {
+        return totalRuns.get();
+    }
+
+    @Override
+    public long getTotalRunsAborted() {
+        return totalRunsAborted.get();
+    }
+
+    @Override
+    public long getTotalDocumentsExported() {
+        return totalDocumentsExported.get();
+    }
+
+    @Override
+    public long getTotalDocumentsFailed() {
+        return totalDocumentsFailed.get();
+    }
+
+    @Override
+    public long getTotalBytesWritten() {
+        return totalBytesWritten.get();
+    }
+}
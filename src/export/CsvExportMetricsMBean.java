@@ -0,0 +1,49 @@
+package export;
+
+/**
+ * JMX view of the export procedure metrics: the last finished run and totals since start
+ */
+public interface CsvExportMetricsMBean {
+
+    long getLastRunDurationMillis();
+
+    long getLastRunFilteringMillis();
+
+    long getLastRunDictionaryMillis();
+
+    long getLastRunConversionMillis();
+
+    long getLastRunIoMillis();
+
+    long getLastRunDocumentsScanned();
+
+    long getLastRunDocumentsExported();
+
+    long getLastRunDocumentsFailed();
+
+    long getLastRunBytesWritten();
+
+    long getLastRunRowsPerSecond();
+
+    long getLastRunConversionMeanMicros();
+
+    long getLastRunConversionP50Micros();
+
+    long getLastRunConversionP99Micros();
+
+    long getLastRunGcCount();
+
+    long getLastRunGcMillis();
+
+    long getLastRunHeapUsedBytes();
+
+    long getTotalRuns();
+
+    long getTotalRunsAborted();
+
+    long getTotalDocumentsExported();
+
+    long getTotalDocumentsFailed();
+
+    long getTotalBytesWritten();
+}
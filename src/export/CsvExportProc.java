@@ -8,10 +8,9 @@ package export;
 //      Document
 //      DocProcessResultList
 //      DocumentProcessResult
-//      DictionaryService
 //      TaskToken
-//      Service
 //      PathFactory
+//      SpecificDocumentType
 
 import com.google.common.base.Charsets;
 import com.google.common.collect.ImmutableSet;
@@ -22,23 +21,80 @@ import org.apache.log4j.Logger;
 import org.springframework.util.StringUtils;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
 
 public class CsvExportProc implements IDocumentProc {
 
     // Procedure params:
     private static final String PARAM_NAME_TARGET_DIR        = "targetDir";
     private static final String PARAM_NAME_EMPTY_FIELD_VALUE = "emptyFieldValue";
+    private static final String PARAM_NAME_PARALLELISM       = "parallelism";
+    private static final String PARAM_NAME_PRESERVE_ORDER    = "preserveOrder";
+    private static final String PARAM_NAME_INCREMENTAL       = "incremental";
+    private static final String PARAM_NAME_OVERLAP           = "overlap";
+    private static final String PARAM_NAME_PAGE_SIZE         = "pageSize";
+    private static final String PARAM_NAME_COMPRESSION       = "compression";
+    private static final String PARAM_NAME_MAX_FILE_SIZE     = "maxFileSize";
+    private static final String PARAM_NAME_MAX_FILE_ROWS     = "maxFileRows";
+    private static final String PARAM_NAME_FORMAT            = "format";
+    private static final String PARAM_NAME_DELIMITER         = "delimiter";
+    private static final String PARAM_NAME_DATE_TIME_FORMAT  = "dateTimeFormat";
+    private static final String PARAM_NAME_DATE_FORMAT       = "dateFormat";
+    private static final String PARAM_NAME_PARTITION_BY      = "partitionBy";
+    private static final String PARAM_NAME_RESUMABLE         = "resumable";
+    private static final String PARAM_NAME_CHECKPOINT_ROWS   = "checkpointRows";
+    private static final String PARAM_NAME_ASYNC             = "async";
+    private static final String PARAM_NAME_SORT_BY           = "sortBy";
+    private static final String PARAM_NAME_SORT_MEMORY       = "sortMemory";
 
-    // File name mask PREFIX_YYYYMMDD_HHMMSS.csv
-    private static final String FILE_NAME_PREFIX      = "PREFIX_";
-    private static final String FILE_NAME_DATE_FORMAT = "yyyyMMdd_HHmmss";
-    private static final String FILE_NAME_EXTENSION   = ".csv";
+    // Compression param values
+    private static final String COMPRESSION_NONE = "none";
+    private static final String COMPRESSION_GZIP = "gzip";
+
+    // Format param values
+    private static final String FORMAT_CSV      = "csv";
+    private static final String FORMAT_COLUMNAR = "columnar";
+
+    // Partition param values, comma-separated
+    private static final String PARTITION_BY_DEPOSIT_TYPE  = "depositType";
+    private static final String PARTITION_BY_CURRENCY_PAIR = "currencyPair";
+
+    // Sort param values, comma-separated keys in the order of comparison
+    private static final String SORT_BY_TRADE_ID   = "tradeId";
+    private static final String SORT_BY_TRADE_DATE = "tradeDate";
+
+    // Memory of the sorted export lines to spill a run at
+    private static final long DEFAULT_SORT_MEMORY = 64L * 1024 * 1024;
+
+    // Page of the asynchronous export documents loaded by ids
+    private static final int DEFAULT_LOAD_PAGE_SIZE = 1000;
+
+    // Overlap window of the incremental export before the watermark, catches documents committed late
+    private static final long DEFAULT_OVERLAP = 5L * 60 * 1000;
+
+    // Rows between checkpoints of the resumable export
+    private static final int DEFAULT_CHECKPOINT_ROWS = 10000;
+
+    // Documents of the sequential export resolved and written together
+    private static final int SEQUENTIAL_BLOCK_SIZE = 1024;
+
+    // File name mask PREFIX_YYYYMMDD_HHMMSS.csv[.gz], rolled parts PREFIX_YYYYMMDD_HHMMSS_partNNN.csv[.gz]
+    private static final String FILE_NAME_PREFIX         = "PREFIX_";
+    private static final String FILE_NAME_DATE_FORMAT    = "yyyyMMdd_HHmmss";
+    private static final String FILE_NAME_EXTENSION      = ".csv";
+    private static final String FILE_NAME_GZIP_EXTENSION = ".gz";
+
+    // Columnar file name mask PREFIX_YYYYMMDD_HHMMSS.dcol[.gz], see ColumnarExportWriter
+    private static final String FILE_NAME_COLUMNAR_EXTENSION = ".dcol";
 
     // Available states:
     private static final Set<String> FINAL_STATES = ImmutableSet.of(
@@ -51,21 +107,113 @@ public class CsvExportProc implements IDocumentProc {
     // Messages:
     private static final String PROCEDURE_MESSAGE_BEGINNING = "Procedure start message stub";
     private static final String PROCEDURE_MESSAGE_DIRECTORY_UNSPECIFIED = "Directory unspecified message stub";
+    private static final String PROCEDURE_MESSAGE_INVALID_PARAMETER = "Invalid parameter message stub: %s = %s";
     private static final String PROCEDURE_MESSAGE_DIRECTORY_EXISTENCE_EXCEPTION = "Directory existence message stub: %s";
     private static final String PROCEDURE_MESSAGE_DOCUMENT_EXPORT_EXCEPTION = "Document export exception message stub (docid = %s)";
+    private static final String PROCEDURE_MESSAGE_DOCUMENT_REJECTED = "Document rejected message stub (docid = %s)";
     private static final String PROCEDURE_MESSAGE_EXPORT_EXCEPTION = "Procedure exception message stub";
     private static final String PROCEDURE_MESSAGE_ENDING = "Procedure end message stub";
+    private static final String PROCEDURE_MESSAGE_DOCUMENT_SOURCE_UNSPECIFIED = "Document source unspecified message stub";
+    private static final String PROCEDURE_MESSAGE_WATERMARK_EXCEPTION = "Watermark exception message stub: %s";
+    private static final String PROCEDURE_MESSAGE_WATERMARK_KEPT = "Watermark kept due to document write exceptions: %s";
+    private static final String PROCEDURE_MESSAGE_EXPORT_NOT_COMMITTED = "Export not committed due to document write exceptions: %s";
+    private static final String PROCEDURE_MESSAGE_DEPOSIT_TYPE_CACHE_STATS = "Deposit type cache: hits = %s, misses = %s, size = %s";
+    private static final String PROCEDURE_MESSAGE_PARTITIONS = "Exported partitions: %s";
+    private static final String PROCEDURE_MESSAGE_SORT_RUNS = "Sorted export merged runs: %s";
+    private static final String PROCEDURE_MESSAGE_PARALLELISM_LIMITED = "Parallelism %s limited to %s";
+    private static final String PROCEDURE_MESSAGE_JOURNAL_EXCEPTION = "Journal exception message stub: %s";
+    private static final String PROCEDURE_MESSAGE_JOURNAL_RESUMED = "Export resumed from the checkpoint: %s";
+    private static final String PROCEDURE_MESSAGE_JOURNAL_DISCARDED = "Journal of the other settings discarded: %s";
+    private static final String PROCEDURE_MESSAGE_JOB_EXECUTOR_UNSPECIFIED = "Job executor unspecified message stub";
+    private static final String PROCEDURE_MESSAGE_JOB_SUBMITTED = "Export job submitted: %s";
+    private static final String PROCEDURE_MESSAGE_JOB_REJECTED = "Export job rejected message stub: %s";
+    private static final String PROCEDURE_MESSAGE_EXPORT_CANCELLED = "Export cancelled message stub";
 
-    @Service("dictionaryService")
-    private DictionaryService dictionaryService;
+    private DepositTypeCache depositTypeCache;
 
     private Logger logger;
 
+    private DocumentSource documentSource;
+
+    private CsvExportMetrics exportMetrics;
+
+    private ExportJobExecutor jobExecutor;
+
+    // Upper bound of the parallelism param
+    private int maxParallelism = Runtime.getRuntime().availableProcessors();
+
+    // Workers and row buffers of the parallel export, shared by the runs
+    private final ParallelExportPipeline pipeline = new ParallelExportPipeline();
+
+    private CsvSink.Factory sinkFactory = new CsvSink.Factory() {
+        @Override
+        public CsvSink create(File target) throws IOException {
+            return new FileChannelCsvSink(target);
+        }
+    };
+
     @Override
     public DocProcessResultList execute(TaskToken taskToken,
                                         ParameterSet params,
                                         Collection<Document> documents) throws ProcException {
 
+        // Asynchronous export param, the export runs as a job of the executor and the call returns at once
+        if (Boolean.TRUE.toString().equalsIgnoreCase(params.get(PARAM_NAME_ASYNC))) {
+            return submitJob(taskToken, params, documents);
+        }
+        return export(params, documents, null, null);
+    }
+
+    /**
+     * Submits the export job registered by the task token, see {@link ExportJobExecutor#getJob}.
+     * The job export fails on the invalid params the same way as the synchronous one.
+     * <p>
+     * With the document source the job keeps only the ids of the procedure documents and loads them again page
+     * by page with the export projection: a queued job holds the ids, a running one the ids and a single page. The page
+     * documents hold only the projection fields if the source applies it, the in-memory source returns its documents
+     * as they are. Without the source the job exports the procedure documents collection itself, as the synchronous
+     * export does: these documents are loaded by the platform before the call, with all their fields.
+     */
+    private DocProcessResultList submitJob(TaskToken taskToken,
+                                           final ParameterSet params,
+                                           final Collection<Document> documents) throws ProcException {
+        if (jobExecutor == null) {
+            logger.error(PROCEDURE_MESSAGE_JOB_EXECUTOR_UNSPECIFIED);
+            throw new ProcException(PROCEDURE_MESSAGE_JOB_EXECUTOR_UNSPECIFIED);
+        }
+
+        // The procedure documents are ignored when the paged source is used
+        boolean paged = getIntParam(params, PARAM_NAME_PAGE_SIZE, 0) > 0;
+        final long[] docIds = !paged && documentSource != null ? LoadedDocuments.getDocIds(documents) : null;
+        final Collection<Document> jobDocuments = paged || docIds != null ? Collections.<Document>emptyList() : documents;
+        try {
+            ExportJob job = jobExecutor.submit(taskToken, paged ? -1 : documents.size(),
+                    new ExportJob.Task() {
+                        @Override
+                        public DocProcessResultList run(ExportJob job) throws ProcException {
+                            return export(params, jobDocuments, docIds, job);
+                        }
+                    });
+            logger.info(String.format(PROCEDURE_MESSAGE_JOB_SUBMITTED, job));
+        } catch (RejectedExecutionException e) {
+            logger.error(String.format(PROCEDURE_MESSAGE_JOB_REJECTED, e.getMessage()));
+            throw new ProcException(String.format(PROCEDURE_MESSAGE_JOB_REJECTED, e.getMessage()));
+        }
+        return new DocProcessResultList();
+    }
+
+    /**
+     * Runs the export in the calling thread
+     *
+     * @param docIds Ids of the documents to load from the document source instead of the documents,
+     *               <tt>null</tt> to export the documents
+     * @param job    Job of the asynchronous export, <tt>null</tt> for the synchronous one
+     */
+    private DocProcessResultList export(ParameterSet params,
+                                        Collection<Document> documents,
+                                        long[] docIds,
+                                        ExportJob job) throws ProcException {
+
         logger.info(PROCEDURE_MESSAGE_BEGINNING);
 
         // Target directory param check
@@ -75,10 +223,105 @@ public class CsvExportProc implements IDocumentProc {
             throw new ProcException(PROCEDURE_MESSAGE_DIRECTORY_UNSPECIFIED);
         }
 
-        // Empty fields param
-        String emptyFieldValue = params.get(PARAM_NAME_EMPTY_FIELD_VALUE);
-        if (StringUtils.hasLength(emptyFieldValue)) {
-            StructuralDepositRqToCSVConvertUtils.setEmptyFieldValue(emptyFieldValue);
+        // Conversion params, applied to this run only
+        ExportContext context = createExportContext(params);
+
+        // Parallel export params
+        int parallelism = getIntParam(params, PARAM_NAME_PARALLELISM, 1);
+        if (parallelism < 1) {
+            logger.error(String.format(PROCEDURE_MESSAGE_INVALID_PARAMETER, PARAM_NAME_PARALLELISM, parallelism));
+            throw new ProcException(String.format(PROCEDURE_MESSAGE_INVALID_PARAMETER, PARAM_NAME_PARALLELISM, parallelism));
+        }
+        if (parallelism > maxParallelism) {
+            logger.warn(String.format(PROCEDURE_MESSAGE_PARALLELISM_LIMITED, parallelism, maxParallelism));
+            parallelism = maxParallelism;
+        }
+        boolean preserveOrder = !Boolean.FALSE.toString().equalsIgnoreCase(params.get(PARAM_NAME_PRESERVE_ORDER));
+
+        // Incremental export param
+        boolean incremental = Boolean.TRUE.toString().equalsIgnoreCase(params.get(PARAM_NAME_INCREMENTAL));
+        long overlap = getLongParam(params, PARAM_NAME_OVERLAP, DEFAULT_OVERLAP);
+        if (overlap < 0) {
+            logger.error(String.format(PROCEDURE_MESSAGE_INVALID_PARAMETER, PARAM_NAME_OVERLAP, overlap));
+            throw new ProcException(String.format(PROCEDURE_MESSAGE_INVALID_PARAMETER, PARAM_NAME_OVERLAP, overlap));
+        }
+
+        // Paged document source param
+        int pageSize = getIntParam(params, PARAM_NAME_PAGE_SIZE, 0);
+        if (pageSize > 0 && documentSource == null) {
+            logger.error(PROCEDURE_MESSAGE_DOCUMENT_SOURCE_UNSPECIFIED);
+            throw new ProcException(PROCEDURE_MESSAGE_DOCUMENT_SOURCE_UNSPECIFIED);
+        }
+
+        // Output file params
+        String compression = params.get(PARAM_NAME_COMPRESSION);
+        boolean gzip = COMPRESSION_GZIP.equalsIgnoreCase(compression);
+        if (StringUtils.hasLength(compression) && !gzip && !COMPRESSION_NONE.equalsIgnoreCase(compression)) {
+            logger.error(String.format(PROCEDURE_MESSAGE_INVALID_PARAMETER, PARAM_NAME_COMPRESSION, compression));
+            throw new ProcException(String.format(PROCEDURE_MESSAGE_INVALID_PARAMETER, PARAM_NAME_COMPRESSION, compression));
+        }
+        long maxFileSize = getLongParam(params, PARAM_NAME_MAX_FILE_SIZE, 0);
+        long maxFileRows = getLongParam(params, PARAM_NAME_MAX_FILE_ROWS, 0);
+
+        // Output format param, columnar file is written sequentially into a single file
+        String format = params.get(PARAM_NAME_FORMAT);
+        boolean columnar = FORMAT_COLUMNAR.equalsIgnoreCase(format);
+        if (StringUtils.hasLength(format) && !columnar && !FORMAT_CSV.equalsIgnoreCase(format)
+                || columnar && (maxFileSize > 0 || maxFileRows > 0 || parallelism > 1)) {
+            logger.error(String.format(PROCEDURE_MESSAGE_INVALID_PARAMETER, PARAM_NAME_FORMAT, format));
+            throw new ProcException(String.format(PROCEDURE_MESSAGE_INVALID_PARAMETER, PARAM_NAME_FORMAT, format));
+        }
+
+        // Partitioned export param, partitions are written by a bounded pool of writer threads into separate files
+        String partitionBy = params.get(PARAM_NAME_PARTITION_BY);
+        boolean partitionByDepositType = false;
+        boolean partitionByCurrencyPair = false;
+        if (StringUtils.hasLength(partitionBy)) {
+            boolean valid = !columnar && maxFileSize <= 0 && maxFileRows <= 0;
+            for (String partitionKey : StringUtils.commaDelimitedListToStringArray(partitionBy)) {
+                if (PARTITION_BY_DEPOSIT_TYPE.equalsIgnoreCase(partitionKey.trim())) {
+                    partitionByDepositType = true;
+                } else if (PARTITION_BY_CURRENCY_PAIR.equalsIgnoreCase(partitionKey.trim())) {
+                    partitionByCurrencyPair = true;
+                } else {
+                    valid = false;
+                }
+            }
+            if (!valid) {
+                logger.error(String.format(PROCEDURE_MESSAGE_INVALID_PARAMETER, PARAM_NAME_PARTITION_BY, partitionBy));
+                throw new ProcException(String.format(PROCEDURE_MESSAGE_INVALID_PARAMETER, PARAM_NAME_PARTITION_BY, partitionBy));
+            }
+        }
+        boolean partitioned = partitionByDepositType || partitionByCurrencyPair;
+
+        // Resumable export params, the checkpoints require the ordered single plain file written from the paged source
+        String resumableValue = params.get(PARAM_NAME_RESUMABLE);
+        boolean resumable = Boolean.TRUE.toString().equalsIgnoreCase(resumableValue);
+        if (resumable && (pageSize <= 0 || gzip || columnar || partitioned || maxFileSize > 0 || maxFileRows > 0
+                || parallelism > 1 && !preserveOrder)) {
+            logger.error(String.format(PROCEDURE_MESSAGE_INVALID_PARAMETER, PARAM_NAME_RESUMABLE, resumableValue));
+            throw new ProcException(String.format(PROCEDURE_MESSAGE_INVALID_PARAMETER, PARAM_NAME_RESUMABLE, resumableValue));
+        }
+        int checkpointRows = getIntParam(params, PARAM_NAME_CHECKPOINT_ROWS, DEFAULT_CHECKPOINT_ROWS);
+
+        // Sorted export params, lines are sorted by the external merge sort and written into a single output
+        String sortBy = params.get(PARAM_NAME_SORT_BY);
+        boolean sorted = StringUtils.hasLength(sortBy);
+        boolean sortByTradeDate = false;
+        if (sorted) {
+            String[] sortKeys = StringUtils.commaDelimitedListToStringArray(sortBy);
+            sortByTradeDate = sortKeys.length == 2 && SORT_BY_TRADE_DATE.equalsIgnoreCase(sortKeys[0].trim());
+            boolean valid = (sortKeys.length == 1 || sortByTradeDate)
+                    && SORT_BY_TRADE_ID.equalsIgnoreCase(sortKeys[sortKeys.length - 1].trim());
+            if (!valid || columnar || partitioned || resumable) {
+                logger.error(String.format(PROCEDURE_MESSAGE_INVALID_PARAMETER, PARAM_NAME_SORT_BY, sortBy));
+                throw new ProcException(String.format(PROCEDURE_MESSAGE_INVALID_PARAMETER, PARAM_NAME_SORT_BY, sortBy));
+            }
+        }
+        long sortMemory = getLongParam(params, PARAM_NAME_SORT_MEMORY, DEFAULT_SORT_MEMORY);
+        if (sortMemory < 1) {
+            logger.error(String.format(PROCEDURE_MESSAGE_INVALID_PARAMETER, PARAM_NAME_SORT_MEMORY, sortMemory));
+            throw new ProcException(String.format(PROCEDURE_MESSAGE_INVALID_PARAMETER, PARAM_NAME_SORT_MEMORY, sortMemory));
         }
 
         // Try to create target directory
@@ -88,57 +331,677 @@ public class CsvExportProc implements IDocumentProc {
             throw new ProcException(String.format(PROCEDURE_MESSAGE_DIRECTORY_EXISTENCE_EXCEPTION, directory));
         }
 
-        // Procedure body
-        DocProcessResultList processResults = new DocProcessResultList();
-        try {
-            // File initialization ${directory}/PREFIX_YYYYMMDD_HHMMSS.csv
-            File target = PathFactory.getFileInstance(directory, getTargetFileName());
+        // Watermark of the previous incremental export
+        ExportWatermark watermark = null;
+        if (incremental) {
+            try {
+                watermark = ExportWatermark.load(directory);
+            } catch (IOException e) {
+                logger.error(String.format(PROCEDURE_MESSAGE_WATERMARK_EXCEPTION, directory), e);
+                throw new ProcException(String.format(PROCEDURE_MESSAGE_WATERMARK_EXCEPTION, directory));
+            }
+        }
+
+        // Journal of the interrupted run, the resumed run exports the same day after the same watermark
+        Date today = new Date();
+        ExportJournal journal = null;
+        if (resumable) {
+            String settings = String.format("%s, incremental=%s, overlap=%s", context, incremental, overlap);
+            try {
+                journal = ExportJournal.load(directory);
+                if (journal != null && !settings.equals(journal.getSettings())) {
+                    logger.warn(String.format(PROCEDURE_MESSAGE_JOURNAL_DISCARDED, journal));
+                    FileChannelCsvSink.discard(PathFactory.getFileInstance(directory, journal.getTarget()));
+                    journal = null;
+                }
+                if (journal != null) {
+                    logger.info(String.format(PROCEDURE_MESSAGE_JOURNAL_RESUMED, journal));
+                    today = new Date(journal.getRunTime());
+                    watermark = journal.getStart();
+                } else {
+                    journal = ExportJournal.start(getTargetBaseName() + FILE_NAME_EXTENSION, settings, today.getTime(), watermark);
+                    journal.store(directory);
+                }
+            } catch (IOException e) {
+                logger.error(String.format(PROCEDURE_MESSAGE_JOURNAL_EXCEPTION, directory), e);
+                throw new ProcException(String.format(PROCEDURE_MESSAGE_JOURNAL_EXCEPTION, directory));
+            }
+        }
+        ExportWatermark resumeCursor = journal != null && !journal.isEmpty() ? journal.getCheckpoint() : null;
 
-            // Metadata writing
-            FileOutputStream outputStream = PathFactory.getFileOutputStreamInstance(target);
-            outputStream.write(Converter.META_LINE.getBytes(Charsets.UTF_8));
-            outputStream.close();
+        // The incremental export starts the overlap before the watermark and skips the documents exported in it
+        ExportWatermark start = watermark != null ? watermark.overlapStart(overlap) : null;
+
+        // Documents to export, the procedure documents are ignored when the paged source is used
+        Iterable<Document> exportDocuments = documents;
+        if (pageSize > 0) {
+            exportDocuments = new PagedDocuments(documentSource, createDocumentQuery(today, start, resumeCursor, context.getProjection()), pageSize);
+        } else if (docIds != null) {
+            exportDocuments = new LoadedDocuments(documentSource, docIds, context.getProjection(), DEFAULT_LOAD_PAGE_SIZE);
+        }
+
+        ExportRunMetrics metrics = new ExportRunMetrics();
+        if (job != null) {
+            exportDocuments = job.cancellable(exportDocuments);
+            job.track(metrics);
+        }
+        CsvSink sink = null;
+        PartitionedCsvWriter partitionedWriter = null;
+        ExternalCsvSorter sorter = null;
+        ExportRun run;
+        boolean completed = false;
+        try {
+            FileChannelCsvSink resumableSink = null;
+            if (partitioned) {
+                partitionedWriter = createPartitionedWriter(directory, context, gzip, metrics);
+            } else if (journal != null) {
+                resumableSink = createResumableSink(directory, context, journal);
+                sink = new MeteredCsvSink(resumableSink, metrics);
+            } else {
+                sink = createSink(directory, context, gzip, columnar, maxFileSize, maxFileRows, metrics);
+            }
+            ColumnarExportWriter columnarWriter = columnar
+                    ? new ColumnarExportWriter(sink, Converter.getColumnNames(), Converter.getColumnTypes())
+                    : null;
+            run = new ExportRun(context, sink, columnarWriter, today, watermark, overlap, metrics);
+            if (partitionedWriter != null) {
+                run.partitionBy(partitionedWriter, partitionByDepositType, partitionByCurrencyPair);
+            }
+            if (resumableSink != null) {
+                run.checkpointTo(directory, journal, resumableSink, checkpointRows);
+            }
+            if (sorted) {
+                // Run files ${directory}/PREFIX_YYYYMMDD_HHMMSS*.sortrun
+                sorter = new ExternalCsvSorter(directory, getTargetBaseName(), sortMemory);
+                run.sortBy(sorter, sortByTradeDate);
+            }
 
             // Data writing
-            String csvLine;
-            Date today = new Date();
-            for(Document document : documents) {
-                if (inFinalState(document) && DateUtils.isSameDay(document.getLastModifyDate(), today)) {
-                    DepositType depositType = DepositType.getDepositType(document, dictionaryService);
-                    csvLine = Converter.depositToCSVLine(document, depositType);
+            if (parallelism > 1) {
+                exportParallel(exportDocuments, run, parallelism, preserveOrder);
+            } else {
+                exportSequential(exportDocuments, run);
+            }
+            // The cancelled export is not committed, the resumable one keeps its journal
+            if (job != null && job.isCancelRequested()) {
+                logger.warn(PROCEDURE_MESSAGE_EXPORT_CANCELLED);
+                throw new ProcException(PROCEDURE_MESSAGE_EXPORT_CANCELLED);
+            }
+            if (columnarWriter != null) {
+                columnarWriter.finish();
+            }
+            if (sorter != null) {
+                sorter.writeTo(sink);
+                logger.info(String.format(PROCEDURE_MESSAGE_SORT_RUNS, sorter.getRunCount()));
+            }
+
+            // The incremental export with failed writes is not committed: the watermark is kept, so the next run
+            // exports the same documents again; the resumable one keeps its journal of the checkpoints before the failure.
+            // Rejected documents are reported only, exporting them again would reject them again
+            if (incremental && run.writeFailures > 0) {
+                logger.warn(String.format(PROCEDURE_MESSAGE_EXPORT_NOT_COMMITTED, run.writeFailures));
+            } else {
+                if (partitionedWriter != null) {
+                    run.commitPartitions();
+                    logger.info(String.format(PROCEDURE_MESSAGE_PARTITIONS, partitionedWriter.getRowCounts()));
+                } else {
+                    sink.commit();
+                }
+                if (journal != null) {
+                    ExportJournal.delete(directory);
+                }
+            }
+
+            // Watermark moving past the exported and rejected documents, the documents of the run
+            // with failed writes are exported again by the next run
+            if (incremental) {
+                if (run.writeFailures == 0) {
                     try {
-                        outputStream = PathFactory.getFileOutputStreamInstance(target, true);
-                        outputStream.write(csvLine.getBytes(Charsets.UTF_8));
-                        outputStream.close();
+                        run.watermarkTracker.getWatermark().store(directory);
                     } catch (IOException e) {
-                        logger.error(String.format(PROCEDURE_MESSAGE_DOCUMENT_EXPORT_EXCEPTION, document.getDocId()), e);
-                        processResults.add(new DocumentProcessResult(e, document));
-                    } finally {
-                        IOUtils.closeQuietly(outputStream);
+                        logger.error(String.format(PROCEDURE_MESSAGE_WATERMARK_EXCEPTION, directory), e);
+                        throw new ProcException(String.format(PROCEDURE_MESSAGE_WATERMARK_EXCEPTION, directory));
                     }
+                } else {
+                    logger.warn(String.format(PROCEDURE_MESSAGE_WATERMARK_KEPT, watermark));
                 }
             }
+            completed = true;
         }
-        catch(IOException e) {
+        catch (IOException e) {
             logger.error(PROCEDURE_MESSAGE_EXPORT_EXCEPTION, e);
             throw new ProcException(PROCEDURE_MESSAGE_EXPORT_EXCEPTION);
         }
+        finally {
+            IOUtils.closeQuietly(sink);
+            IOUtils.closeQuietly(partitionedWriter);
+            IOUtils.closeQuietly(sorter);
 
+            // Metrics publishing, the failed and cancelled runs are published as aborted
+            publishMetrics(metrics, !completed);
+        }
+
+        logger.info(String.format(PROCEDURE_MESSAGE_DEPOSIT_TYPE_CACHE_STATS,
+                depositTypeCache.getHitCount(), depositTypeCache.getMissCount(), depositTypeCache.getSize()));
         logger.info(PROCEDURE_MESSAGE_ENDING);
-        return processResults;
+        return run.processResults;
     }
 
-    private boolean inFinalState(Document document) {
+    private void publishMetrics(ExportRunMetrics metrics, boolean aborted) {
+        if (aborted) {
+            metrics.abort();
+        } else {
+            metrics.finish();
+        }
+        logger.info(metrics.toSummary());
+        if (exportMetrics != null) {
+            exportMetrics.runFinished(metrics);
+        }
+    }
+
+    private void exportSequential(Iterable<Document> documents, ExportRun run) throws IOException {
+        List<Document> block = new ArrayList<>(SEQUENTIAL_BLOCK_SIZE);
+        CsvRowBuffer row = new CsvRowBuffer();
+        for (Document document : documents) {
+            // Documents filtering
+            if (run.accepts(document)) {
+                block.add(document);
+            }
+            if (block.size() == SEQUENTIAL_BLOCK_SIZE) {
+                exportBlock(block, run, row);
+                block.clear();
+            }
+        }
+        exportBlock(block, run, row);
+    }
+
+    private void exportBlock(List<Document> block, ExportRun run, CsvRowBuffer row) throws IOException {
+        // Deposit types resolving
+        long resolveStart = System.nanoTime();
+        Map<Long, DepositType> depositTypes = depositTypeCache.getDepositTypes(block);
+        run.metrics.resolved(System.nanoTime() - resolveStart);
+
+        // Data writing
+        for (Document document : block) {
+            DepositType depositType = depositTypes.get(DepositType.getDepositTypeId(document));
+            long convertStart = System.nanoTime();
+            if (run.columnarWriter != null) {
+                try {
+                    run.columnarWriter.addRow(document, run.context.getColumnPlan(depositType));
+                } catch (IllegalArgumentException e) {
+                    run.rejected(document, e);
+                    continue;
+                }
+                run.metrics.converted(System.nanoTime() - convertStart);
+                run.exported(document);
+            } else {
+                row.clear();
+                Converter.appendCSVLine(document, depositType, run.context, row);
+                run.metrics.converted(System.nanoTime() - convertStart);
+                run.write(document, row.array(), 0, row.size());
+            }
+        }
+    }
+
+    private void exportParallel(Iterable<Document> documents,
+                                final ExportRun run,
+                                int parallelism,
+                                boolean preserveOrder) throws IOException {
+        pipeline.run(
+                documents,
+                parallelism,
+                preserveOrder,
+                new ParallelExportPipeline.RowEncoder() {
+                    @Override
+                    public boolean encode(Document document, CsvRowBuffer row) {
+                        if (!run.accepts(document)) {
+                            return false;
+                        }
+                        long resolveStart = System.nanoTime();
+                        DepositType depositType = depositTypeCache.getDepositType(DepositType.getDepositTypeId(document));
+                        long convertStart = System.nanoTime();
+                        run.metrics.resolved(convertStart - resolveStart);
+                        Converter.appendCSVLine(document, depositType, run.context, row);
+                        run.metrics.converted(System.nanoTime() - convertStart);
+                        return true;
+                    }
+                },
+                new ParallelExportPipeline.RowWriter() {
+                    @Override
+                    public void write(Document document, byte[] bytes, int offset, int length) throws IOException {
+                        run.write(document, bytes, offset, length);
+                    }
+                }
+        );
+    }
+
+    /**
+     * Creates sink of the export file(s) with the CSV metadata written
+     */
+    private CsvSink createSink(File directory,
+                               ExportContext context,
+                               boolean gzip,
+                               boolean columnar,
+                               long maxFileSize,
+                               long maxFileRows,
+                               ExportRunMetrics metrics) throws IOException {
+        CsvSink.Factory fileSinkFactory = MeteredCsvSink.factory(gzip ? GzipCsvSink.factory(sinkFactory) : sinkFactory, metrics);
+        String baseName = getTargetBaseName();
+        String extension = (columnar ? FILE_NAME_COLUMNAR_EXTENSION : FILE_NAME_EXTENSION)
+                + (gzip ? FILE_NAME_GZIP_EXTENSION : "");
+
+        // File ${directory}/PREFIX_YYYYMMDD_HHMMSS.dcol[.gz] with the header written by the columnar writer
+        if (columnar) {
+            return fileSinkFactory.create(PathFactory.getFileInstance(directory, baseName + extension));
+        }
+
+        byte[] metaLine = context.getMetaLine().getBytes(Charsets.UTF_8);
+
+        // Parts ${directory}/PREFIX_YYYYMMDD_HHMMSS_partNNN.csv[.gz] with metadata in every part
+        if (maxFileSize > 0 || maxFileRows > 0) {
+            return new RollingCsvSink(directory, baseName, extension, fileSinkFactory, metaLine, maxFileSize, maxFileRows);
+        }
+
+        // File ${directory}/PREFIX_YYYYMMDD_HHMMSS.csv[.gz]
+        CsvSink sink = fileSinkFactory.create(PathFactory.getFileInstance(directory, baseName + extension));
+        try {
+            sink.write(metaLine, 0, metaLine.length);
+        } catch (IOException | RuntimeException e) {
+            IOUtils.closeQuietly(sink);
+            throw e;
+        }
+        return sink;
+    }
+
+    /**
+     * Creates writer of the partition files with the CSV metadata written into every partition
+     */
+    private PartitionedCsvWriter createPartitionedWriter(File directory,
+                                                         ExportContext context,
+                                                         boolean gzip,
+                                                         ExportRunMetrics metrics) {
+        CsvSink.Factory fileSinkFactory = MeteredCsvSink.factory(gzip ? GzipCsvSink.factory(sinkFactory) : sinkFactory, metrics);
+        String extension = FILE_NAME_EXTENSION + (gzip ? FILE_NAME_GZIP_EXTENSION : "");
+
+        // Files ${directory}/PREFIX_YYYYMMDD_HHMMSS_${partition}.csv[.gz] and ${directory}/PREFIX_YYYYMMDD_HHMMSS.manifest
+        return new PartitionedCsvWriter(directory, getTargetBaseName(), extension, fileSinkFactory,
+                context.getMetaLine().getBytes(Charsets.UTF_8));
+    }
+
+    /**
+     * Creates sink of the resumable export file continuing from the journal checkpoint,
+     * the CSV metadata is written into the new file only
+     */
+    private FileChannelCsvSink createResumableSink(File directory,
+                                                   ExportContext context,
+                                                   ExportJournal journal) throws IOException {
+        // File ${directory}/PREFIX_YYYYMMDD_HHMMSS.csv of the journal
+        FileChannelCsvSink sink = FileChannelCsvSink.resume(
+                PathFactory.getFileInstance(directory, journal.getTarget()), journal.getOffset());
+        if (journal.isEmpty()) {
+            try {
+                byte[] metaLine = context.getMetaLine().getBytes(Charsets.UTF_8);
+                sink.write(metaLine, 0, metaLine.length);
+            } catch (IOException | RuntimeException e) {
+                IOUtils.closeQuietly(sink);
+                throw e;
+            }
+        }
+        return sink;
+    }
+
+    private ExportContext createExportContext(ParameterSet params) throws ProcException {
+        String emptyFieldValue = params.get(PARAM_NAME_EMPTY_FIELD_VALUE);
+        String delimiter = params.get(PARAM_NAME_DELIMITER);
+        return new ExportContext(
+                StringUtils.hasLength(emptyFieldValue) ? emptyFieldValue : ExportContext.DEFAULT_EMPTY_FIELD_VALUE,
+                StringUtils.hasLength(delimiter) ? delimiter : ExportContext.DEFAULT_DELIMITER,
+                getDatePatternParam(params, PARAM_NAME_DATE_TIME_FORMAT, ExportContext.DEFAULT_DATE_TIME_PATTERN),
+                getDatePatternParam(params, PARAM_NAME_DATE_FORMAT, ExportContext.DEFAULT_DATE_PATTERN)
+        );
+    }
+
+    /**
+     * Creates query of the paged source loading only the fields read by the export
+     *
+     * @param start Start of the incremental export with its overlap, <tt>null</tt> for today's documents
+     */
+    private static DocumentQuery createDocumentQuery(Date today,
+                                                     ExportWatermark start,
+                                                     ExportWatermark resumeCursor,
+                                                     Set<String> projection) {
+        if (start != null) {
+            return new DocumentQuery(FINAL_STATES, null, null, resumeCursor != null ? resumeCursor : start, projection);
+        }
+        Date startOfDay = DateUtils.truncate(today, Calendar.DAY_OF_MONTH);
+        return new DocumentQuery(FINAL_STATES, startOfDay, DateUtils.addDays(startOfDay, 1),
+                resumeCursor != null ? resumeCursor : ExportWatermark.INITIAL, projection);
+    }
+
+    private static boolean inFinalState(Document document) {
         return FINAL_STATES.contains(document.getBankDocState().getSystemName());
     }
 
-    private static String getTargetFileName() {
-        return FILE_NAME_PREFIX
-                + FastDateFormat.getInstance(FILE_NAME_DATE_FORMAT).format(Calendar.getInstance())
-                + FILE_NAME_EXTENSION;
+    private int getIntParam(ParameterSet params, String name, int defaultValue) throws ProcException {
+        long value = getLongParam(params, name, defaultValue);
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            logger.error(String.format(PROCEDURE_MESSAGE_INVALID_PARAMETER, name, value));
+            throw new ProcException(String.format(PROCEDURE_MESSAGE_INVALID_PARAMETER, name, value));
+        }
+        return (int) value;
+    }
+
+    private String getDatePatternParam(ParameterSet params, String name, String defaultValue) throws ProcException {
+        String value = params.get(name);
+        if (!StringUtils.hasLength(value)) {
+            return defaultValue;
+        }
+        try {
+            FastDateFormat.getInstance(value);
+            return value;
+        } catch (IllegalArgumentException e) {
+            logger.error(String.format(PROCEDURE_MESSAGE_INVALID_PARAMETER, name, value));
+            throw new ProcException(String.format(PROCEDURE_MESSAGE_INVALID_PARAMETER, name, value));
+        }
+    }
+
+    private long getLongParam(ParameterSet params, String name, long defaultValue) throws ProcException {
+        String value = params.get(name);
+        if (!StringUtils.hasLength(value)) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            logger.error(String.format(PROCEDURE_MESSAGE_INVALID_PARAMETER, name, value));
+            throw new ProcException(String.format(PROCEDURE_MESSAGE_INVALID_PARAMETER, name, value));
+        }
+    }
+
+    private static String getTargetBaseName() {
+        return FILE_NAME_PREFIX + FastDateFormat.getInstance(FILE_NAME_DATE_FORMAT).format(Calendar.getInstance());
+    }
+
+    /**
+     * Stops the workers of the parallel export
+     */
+    public void shutdown() {
+        pipeline.shutdown();
     }
 
     public void setLogger(Logger logger) {
         this.logger = logger != null ? logger : Logger.getLogger(CsvExportProc.class);
     }
+
+    public void setDepositTypeCache(DepositTypeCache depositTypeCache) {
+        this.depositTypeCache = depositTypeCache;
+    }
+
+    public void setDocumentSource(DocumentSource documentSource) {
+        this.documentSource = documentSource;
+    }
+
+    public void setExportMetrics(CsvExportMetrics exportMetrics) {
+        this.exportMetrics = exportMetrics;
+    }
+
+    public void setMaxParallelism(int maxParallelism) {
+        if (maxParallelism < 1) {
+            throw new IllegalArgumentException(String.format("Invalid max parallelism: %s", maxParallelism));
+        }
+        this.maxParallelism = maxParallelism;
+    }
+
+    public void setJobExecutor(ExportJobExecutor jobExecutor) {
+        this.jobExecutor = jobExecutor;
+    }
+
+    public void setSinkFactory(CsvSink.Factory sinkFactory) {
+        this.sinkFactory = sinkFactory;
+    }
+
+    /**
+     * State of a single procedure run
+     */
+    private final class ExportRun {
+
+        private final ExportContext context;
+        private final CsvSink sink;
+        private final DocProcessResultList processResults = new DocProcessResultList();
+
+        // Documents not written by the sink, the incremental run with them is not committed
+        private int writeFailures;
+
+        // Columnar format only
+        private final ColumnarExportWriter columnarWriter;
+
+        private final Date today;
+
+        // Incremental export only, the start is the overlap before the watermark
+        private final ExportWatermark start;
+        private final long overlap;
+        private ExportWatermark.Tracker watermarkTracker;
+
+        private final ExportRunMetrics metrics;
+
+        // Partitioned export only
+        private PartitionedCsvWriter partitionedWriter;
+        private boolean partitionByDepositType;
+        private boolean partitionByCurrencyPair;
+
+        // Sorted export only
+        private ExternalCsvSorter sorter;
+        private boolean sortByTradeDate;
+
+        // Resumable export only
+        private File journalDirectory;
+        private ExportJournal journal;
+        private FileChannelCsvSink resumableSink;
+        private int checkpointRows;
+        private long journalRows;
+        private int uncheckpointedRows;
+
+        private ExportRun(ExportContext context,
+                          CsvSink sink,
+                          ColumnarExportWriter columnarWriter,
+                          Date today,
+                          ExportWatermark watermark,
+                          long overlap,
+                          ExportRunMetrics metrics) {
+            this.context = context;
+            this.sink = sink;
+            this.metrics = metrics;
+            this.columnarWriter = columnarWriter;
+            this.today = today;
+            this.start = watermark != null ? watermark.overlapStart(overlap) : null;
+            this.overlap = overlap;
+            this.watermarkTracker = watermark != null ? new ExportWatermark.Tracker(watermark, overlap) : null;
+        }
+
+        /**
+         * Routes written lines into the partitions instead of the sink
+         */
+        private void partitionBy(PartitionedCsvWriter partitionedWriter,
+                                 boolean partitionByDepositType,
+                                 boolean partitionByCurrencyPair) {
+            this.partitionedWriter = partitionedWriter;
+            this.partitionByDepositType = partitionByDepositType;
+            this.partitionByCurrencyPair = partitionByCurrencyPair;
+        }
+
+        /**
+         * Routes written lines into the sorter instead of the sink
+         */
+        private void sortBy(ExternalCsvSorter sorter, boolean sortByTradeDate) {
+            this.sorter = sorter;
+            this.sortByTradeDate = sortByTradeDate;
+        }
+
+        /**
+         * Records checkpoints of the written documents into the journal, the watermark of the resumed
+         * incremental export continues from the tracked watermark of the checkpoint
+         */
+        private void checkpointTo(File journalDirectory,
+                                  ExportJournal journal,
+                                  FileChannelCsvSink resumableSink,
+                                  int checkpointRows) {
+            this.journalDirectory = journalDirectory;
+            this.journal = journal;
+            this.resumableSink = resumableSink;
+            this.checkpointRows = checkpointRows;
+            this.journalRows = journal.getRows();
+            if (watermarkTracker != null && journal.getTracked() != null) {
+                watermarkTracker = new ExportWatermark.Tracker(journal.getTracked(), overlap);
+            }
+        }
+
+        /**
+         * Documents filter, thread-safe
+         *
+         * @return <tt>true</tt> for documents in final state modified today or after the overlap start
+         *         and not exported in the overlap window yet
+         */
+        private boolean accepts(Document document) {
+            long startTime = System.nanoTime();
+            boolean accepted = inFinalState(document) && (start != null
+                    ? start.isBefore(document) && !start.isExported(document)
+                    : DateUtils.isSameDay(document.getLastModifyDate(), today));
+            metrics.filtered(System.nanoTime() - startTime);
+            return accepted;
+        }
+
+        /**
+         * Writes encoded CSV-line, the write failure is reported as the document process result.
+         * The failure of a partition writer thread stops the run, the documents lost in the partition are reported.
+         *
+         * @throws PartitionedCsvWriter.PartitionWriteException if the partition of the document failed
+         */
+        private void write(Document document, byte[] bytes, int offset, int length) throws IOException {
+            try {
+                if (partitionedWriter != null) {
+                    partitionedWriter.write(getPartition(document), document.getDocId(), bytes, offset, length);
+                } else if (sorter != null) {
+                    sorter.add(getSortKey(document), bytes, offset, length);
+                } else {
+                    sink.write(bytes, offset, length);
+                }
+            } catch (PartitionedCsvWriter.PartitionWriteException e) {
+                reportLost(e);
+                throw e;
+            } catch (IOException e) {
+                failed(document, e);
+                return;
+            }
+            exported(document);
+        }
+
+        /**
+         * Commits the partitions, the documents lost by a failed partition writer thread are reported
+         */
+        private void commitPartitions() throws IOException {
+            try {
+                partitionedWriter.commit();
+            } catch (PartitionedCsvWriter.PartitionWriteException e) {
+                reportLost(e);
+                throw e;
+            }
+        }
+
+        /**
+         * Reports the documents lost by the failed partition, the run is not committed
+         */
+        private void reportLost(PartitionedCsvWriter.PartitionWriteException e) {
+            for (long lostDocId : e.getLostRowIds()) {
+                logger.error(String.format(PROCEDURE_MESSAGE_DOCUMENT_EXPORT_EXCEPTION, lostDocId), e);
+            }
+        }
+
+        /**
+         * Reports the document write failure as the document process result
+         */
+        private void failed(Document document, Exception e) {
+            logger.error(String.format(PROCEDURE_MESSAGE_DOCUMENT_EXPORT_EXCEPTION, document.getDocId()), e);
+            processResults.add(new DocumentProcessResult(e, document));
+            metrics.failed();
+            writeFailures++;
+        }
+
+        /**
+         * Reports the document with values not representable in the output as the document process result.
+         * The document is not exported, but the watermark moves past it, so it does not stop the next runs.
+         */
+        private void rejected(Document document, Exception e) {
+            logger.error(String.format(PROCEDURE_MESSAGE_DOCUMENT_REJECTED, document.getDocId()), e);
+            processResults.add(new DocumentProcessResult(e, document));
+            metrics.failed();
+            if (watermarkTracker != null) {
+                watermarkTracker.advance(document);
+            }
+        }
+
+        /**
+         * @return Partition name of the document, the deposit type is resolved by the cache
+         */
+        private String getPartition(Document document) {
+            DepositType depositType = partitionByDepositType
+                    ? depositTypeCache.getDepositType(DepositType.getDepositTypeId(document))
+                    : null;
+            Object currencyPair = partitionByCurrencyPair
+                    ? document.getFieldValue(SpecificDocumentType.FIELD_BASEASSET)
+                    : null;
+            if (partitionByDepositType && partitionByCurrencyPair) {
+                return PartitionedCsvWriter.partitionName(depositType, currencyPair);
+            }
+            return PartitionedCsvWriter.partitionName(partitionByDepositType ? depositType : currencyPair);
+        }
+
+        /**
+         * @return Sort key of the document: trade date if sorted by it, then trade id
+         */
+        private ExternalCsvSorter.Key getSortKey(Document document) {
+            Date tradeDate = sortByTradeDate
+                    ? (Date) document.getFieldValue(SpecificDocumentType.FIELD_CONTRACTDATE)
+                    : null;
+            Number tradeId = (Number) document.getFieldValue(SpecificDocumentType.FIELD_STRUCTUREID);
+            return new ExternalCsvSorter.Key(tradeDate != null ? tradeDate.getTime() : Long.MIN_VALUE, tradeId);
+        }
+
+        /**
+         * Registers successfully written document
+         */
+        private void exported(Document document) {
+            metrics.exported();
+            if (watermarkTracker != null) {
+                watermarkTracker.advance(document);
+            }
+            if (journal != null) {
+                journalRows++;
+                if (++uncheckpointedRows >= checkpointRows) {
+                    checkpoint(document);
+                }
+            }
+        }
+
+        /**
+         * Makes the written documents durable and moves the journal checkpoint to the document.
+         * Checkpoints stop after the first failed write, so the resumed run exports the document again;
+         * the journal failure stops checkpoints, but not the export.
+         */
+        private void checkpoint(Document document) {
+            uncheckpointedRows = 0;
+            if (writeFailures > 0) {
+                return;
+            }
+            try {
+                ExportJournal next = journal.checkpoint(ExportWatermark.of(document),
+                        watermarkTracker != null ? watermarkTracker.getWatermark() : null,
+                        resumableSink.checkpoint(), journalRows);
+                next.store(journalDirectory);
+                journal = next;
+            } catch (IOException e) {
+                logger.error(String.format(PROCEDURE_MESSAGE_JOURNAL_EXCEPTION, journalDirectory), e);
+                journal = null;
+            }
+        }
+    }
 }
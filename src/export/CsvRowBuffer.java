@@ -0,0 +1,239 @@
+package export;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.time.FastDateFormat;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * Reusable UTF-8 buffer for CSV-lines encoding.
+ * <p>
+ * Values are encoded directly into the buffer: strings without intermediate byte arrays, integral numbers digit by
+ * digit, dates through a per-format cache of the last encoded value. The buffer is not thread-safe, every thread
+ * encodes into its own instance.
+ */
+public class CsvRowBuffer {
+
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    private static final long MILLIS_PER_SECOND = 1000L;
+    private static final long MILLIS_PER_DAY    = 24L * 60L * 60L * MILLIS_PER_SECOND;
+
+    private static final byte[] LONG_MIN_VALUE = String.valueOf(Long.MIN_VALUE).getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * Precision of the date format, dates within the same period have the same encoded value
+     */
+    public enum DateResolution {
+        /**
+         * Output depends on the time zone name or offset, which changes on a DST transition at any instant,
+         * the encoded value is never reused
+         */
+        NONE,
+        MILLISECOND,
+        SECOND,
+        DAY;
+
+        // FastDateFormat pattern letters of the time zone and time fields
+        private static final String ZONE_LETTERS        = "zZ";
+        private static final String MILLISECOND_LETTERS = "S";
+        private static final String TIME_LETTERS        = "HhKkmsa";
+
+        /**
+         * Quoted literals are checked as well, which may only give a finer resolution than needed
+         *
+         * @param pattern Date format pattern
+         *
+         * @return The coarsest resolution the pattern output depends on
+         */
+        public static DateResolution of(String pattern) {
+            if (StringUtils.containsAny(pattern, ZONE_LETTERS)) {
+                return NONE;
+            }
+            if (StringUtils.containsAny(pattern, MILLISECOND_LETTERS)) {
+                return MILLISECOND;
+            }
+            if (StringUtils.containsAny(pattern, TIME_LETTERS)) {
+                return SECOND;
+            }
+            return DAY;
+        }
+    }
+
+    private final Map<FastDateFormat, CachedDate> cachedDates = new IdentityHashMap<>();
+
+    private byte[] bytes;
+    private int size;
+
+    public CsvRowBuffer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public CsvRowBuffer(int capacity) {
+        this.bytes = new byte[capacity];
+    }
+
+    /**
+     * @return Underlying array, valid bytes are <tt>[0, size)</tt>
+     */
+    public byte[] array() {
+        return bytes;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Drops bytes after the position
+     *
+     * @param position New size
+     */
+    public void truncate(int position) {
+        size = position;
+    }
+
+    public CsvRowBuffer append(byte[] value) {
+        ensureCapacity(value.length);
+        System.arraycopy(value, 0, bytes, size, value.length);
+        size += value.length;
+        return this;
+    }
+
+    /**
+     * Appends UTF-8 encoded string, <tt>null</tt> is appended as an empty string
+     */
+    public CsvRowBuffer append(String value) {
+        if (value == null) {
+            return this;
+        }
+        int length = value.length();
+        ensureCapacity(length * 3);
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                bytes[size++] = (byte) c;
+            } else if (c < 0x800) {
+                bytes[size++] = (byte) (0xC0 | (c >> 6));
+                bytes[size++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                bytes[size++] = (byte) (0xF0 | (codePoint >> 18));
+                bytes[size++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                bytes[size++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                bytes[size++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                // Unpaired surrogate is replaced as String.getBytes(UTF_8) does
+                bytes[size++] = (byte) '?';
+            } else {
+                bytes[size++] = (byte) (0xE0 | (c >> 12));
+                bytes[size++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                bytes[size++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Appends decimal representation of the number, same as {@link Long#toString(long)}
+     */
+    public CsvRowBuffer append(long value) {
+        if (value == Long.MIN_VALUE) {
+            return append(LONG_MIN_VALUE);
+        }
+        ensureCapacity(20);
+        if (value < 0) {
+            bytes[size++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long rest = value / 10; rest != 0; rest /= 10) {
+            digits++;
+        }
+        int position = size + digits;
+        do {
+            bytes[--position] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        size += digits;
+        return this;
+    }
+
+    /**
+     * Appends number value, same as <tt>value.toString()</tt>
+     *
+     * @throws NullPointerException for <tt>null</tt> value
+     */
+    public CsvRowBuffer appendNumber(Object value) {
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return append(((Number) value).longValue());
+        }
+        return append(value.toString());
+    }
+
+    /**
+     * Appends formatted date, same as <tt>format.format(value)</tt>.
+     * The last encoded value of every format is reused while the date stays within the same resolution period,
+     * except for the {@link DateResolution#NONE} resolution.
+     */
+    public CsvRowBuffer appendDate(FastDateFormat format, DateResolution resolution, Object value) {
+        if (!(value instanceof Date) || resolution == DateResolution.NONE) {
+            return append(format.format(value));
+        }
+        long period = getPeriod(format, resolution, ((Date) value).getTime());
+        CachedDate cachedDate = cachedDates.get(format);
+        if (cachedDate == null) {
+            cachedDate = new CachedDate();
+            cachedDates.put(format, cachedDate);
+        }
+        if (cachedDate.encoded == null || cachedDate.period != period) {
+            cachedDate.period = period;
+            cachedDate.encoded = format.format(value).getBytes(StandardCharsets.UTF_8);
+        }
+        return append(cachedDate.encoded);
+    }
+
+    /**
+     * @return Copy of the valid bytes
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(bytes, size);
+    }
+
+    @Override
+    public String toString() {
+        return new String(bytes, 0, size, StandardCharsets.UTF_8);
+    }
+
+    private static long getPeriod(FastDateFormat format, DateResolution resolution, long millis) {
+        switch (resolution) {
+            case DAY:
+                TimeZone timeZone = format.getTimeZone();
+                return Math.floorDiv(millis + timeZone.getOffset(millis), MILLIS_PER_DAY);
+            case SECOND:
+                return Math.floorDiv(millis, MILLIS_PER_SECOND);
+            default:
+                return millis;
+        }
+    }
+
+    private void ensureCapacity(int additional) {
+        if (size + additional > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + additional));
+        }
+    }
+
+    private static final class CachedDate {
+        private long period;
+        private byte[] encoded;
+    }
+}
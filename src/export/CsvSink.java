@@ -0,0 +1,53 @@
+package export;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Destination of the export CSV-lines.
+ * <p>
+ * Lines are written in order; the output becomes visible only after {@link #commit()}.
+ * Closing a sink that was not committed discards everything written to it.
+ */
+public interface CsvSink extends Closeable {
+
+    /**
+     * Writes encoded CSV-line (or a part of it)
+     *
+     * @param bytes  Source bytes
+     * @param offset Offset of the first byte
+     * @param length Number of bytes
+     *
+     * @throws IOException on write failure
+     */
+    void write(byte[] bytes, int offset, int length) throws IOException;
+
+    /**
+     * Flushes written data and publishes the output
+     *
+     * @throws IOException on flush or publish failure
+     */
+    void commit() throws IOException;
+
+    /**
+     * Releases resources, uncommitted output is discarded
+     */
+    @Override
+    void close() throws IOException;
+
+    /**
+     * Creates sinks for the target files
+     */
+    interface Factory {
+
+        /**
+         * @param target Target file
+         *
+         * @return New sink, the target file is not visible until the sink is committed
+         *
+         * @throws IOException if the sink cannot be opened
+         */
+        CsvSink create(File target) throws IOException;
+    }
+}
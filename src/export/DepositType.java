@@ -24,6 +24,8 @@ public enum  DepositType {
         "B_Name"
     );
 
+    static final String MESSAGE_DEPOSIT_TYPE_NOT_FOUND = "Deposit type with id = %s cannot be received";
+
     private final String depositTypeId;
     private final String depositType;
     private final String depositName;
@@ -49,16 +51,39 @@ public enum  DepositType {
     }
 
     public static DepositType getDepositType(Document document, DictionaryService dictionaryService) {
-        final Long id = document.getFieldValue(SpecificDocumentType.FIELD_DEPOSITTYPEID);
+        return getDepositTypeById(getDepositTypeId(document), dictionaryService);
+    }
+
+    /**
+     * @param document Document
+     *
+     * @return Deposit type id of the document
+     */
+    public static Long getDepositTypeId(Document document) {
+        return document.getFieldValue(SpecificDocumentType.FIELD_DEPOSITTYPEID);
+    }
+
+    private static DepositType getDepositTypeById(Long id, DictionaryService dictionaryService) {
+        DepositType depositType = findDepositTypeById(id, dictionaryService);
+        if (null != depositType) {
+            return depositType;
+        } else {
+            throw new IllegalStateException(String.format(MESSAGE_DEPOSIT_TYPE_NOT_FOUND, id));
+        }
+    }
+
+    /**
+     * @param id                Deposit type id
+     * @param dictionaryService Dictionary service
+     *
+     * @return Deposit type or <tt>null</tt>, if dictionary has no entry with the id
+     */
+    static DepositType findDepositTypeById(Long id, DictionaryService dictionaryService) {
         DictCriteriaQuery query = new DictCriteriaQuery(SpecificDictionary.DICT_NAME);
         query.addCondition(new EqConditionExpression(DictCriteriaQuery.ID, id));
         query.addCondition(new NotCondition(new NullConditionExpression(SpecificDictionary.DEPOSITSTRUCTURALTYPESDICT_TYPEDEPOSITID)));
         FieldSet fieldSet = dictionaryService.getFirst(query);
-        if (null != fieldSet) {
-            return StructuralDepositType.getStructuralDepositTypeByTypeId(fieldSet.getStringFieldValue(SpecificDictionary.TYPEDEPOSITID));
-        } else {
-            throw new IllegalStateException(String.format("Deposit type with id = %s cannot be received", id));
-        }
+        return null != fieldSet ? getDepositTypeByTypeId(fieldSet.getStringFieldValue(SpecificDictionary.TYPEDEPOSITID)) : null;
     }
 
     private static DepositType getDepositTypeByTypeId(String depositTypeId) {
@@ -0,0 +1,157 @@
+package export;
+
+// Project imports:
+//      Document
+//      DictionaryService
+//      Service
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deposit types dictionary cache shared by export procedure runs.
+ * <p>
+ * Entries are evicted by size and time-to-live. Ids without dictionary entry are cached separately with a short
+ * time-to-live (negative caching), so the missing ids do not hit the dictionary for every document, and an id added
+ * to the dictionary is resolved soon after.
+ */
+public class DepositTypeCache {
+
+    private static final long DEFAULT_MAXIMUM_SIZE                   = 1000;
+    private static final long DEFAULT_TIME_TO_LIVE_MINUTES           = 60;
+    private static final long DEFAULT_NOT_FOUND_TIME_TO_LIVE_SECONDS = 60;
+
+    @Service("dictionaryService")
+    private DictionaryService dictionaryService;
+
+    private final Cache<Long, DepositType> cache;
+
+    // Ids without dictionary entry
+    private final Cache<Long, Boolean> notFoundIds;
+
+    public DepositTypeCache() {
+        this(DEFAULT_MAXIMUM_SIZE, DEFAULT_TIME_TO_LIVE_MINUTES);
+    }
+
+    public DepositTypeCache(long maximumSize, long timeToLiveMinutes) {
+        this(maximumSize, timeToLiveMinutes, DEFAULT_NOT_FOUND_TIME_TO_LIVE_SECONDS);
+    }
+
+    public DepositTypeCache(long maximumSize, long timeToLiveMinutes, long notFoundTimeToLiveSeconds) {
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(timeToLiveMinutes, TimeUnit.MINUTES)
+                .recordStats()
+                .build();
+        this.notFoundIds = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(notFoundTimeToLiveSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Returns deposit type by id, the dictionary is requested on cache miss only
+     *
+     * @param id Deposit type id
+     *
+     * @return Deposit type
+     *
+     * @throws IllegalStateException if dictionary has no deposit type with the id
+     */
+    public DepositType getDepositType(final Long id) {
+        if (notFoundIds.getIfPresent(id) != null) {
+            throw new IllegalStateException(String.format(DepositType.MESSAGE_DEPOSIT_TYPE_NOT_FOUND, id));
+        }
+        try {
+            return cache.get(id, new Callable<DepositType>() {
+                @Override
+                public DepositType call() throws NotFoundException {
+                    DepositType depositType = DepositType.findDepositTypeById(id, dictionaryService);
+                    if (depositType == null) {
+                        notFoundIds.put(id, Boolean.TRUE);
+                        throw new NotFoundException();
+                    }
+                    return depositType;
+                }
+            });
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            if (e.getCause() instanceof NotFoundException) {
+                throw new IllegalStateException(String.format(DepositType.MESSAGE_DEPOSIT_TYPE_NOT_FOUND, id));
+            }
+            throw new IllegalStateException(String.format(DepositType.MESSAGE_DEPOSIT_TYPE_NOT_FOUND, id), e.getCause());
+        }
+    }
+
+    /**
+     * Resolves deposit types of all documents, every distinct type id is looked up once
+     *
+     * @param documents Documents
+     *
+     * @return Deposit types by {@link DepositType#getDepositTypeId(Document)} values
+     */
+    public Map<Long, DepositType> getDepositTypes(Iterable<Document> documents) {
+        Map<Long, DepositType> depositTypes = new HashMap<>();
+        for (Document document : documents) {
+            Long id = DepositType.getDepositTypeId(document);
+            if (!depositTypes.containsKey(id)) {
+                depositTypes.put(id, getDepositType(id));
+            }
+        }
+        return depositTypes;
+    }
+
+    /**
+     * Invalidates cached deposit type
+     *
+     * @param id Deposit type id
+     */
+    public void invalidate(Long id) {
+        cache.invalidate(id);
+        notFoundIds.invalidate(id);
+    }
+
+    /**
+     * Invalidates all cached deposit types
+     */
+    public void invalidateAll() {
+        cache.invalidateAll();
+        notFoundIds.invalidateAll();
+    }
+
+    /**
+     * @return Lookups answered without the dictionary request, the ids without entry included
+     */
+    public long getHitCount() {
+        return cache.stats().hitCount() + notFoundIds.stats().hitCount();
+    }
+
+    public long getMissCount() {
+        return cache.stats().missCount();
+    }
+
+    public long getSize() {
+        return cache.size() + notFoundIds.size();
+    }
+
+    /**
+     * @return Statistics snapshot of the found deposit types
+     */
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    /**
+     * Dictionary has no entry with the id
+     */
+    private static final class NotFoundException extends Exception {
+    }
+}
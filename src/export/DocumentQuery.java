@@ -0,0 +1,108 @@
+package export;
+
+// Project imports:
+//      Document
+
+import com.google.common.collect.ImmutableSet;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.Set;
+
+/**
+ * Export documents query pushed down to the {@link DocumentSource}.
+ * <p>
+ * Selects documents in one of the states with the modify date in <tt>[modifiedFrom, modifiedTo)</tt>, ordered by
+ * <tt>(lastModifyDate, docId)</tt> and located after the cursor. Only the projection fields of the selected documents
+ * are read by the export, so sources may load the documents without the other fields.
+ */
+public final class DocumentQuery {
+
+    private final Set<String> states;
+    private final Date modifiedFrom;
+    private final Date modifiedTo;
+    private final ExportWatermark cursor;
+    private final Set<String> projection;
+
+    /**
+     * @param states       Document states
+     * @param modifiedFrom Modify date lower bound (inclusive) or <tt>null</tt>
+     * @param modifiedTo   Modify date upper bound (exclusive) or <tt>null</tt>
+     * @param cursor       Position to continue after, {@link ExportWatermark#INITIAL} from the beginning
+     */
+    public DocumentQuery(Collection<String> states, Date modifiedFrom, Date modifiedTo, ExportWatermark cursor) {
+        this(states, modifiedFrom, modifiedTo, cursor, ImmutableSet.<String>of());
+    }
+
+    /**
+     * @param states       Document states
+     * @param modifiedFrom Modify date lower bound (inclusive) or <tt>null</tt>
+     * @param modifiedTo   Modify date upper bound (exclusive) or <tt>null</tt>
+     * @param cursor       Position to continue after, {@link ExportWatermark#INITIAL} from the beginning
+     * @param projection   Document fields to load, empty for all fields
+     */
+    public DocumentQuery(Collection<String> states,
+                         Date modifiedFrom,
+                         Date modifiedTo,
+                         ExportWatermark cursor,
+                         Collection<String> projection) {
+        this.states = ImmutableSet.copyOf(states);
+        this.modifiedFrom = modifiedFrom != null ? new Date(modifiedFrom.getTime()) : null;
+        this.modifiedTo = modifiedTo != null ? new Date(modifiedTo.getTime()) : null;
+        this.cursor = cursor;
+        this.projection = ImmutableSet.copyOf(projection);
+    }
+
+    public Set<String> getStates() {
+        return states;
+    }
+
+    public Date getModifiedFrom() {
+        return modifiedFrom != null ? new Date(modifiedFrom.getTime()) : null;
+    }
+
+    public Date getModifiedTo() {
+        return modifiedTo != null ? new Date(modifiedTo.getTime()) : null;
+    }
+
+    public ExportWatermark getCursor() {
+        return cursor;
+    }
+
+    /**
+     * @return Document fields to load besides the document attributes (id, state, modify date), empty for all fields
+     */
+    public Set<String> getProjection() {
+        return projection;
+    }
+
+    /**
+     * @param document Last document of the page
+     *
+     * @return Query of the next page
+     */
+    public DocumentQuery after(Document document) {
+        return new DocumentQuery(states, modifiedFrom, modifiedTo, ExportWatermark.of(document), projection);
+    }
+
+    /**
+     * Evaluates the query in memory
+     *
+     * @param document Document
+     *
+     * @return <tt>true</tt>, if the query selects the document
+     */
+    public boolean matches(Document document) {
+        long lastModifyTime = document.getLastModifyDate().getTime();
+        return states.contains(document.getBankDocState().getSystemName())
+                && (modifiedFrom == null || lastModifyTime >= modifiedFrom.getTime())
+                && (modifiedTo == null || lastModifyTime < modifiedTo.getTime())
+                && cursor.isBefore(document);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("DocumentQuery{states=%s, modifiedFrom=%s, modifiedTo=%s, cursor=%s, projection=%s}",
+                states, modifiedFrom, modifiedTo, cursor, projection);
+    }
+}
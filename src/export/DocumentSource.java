@@ -0,0 +1,36 @@
+package export;
+
+// Project imports:
+//      Document
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Source of the export documents read page by page.
+ * <p>
+ * Implementations evaluate the query on the storage side and load the projection fields only, so only the documents
+ * to export and the fields the export reads are loaded.
+ */
+public interface DocumentSource {
+
+    /**
+     * Returns the next page of documents
+     *
+     * @param query    Query with the cursor of the previous page
+     * @param pageSize Maximum number of documents
+     *
+     * @return Documents ordered by <tt>(lastModifyDate, docId)</tt>, the page shorter than <tt>pageSize</tt> is the last one
+     */
+    List<Document> fetchPage(DocumentQuery query, int pageSize);
+
+    /**
+     * Loads the documents by ids
+     *
+     * @param docIds     Document ids
+     * @param projection Document fields to load, empty for all fields
+     *
+     * @return Documents in the order of the ids, deleted documents are skipped
+     */
+    List<Document> load(List<Long> docIds, Set<String> projection);
+}
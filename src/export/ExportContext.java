@@ -0,0 +1,158 @@
+package export;
+
+// Project imports:
+//      SpecificDocumentType
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.time.FastDateFormat;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable settings of a single export run.
+ * <p>
+ * Column plans of all registered deposit types are compiled with the settings on creation, so runs with different
+ * settings convert documents concurrently without sharing mutable state.
+ */
+public final class ExportContext {
+
+    public static final String DEFAULT_EMPTY_FIELD_VALUE = "";
+    public static final String DEFAULT_DELIMITER         = ";";
+    public static final String DEFAULT_DATE_TIME_PATTERN = "yyyy-mm-dd hh:mm:ss";
+    public static final String DEFAULT_DATE_PATTERN      = "dd.MM.yyyy";
+
+    static final String END_OF_LINE = "\n";
+
+    private final String emptyFieldValue;
+    private final String delimiter;
+    private final FastDateFormat dateTimeFormat;
+    private final FastDateFormat dateFormat;
+    private final String metaLine;
+    private final Map<DepositType, ColumnPlan> columnPlans;
+    private final Set<String> projection;
+
+    /**
+     * @param emptyFieldValue Value of the empty fields
+     * @param delimiter       Columns delimiter
+     * @param dateTimePattern Pattern of the date-time columns
+     * @param datePattern     Pattern of the date columns
+     *
+     * @throws IllegalArgumentException on empty delimiter or invalid pattern
+     */
+    public ExportContext(String emptyFieldValue, String delimiter, String dateTimePattern, String datePattern) {
+        if (StringUtils.isEmpty(delimiter)) {
+            throw new IllegalArgumentException("Empty delimiter");
+        }
+        String fieldValue = emptyFieldValue != null ? emptyFieldValue : DEFAULT_EMPTY_FIELD_VALUE;
+        FastDateFormat dateTimeFormat = FastDateFormat.getInstance(dateTimePattern);
+        FastDateFormat dateFormat = FastDateFormat.getInstance(datePattern);
+
+        // Plans are compiled with a complete settings-only context, this one is not published before its fields are set
+        Map<DepositType, ColumnPlan> columnPlans = Collections.unmodifiableMap(Converter.compileColumnPlans(
+                new ExportContext(fieldValue, delimiter, dateTimeFormat, dateFormat,
+                        Collections.<DepositType, ColumnPlan>emptyMap(), Collections.<String>emptySet())));
+
+        // Deposit type id resolves the plan of the document
+        Set<String> fields = new LinkedHashSet<>();
+        fields.add(SpecificDocumentType.FIELD_DEPOSITTYPEID);
+        for (ColumnPlan columnPlan : columnPlans.values()) {
+            fields.addAll(columnPlan.getProjection());
+        }
+
+        this.emptyFieldValue = fieldValue;
+        this.delimiter = delimiter;
+        this.dateTimeFormat = dateTimeFormat;
+        this.dateFormat = dateFormat;
+        this.metaLine = createMetaLine(delimiter);
+        this.columnPlans = columnPlans;
+        this.projection = Collections.unmodifiableSet(fields);
+    }
+
+    private ExportContext(String emptyFieldValue,
+                          String delimiter,
+                          FastDateFormat dateTimeFormat,
+                          FastDateFormat dateFormat,
+                          Map<DepositType, ColumnPlan> columnPlans,
+                          Set<String> projection) {
+        this.emptyFieldValue = emptyFieldValue;
+        this.delimiter = delimiter;
+        this.dateTimeFormat = dateTimeFormat;
+        this.dateFormat = dateFormat;
+        this.metaLine = createMetaLine(delimiter);
+        this.columnPlans = columnPlans;
+        this.projection = projection;
+    }
+
+    /**
+     * @return Context with the default settings
+     */
+    public static ExportContext defaults() {
+        return new ExportContext(DEFAULT_EMPTY_FIELD_VALUE, DEFAULT_DELIMITER, DEFAULT_DATE_TIME_PATTERN, DEFAULT_DATE_PATTERN);
+    }
+
+    public String getEmptyFieldValue() {
+        return emptyFieldValue;
+    }
+
+    public String getDelimiter() {
+        return delimiter;
+    }
+
+    public String getEndOfLine() {
+        return END_OF_LINE;
+    }
+
+    /**
+     * @param style Date column style
+     *
+     * @return Format of the date columns with the style
+     */
+    public FastDateFormat getDateFormat(ColumnPlan.DateStyle style) {
+        switch (style) {
+            case DATE_TIME:
+                return dateTimeFormat;
+            default:
+                return dateFormat;
+        }
+    }
+
+    /**
+     * @return Metadata line with the context delimiter
+     */
+    public String getMetaLine() {
+        return metaLine;
+    }
+
+    /**
+     * @param depositType Document type
+     *
+     * @return Column plan of the document type compiled with the context settings
+     */
+    public ColumnPlan getColumnPlan(DepositType depositType) {
+        ColumnPlan columnPlan = columnPlans.get(depositType);
+        if (columnPlan == null) {
+            throw new IllegalArgumentException(String.format("There is no column plan for %s", depositType));
+        }
+        return columnPlan;
+    }
+
+    /**
+     * @return Names of the document fields read by the export of any registered document type
+     */
+    public Set<String> getProjection() {
+        return projection;
+    }
+
+    private static String createMetaLine(String delimiter) {
+        return StringUtils.join(Converter.getColumnNames(), delimiter) + END_OF_LINE;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ExportContext{emptyFieldValue='%s', delimiter='%s', dateTimeFormat='%s', dateFormat='%s'}",
+                emptyFieldValue, delimiter, dateTimeFormat.getPattern(), dateFormat.getPattern());
+    }
+}
@@ -0,0 +1,226 @@
+package export;
+
+// Project imports:
+//      Document
+//      DocProcessResultList
+//      TaskToken
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Future;
+
+/**
+ * Handle of the asynchronous export run, thread-safe.
+ * <p>
+ * Progress is read from the run metrics while the export is running. The estimated time is known only
+ * for the procedure documents, the paged source does not tell the number of documents in advance.
+ * Cancellation stops the documents iteration, the uncommitted output is deleted by the export.
+ */
+public class ExportJob {
+
+    public enum State {
+        QUEUED, RUNNING, SUCCEEDED, FAILED, CANCELLED
+    }
+
+    /**
+     * Export run of the job, called from the job thread
+     */
+    interface Task {
+
+        /**
+         * @param job Job of the run
+         *
+         * @return Results of the failed documents
+         *
+         * @throws Exception on export failure
+         */
+        DocProcessResultList run(ExportJob job) throws Exception;
+    }
+
+    private final TaskToken taskToken;
+    private final long totalDocuments;
+    private final long submitTime = System.currentTimeMillis();
+
+    private State state = State.QUEUED;
+    private Future<?> future;
+    private volatile boolean cancelRequested;
+    private volatile ExportRunMetrics metrics;
+    private long startTime;
+    private long finishTime;
+    private DocProcessResultList processResults;
+    private Throwable failure;
+
+    ExportJob(TaskToken taskToken, long totalDocuments) {
+        this.taskToken = taskToken;
+        this.totalDocuments = totalDocuments;
+    }
+
+    /**
+     * Requests the job cancellation, the queued job is cancelled at once
+     *
+     * @return <tt>false</tt>, if the job is already finished
+     */
+    public synchronized boolean cancel() {
+        if (isFinished()) {
+            return false;
+        }
+        cancelRequested = true;
+        if (state == State.QUEUED && future != null && future.cancel(false)) {
+            finish(State.CANCELLED, null, null);
+        }
+        return true;
+    }
+
+    public TaskToken getTaskToken() {
+        return taskToken;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public synchronized boolean isFinished() {
+        return state != State.QUEUED && state != State.RUNNING;
+    }
+
+    public boolean isCancelRequested() {
+        return cancelRequested;
+    }
+
+    /**
+     * @return Number of the documents in the procedure call, <tt>-1</tt> for the paged source
+     */
+    public long getTotalDocuments() {
+        return totalDocuments;
+    }
+
+    /**
+     * @return Number of the documents read and filtered
+     */
+    public long getDocumentsProcessed() {
+        ExportRunMetrics currentMetrics = metrics;
+        return currentMetrics != null ? currentMetrics.getDocumentsScanned() : 0;
+    }
+
+    public long getDocumentsExported() {
+        ExportRunMetrics currentMetrics = metrics;
+        return currentMetrics != null ? currentMetrics.getDocumentsExported() : 0;
+    }
+
+    public long getBytesWritten() {
+        ExportRunMetrics currentMetrics = metrics;
+        return currentMetrics != null ? currentMetrics.getBytesWritten() : 0;
+    }
+
+    /**
+     * @return Estimated time to the end of the running job by the current rate, <tt>-1</tt> if unknown
+     */
+    public synchronized long getEtaMillis() {
+        long processed = getDocumentsProcessed();
+        if (state != State.RUNNING || totalDocuments < 0 || processed == 0) {
+            return -1;
+        }
+        long elapsed = System.currentTimeMillis() - startTime;
+        return elapsed * Math.max(totalDocuments - processed, 0) / processed;
+    }
+
+    public long getSubmitTime() {
+        return submitTime;
+    }
+
+    public synchronized long getStartTime() {
+        return startTime;
+    }
+
+    public synchronized long getFinishTime() {
+        return finishTime;
+    }
+
+    /**
+     * @return Results of the failed documents of the finished job, <tt>null</tt> otherwise
+     */
+    public synchronized DocProcessResultList getProcessResults() {
+        return processResults;
+    }
+
+    /**
+     * @return Failure of the failed job, <tt>null</tt> otherwise
+     */
+    public synchronized Throwable getFailure() {
+        return failure;
+    }
+
+    /**
+     * Binds the run metrics to report progress
+     */
+    void track(ExportRunMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return Documents iterated until the job cancellation
+     */
+    Iterable<Document> cancellable(final Iterable<Document> documents) {
+        return new Iterable<Document>() {
+            @Override
+            public Iterator<Document> iterator() {
+                final Iterator<Document> iterator = documents.iterator();
+                return new Iterator<Document>() {
+                    @Override
+                    public boolean hasNext() {
+                        return !cancelRequested && iterator.hasNext();
+                    }
+
+                    @Override
+                    public Document next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        return iterator.next();
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+    }
+
+    synchronized void setFuture(Future<?> future) {
+        this.future = future;
+    }
+
+    /**
+     * Runs the task in the calling thread, the job cancelled while queued is skipped
+     */
+    void run(Task task) {
+        synchronized (this) {
+            if (state != State.QUEUED) {
+                return;
+            }
+            state = State.RUNNING;
+            startTime = System.currentTimeMillis();
+        }
+        try {
+            DocProcessResultList results = task.run(this);
+            finish(cancelRequested ? State.CANCELLED : State.SUCCEEDED, results, null);
+        } catch (Exception | Error e) {
+            finish(cancelRequested ? State.CANCELLED : State.FAILED, null, e);
+        }
+    }
+
+    private synchronized void finish(State state, DocProcessResultList processResults, Throwable failure) {
+        this.state = state;
+        this.processResults = processResults;
+        this.failure = failure;
+        this.finishTime = System.currentTimeMillis();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("ExportJob[state = %s, processed = %s of %s, exported = %s, bytes = %s, eta = %s ms]",
+                state, getDocumentsProcessed(), totalDocuments, getDocumentsExported(), getBytesWritten(), getEtaMillis());
+    }
+}
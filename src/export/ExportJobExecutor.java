@@ -0,0 +1,162 @@
+package export;
+
+// Project imports:
+//      TaskToken
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Node-wide executor of the asynchronous export jobs.
+ * <p>
+ * At most <tt>maxRunningJobs</tt> jobs run at once and at most <tt>maxQueuedJobs</tt> wait for a thread,
+ * further jobs are rejected. Jobs are registered by the task token of the procedure call; finished jobs are kept
+ * for the retention time to report their results.
+ */
+public class ExportJobExecutor {
+
+    private static final int    DEFAULT_MAX_RUNNING_JOBS       = 2;
+    private static final int    DEFAULT_MAX_QUEUED_JOBS        = 8;
+    private static final long   DEFAULT_FINISHED_JOB_RETENTION = TimeUnit.HOURS.toMillis(1);
+    private static final long   SHUTDOWN_TIMEOUT               = TimeUnit.SECONDS.toMillis(30);
+    private static final String JOB_THREAD_NAME                = "csv-export-job-";
+
+    private final ThreadPoolExecutor executor;
+    private final ConcurrentMap<TaskToken, ExportJob> jobs = new ConcurrentHashMap<>();
+    private final long finishedJobRetention;
+
+    public ExportJobExecutor() {
+        this(DEFAULT_MAX_RUNNING_JOBS, DEFAULT_MAX_QUEUED_JOBS);
+    }
+
+    public ExportJobExecutor(int maxRunningJobs, int maxQueuedJobs) {
+        this(maxRunningJobs, maxQueuedJobs, DEFAULT_FINISHED_JOB_RETENTION);
+    }
+
+    public ExportJobExecutor(int maxRunningJobs, int maxQueuedJobs, long finishedJobRetention) {
+        if (maxRunningJobs < 1 || maxQueuedJobs < 1) {
+            throw new IllegalArgumentException(String.format("Invalid job limits: running = %s, queued = %s",
+                    maxRunningJobs, maxQueuedJobs));
+        }
+        this.executor = new ThreadPoolExecutor(maxRunningJobs, maxRunningJobs, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(maxQueuedJobs), new JobThreadFactory());
+        this.finishedJobRetention = finishedJobRetention;
+    }
+
+    /**
+     * Submits the export job
+     *
+     * @param taskToken      Task token of the procedure call, the job handle key
+     * @param totalDocuments Number of the documents to report progress, <tt>-1</tt> if unknown
+     * @param task           Export run
+     *
+     * @return Job handle
+     *
+     * @throws RejectedExecutionException if the queue is full, the executor is shut down
+     *                                    or the task token has an unfinished job
+     */
+    ExportJob submit(TaskToken taskToken, long totalDocuments, final ExportJob.Task task) {
+        purgeFinishedJobs();
+        final ExportJob job = new ExportJob(taskToken, totalDocuments);
+        ExportJob previous = jobs.putIfAbsent(taskToken, job);
+        if (previous != null && (!previous.isFinished() || !jobs.replace(taskToken, previous, job))) {
+            throw new RejectedExecutionException(String.format("Task token has an unfinished job: %s", previous));
+        }
+        try {
+            Future<?> future = executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    job.run(task);
+                }
+            });
+            job.setFuture(future);
+        } catch (RejectedExecutionException e) {
+            jobs.remove(taskToken, job);
+            throw e;
+        }
+        return job;
+    }
+
+    /**
+     * @return Job of the task token, <tt>null</tt> if unknown or purged
+     */
+    public ExportJob getJob(TaskToken taskToken) {
+        return jobs.get(taskToken);
+    }
+
+    /**
+     * @return <tt>false</tt>, if the job is unknown or already finished
+     */
+    public boolean cancel(TaskToken taskToken) {
+        ExportJob job = jobs.get(taskToken);
+        return job != null && job.cancel();
+    }
+
+    /**
+     * @return Registered jobs
+     */
+    public Collection<ExportJob> getJobs() {
+        return new ArrayList<>(jobs.values());
+    }
+
+    public int getRunningJobCount() {
+        return executor.getActiveCount();
+    }
+
+    public int getQueuedJobCount() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Cancels all unfinished jobs and stops the executor. The running jobs stop at the next document and delete
+     * their uncommitted output, the threads of the jobs still running after the shutdown timeout are interrupted.
+     */
+    public void shutdown() {
+        for (ExportJob job : jobs.values()) {
+            job.cancel();
+        }
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void purgeFinishedJobs() {
+        // Jobs cancelled while queued hold their queue slots until purged
+        executor.purge();
+        long purgeBefore = System.currentTimeMillis() - finishedJobRetention;
+        for (Iterator<ExportJob> iterator = jobs.values().iterator(); iterator.hasNext(); ) {
+            ExportJob job = iterator.next();
+            if (job.isFinished() && job.getFinishTime() < purgeBefore) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private static final class JobThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, JOB_THREAD_NAME + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
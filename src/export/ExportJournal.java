@@ -0,0 +1,220 @@
+package export;
+
+// Project imports:
+//      PathFactory
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/**
+ * Progress journal of the resumable export.
+ * <p>
+ * The journal records the target file, the run settings and the last checkpoint: position of the last document
+ * made durable in the temporary file <tt>${target}.tmp</tt> and the file length at that moment. Documents are
+ * written in the <tt>(lastModifyDate, docId)</tt> order, so a restarted run truncates the temporary file to the
+ * checkpoint and continues with the documents after it. The checkpoint of the incremental export also keeps
+ * the watermark of the durable documents with its overlap window, so the resumed run stores the same watermark
+ * as an uninterrupted one. The journal is stored in the target directory, replaced
+ * atomically and deleted when the export file is committed.
+ */
+public final class ExportJournal {
+
+    private static final String FILE_NAME                  = ".csv-export.journal";
+    private static final String TEMP_FILE_SUFFIX           = ".tmp";
+    private static final String PROPERTY_TARGET            = "target";
+    private static final String PROPERTY_SETTINGS          = "settings";
+    private static final String PROPERTY_RUN_TIME          = "runTime";
+    private static final String PROPERTY_START_PREFIX      = "start";
+    private static final String PROPERTY_TRACKED_PREFIX    = "tracked";
+    private static final String PROPERTY_OFFSET            = "offset";
+    private static final String PROPERTY_ROWS              = "rows";
+
+    private final String target;
+    private final String settings;
+    private final long runTime;
+    private final ExportWatermark start;
+    private final ExportWatermark checkpoint;
+    private final ExportWatermark tracked;
+    private final long offset;
+    private final long rows;
+
+    private ExportJournal(String target,
+                          String settings,
+                          long runTime,
+                          ExportWatermark start,
+                          ExportWatermark checkpoint,
+                          ExportWatermark tracked,
+                          long offset,
+                          long rows) {
+        this.target = target;
+        this.settings = settings;
+        this.runTime = runTime;
+        this.start = start;
+        this.checkpoint = checkpoint;
+        this.tracked = tracked;
+        this.offset = offset;
+        this.rows = rows;
+    }
+
+    /**
+     * @param target   Export file name
+     * @param settings Run settings, the run is resumed only with the same settings
+     * @param runTime  Run start time, defines the exported day
+     * @param start    Watermark of the incremental export or <tt>null</tt>
+     *
+     * @return Journal of the new run without checkpoints
+     */
+    public static ExportJournal start(String target, String settings, long runTime, ExportWatermark start) {
+        return new ExportJournal(target, settings, runTime, start, ExportWatermark.INITIAL, null, 0, 0);
+    }
+
+    /**
+     * @param checkpoint Position of the last durable document
+     * @param tracked    Watermark of the durable documents of the incremental export or <tt>null</tt>
+     * @param offset     Durable length of the temporary file
+     * @param rows       Durable number of rows, header excluded
+     *
+     * @return Journal with the checkpoint
+     */
+    public ExportJournal checkpoint(ExportWatermark checkpoint, ExportWatermark tracked, long offset, long rows) {
+        return new ExportJournal(target, settings, runTime, start, checkpoint, tracked, offset, rows);
+    }
+
+    public String getTarget() {
+        return target;
+    }
+
+    public String getSettings() {
+        return settings;
+    }
+
+    public long getRunTime() {
+        return runTime;
+    }
+
+    public ExportWatermark getStart() {
+        return start;
+    }
+
+    public ExportWatermark getCheckpoint() {
+        return checkpoint;
+    }
+
+    /**
+     * @return Watermark of the durable documents with their overlap window, <tt>null</tt> before the first checkpoint
+     *         or for the full export
+     */
+    public ExportWatermark getTracked() {
+        return tracked;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    /**
+     * @return <tt>true</tt>, if nothing is durable yet
+     */
+    public boolean isEmpty() {
+        return offset == 0;
+    }
+
+    /**
+     * Loads journal of the directory
+     *
+     * @param directory Target directory
+     *
+     * @return Stored journal or <tt>null</tt>, if the directory has no journal
+     *
+     * @throws IOException if the journal cannot be read
+     */
+    public static ExportJournal load(File directory) throws IOException {
+        File file = PathFactory.getFileInstance(directory, FILE_NAME);
+        if (!file.exists()) {
+            return null;
+        }
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        try {
+            ExportWatermark checkpoint = ExportWatermark.load(properties, "");
+            if (checkpoint == null) {
+                throw new IOException(String.format("Invalid journal file %s", file));
+            }
+            return new ExportJournal(
+                    properties.getProperty(PROPERTY_TARGET),
+                    properties.getProperty(PROPERTY_SETTINGS),
+                    Long.parseLong(properties.getProperty(PROPERTY_RUN_TIME)),
+                    ExportWatermark.load(properties, PROPERTY_START_PREFIX),
+                    checkpoint,
+                    ExportWatermark.load(properties, PROPERTY_TRACKED_PREFIX),
+                    Long.parseLong(properties.getProperty(PROPERTY_OFFSET)),
+                    Long.parseLong(properties.getProperty(PROPERTY_ROWS))
+            );
+        } catch (NumberFormatException e) {
+            throw new IOException(String.format("Invalid journal file %s", file), e);
+        }
+    }
+
+    /**
+     * Atomically replaces journal of the directory, the temporary file is forced to disk before the replacement
+     *
+     * @param directory Target directory
+     *
+     * @throws IOException if the journal cannot be written
+     */
+    public void store(File directory) throws IOException {
+        File file = PathFactory.getFileInstance(directory, FILE_NAME);
+        File tempFile = PathFactory.getFileInstance(directory, FILE_NAME + TEMP_FILE_SUFFIX);
+        Properties properties = new Properties();
+        properties.setProperty(PROPERTY_TARGET, target);
+        properties.setProperty(PROPERTY_SETTINGS, settings);
+        properties.setProperty(PROPERTY_RUN_TIME, Long.toString(runTime));
+        if (start != null) {
+            start.store(properties, PROPERTY_START_PREFIX);
+        }
+        checkpoint.store(properties, "");
+        if (tracked != null) {
+            tracked.store(properties, PROPERTY_TRACKED_PREFIX);
+        }
+        properties.setProperty(PROPERTY_OFFSET, Long.toString(offset));
+        properties.setProperty(PROPERTY_ROWS, Long.toString(rows));
+        try (FileOutputStream output = new FileOutputStream(tempFile)) {
+            Writer writer = new OutputStreamWriter(output, StandardCharsets.UTF_8);
+            properties.store(writer, null);
+            writer.flush();
+            output.getFD().sync();
+        }
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Deletes journal of the directory
+     *
+     * @param directory Target directory
+     *
+     * @throws IOException if the journal cannot be deleted
+     */
+    public static void delete(File directory) throws IOException {
+        Files.deleteIfExists(PathFactory.getFileInstance(directory, FILE_NAME).toPath());
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ExportJournal{target=%s, runTime=%s, checkpoint=%s, offset=%s, rows=%s}",
+                target, runTime, checkpoint, offset, rows);
+    }
+}
@@ -0,0 +1,190 @@
+package export;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics of a single export run, thread-safe.
+ * <p>
+ * Phase times are summed over all threads, so in the parallel mode they may exceed the run duration.
+ * Garbage collections are counted JVM-wide over the run time, so they include collections caused by concurrent work;
+ * heap usage is sampled when the run finishes.
+ */
+public class ExportRunMetrics {
+
+    private static final String SUMMARY_FORMAT = "Export summary: %s, duration = %s ms, scanned = %s, exported = %s, failed = %s, "
+            + "bytes = %s, rows/s = %s, filtering = %s ms, dictionary = %s ms, conversion = %s ms, io = %s ms, "
+            + "conversion latency p50 = %s us, p99 = %s us, gc count = %s, gc = %s ms, heap used = %s bytes";
+
+    private final long startNanos = System.nanoTime();
+    private volatile long durationNanos = -1;
+    private volatile boolean aborted;
+
+    private final long startGcCount = getTotalGcCount();
+    private final long startGcMillis = getTotalGcMillis();
+    private volatile long gcCount = -1;
+    private volatile long gcMillis = -1;
+    private volatile long heapUsedBytes = -1;
+
+    private final LongAdder filteringNanos = new LongAdder();
+    private final LongAdder dictionaryNanos = new LongAdder();
+    private final LongAdder conversionNanos = new LongAdder();
+    private final LongAdder ioNanos = new LongAdder();
+
+    private final LongAdder documentsScanned = new LongAdder();
+    private final LongAdder documentsExported = new LongAdder();
+    private final LongAdder documentsFailed = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+
+    private final LatencyHistogram conversionLatency = new LatencyHistogram();
+
+    public void filtered(long nanos) {
+        filteringNanos.add(nanos);
+        documentsScanned.increment();
+    }
+
+    public void resolved(long nanos) {
+        dictionaryNanos.add(nanos);
+    }
+
+    public void converted(long nanos) {
+        conversionNanos.add(nanos);
+        conversionLatency.record(nanos);
+    }
+
+    public void written(long nanos, long bytes) {
+        ioNanos.add(nanos);
+        bytesWritten.add(bytes);
+    }
+
+    public void exported() {
+        documentsExported.increment();
+    }
+
+    public void failed() {
+        documentsFailed.increment();
+    }
+
+    /**
+     * Stops the run clock
+     */
+    public void finish() {
+        durationNanos = System.nanoTime() - startNanos;
+        gcCount = getTotalGcCount() - startGcCount;
+        gcMillis = getTotalGcMillis() - startGcMillis;
+        heapUsedBytes = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * Stops the run clock of the run aborted by a failure or a cancellation, nothing of it is committed
+     */
+    public void abort() {
+        aborted = true;
+        finish();
+    }
+
+    public boolean isAborted() {
+        return aborted;
+    }
+
+    public long getDurationMillis() {
+        long duration = durationNanos;
+        return TimeUnit.NANOSECONDS.toMillis(duration >= 0 ? duration : System.nanoTime() - startNanos);
+    }
+
+    public long getFilteringMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(filteringNanos.sum());
+    }
+
+    public long getDictionaryMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(dictionaryNanos.sum());
+    }
+
+    public long getConversionMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(conversionNanos.sum());
+    }
+
+    public long getIoMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(ioNanos.sum());
+    }
+
+    public long getDocumentsScanned() {
+        return documentsScanned.sum();
+    }
+
+    public long getDocumentsExported() {
+        return documentsExported.sum();
+    }
+
+    public long getDocumentsFailed() {
+        return documentsFailed.sum();
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+
+    public long getRowsPerSecond() {
+        long durationMillis = getDurationMillis();
+        return durationMillis > 0 ? getDocumentsExported() * 1000 / durationMillis : getDocumentsExported();
+    }
+
+    /**
+     * @return Number of the garbage collections since the run start
+     */
+    public long getGcCount() {
+        long count = gcCount;
+        return count >= 0 ? count : getTotalGcCount() - startGcCount;
+    }
+
+    /**
+     * @return Garbage collection time since the run start
+     */
+    public long getGcMillis() {
+        long millis = gcMillis;
+        return millis >= 0 ? millis : getTotalGcMillis() - startGcMillis;
+    }
+
+    /**
+     * @return Used heap at the run finish, current usage for the running export
+     */
+    public long getHeapUsedBytes() {
+        long bytes = heapUsedBytes;
+        return bytes >= 0 ? bytes : ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    public LatencyHistogram getConversionLatency() {
+        return conversionLatency;
+    }
+
+    /**
+     * @return One line summary of the run
+     */
+    public String toSummary() {
+        return String.format(SUMMARY_FORMAT, aborted ? "aborted" : "finished",
+                getDurationMillis(), getDocumentsScanned(), getDocumentsExported(), getDocumentsFailed(),
+                getBytesWritten(), getRowsPerSecond(), getFilteringMillis(), getDictionaryMillis(),
+                getConversionMillis(), getIoMillis(),
+                TimeUnit.NANOSECONDS.toMicros(conversionLatency.getPercentileNanos(50)),
+                TimeUnit.NANOSECONDS.toMicros(conversionLatency.getPercentileNanos(99)),
+                getGcCount(), getGcMillis(), getHeapUsedBytes());
+    }
+
+    private static long getTotalGcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(collector.getCollectionCount(), 0);
+        }
+        return count;
+    }
+
+    private static long getTotalGcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(collector.getCollectionTime(), 0);
+        }
+        return millis;
+    }
+}
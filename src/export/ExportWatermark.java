@@ -0,0 +1,296 @@
+package export;
+
+// Project imports:
+//      Document
+//      PathFactory
+
+import org.springframework.util.StringUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * High-watermark of the incremental export: modify date and id of the last exported document.
+ * <p>
+ * Documents are ordered by <tt>(lastModifyDate, docId)</tt>, the next run exports only documents after the
+ * watermark. Documents committed late with an earlier modify date are caught by the overlap window: the next run
+ * starts {@link #overlapStart overlap} before the watermark and skips the documents the watermark remembers as
+ * exported within the window. The watermark is stored in the target directory and replaced atomically.
+ */
+public final class ExportWatermark {
+
+    private static final String FILE_NAME                 = ".csv-export.watermark";
+    private static final String TEMP_FILE_SUFFIX          = ".tmp";
+    private static final String PROPERTY_LAST_MODIFY_TIME = "lastModifyTime";
+    private static final String PROPERTY_DOC_ID           = "docId";
+    private static final String PROPERTY_EXPORTED         = "exported";
+
+    // Exported documents format: lastModifyTime:docId,lastModifyTime:docId,...
+    private static final String EXPORTED_DELIMITER          = ",";
+    private static final String EXPORTED_POSITION_DELIMITER = ":";
+
+    /**
+     * Watermark before any document
+     */
+    public static final ExportWatermark INITIAL = new ExportWatermark(Long.MIN_VALUE, Long.MIN_VALUE,
+            new TreeMap<Long, Set<Long>>());
+
+    private final long lastModifyTime;
+    private final long docId;
+
+    // Ids of the exported documents by modify time within the overlap window
+    private final NavigableMap<Long, Set<Long>> exported;
+
+    private ExportWatermark(long lastModifyTime, long docId, NavigableMap<Long, Set<Long>> exported) {
+        this.lastModifyTime = lastModifyTime;
+        this.docId = docId;
+        this.exported = Collections.unmodifiableNavigableMap(exported);
+    }
+
+    /**
+     * @param document Document
+     *
+     * @return Watermark at the document
+     */
+    public static ExportWatermark of(Document document) {
+        return of(document.getLastModifyDate().getTime(), document.getDocId());
+    }
+
+    /**
+     * @param lastModifyTime Modify time of the document
+     * @param docId          Document id
+     *
+     * @return Watermark at the position
+     */
+    static ExportWatermark of(long lastModifyTime, long docId) {
+        return new ExportWatermark(lastModifyTime, docId, new TreeMap<Long, Set<Long>>());
+    }
+
+    /**
+     * @param document Document
+     *
+     * @return <tt>true</tt>, if the document was modified after the watermark
+     */
+    public boolean isBefore(Document document) {
+        return compareTo(document.getLastModifyDate().getTime(), document.getDocId()) < 0;
+    }
+
+    /**
+     * @param document Document
+     *
+     * @return <tt>true</tt>, if the document was exported with its current modify date within the overlap window
+     */
+    public boolean isExported(Document document) {
+        Set<Long> docIds = exported.get(document.getLastModifyDate().getTime());
+        return docIds != null && docIds.contains(document.getDocId());
+    }
+
+    /**
+     * @param overlapMillis Overlap window
+     *
+     * @return Watermark the overlap before this one, remembering the same exported documents
+     */
+    public ExportWatermark overlapStart(long overlapMillis) {
+        if (overlapMillis <= 0 || lastModifyTime == Long.MIN_VALUE) {
+            return this;
+        }
+        return new ExportWatermark(lastModifyTime - overlapMillis, Long.MIN_VALUE, new TreeMap<>(exported));
+    }
+
+    public long getLastModifyTime() {
+        return lastModifyTime;
+    }
+
+    public long getDocId() {
+        return docId;
+    }
+
+    /**
+     * Loads watermark of the directory
+     *
+     * @param directory Target directory
+     *
+     * @return Stored watermark or {@link #INITIAL}, if the directory has no watermark
+     *
+     * @throws IOException if the watermark cannot be read
+     */
+    public static ExportWatermark load(File directory) throws IOException {
+        File file = PathFactory.getFileInstance(directory, FILE_NAME);
+        if (!file.exists()) {
+            return INITIAL;
+        }
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        ExportWatermark watermark = load(properties, "");
+        if (watermark == null) {
+            throw new IOException(String.format("Invalid watermark file %s", file));
+        }
+        return watermark;
+    }
+
+    /**
+     * Atomically replaces watermark of the directory
+     *
+     * @param directory Target directory
+     *
+     * @throws IOException if the watermark cannot be written
+     */
+    public void store(File directory) throws IOException {
+        File file = PathFactory.getFileInstance(directory, FILE_NAME);
+        File tempFile = PathFactory.getFileInstance(directory, FILE_NAME + TEMP_FILE_SUFFIX);
+        Properties properties = new Properties();
+        store(properties, "");
+        try (Writer writer = Files.newBufferedWriter(tempFile.toPath(), StandardCharsets.UTF_8)) {
+            properties.store(writer, null);
+        }
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Reads watermark properties, the names are prefixed as <tt>startLastModifyTime</tt> for the <tt>start</tt> prefix
+     *
+     * @return Watermark or <tt>null</tt>, if the properties have no watermark
+     *
+     * @throws IOException on invalid property values
+     */
+    static ExportWatermark load(Properties properties, String prefix) throws IOException {
+        String lastModifyTimeValue = properties.getProperty(propertyName(prefix, PROPERTY_LAST_MODIFY_TIME));
+        if (lastModifyTimeValue == null) {
+            return null;
+        }
+        try {
+            NavigableMap<Long, Set<Long>> exported = new TreeMap<>();
+            String exportedValue = properties.getProperty(propertyName(prefix, PROPERTY_EXPORTED));
+            for (String position : StringUtils.delimitedListToStringArray(exportedValue, EXPORTED_DELIMITER)) {
+                if (!position.isEmpty()) {
+                    String[] parts = position.split(EXPORTED_POSITION_DELIMITER);
+                    add(exported, Long.parseLong(parts[0]), Long.parseLong(parts[1]));
+                }
+            }
+            return new ExportWatermark(
+                    Long.parseLong(lastModifyTimeValue),
+                    Long.parseLong(properties.getProperty(propertyName(prefix, PROPERTY_DOC_ID))),
+                    exported
+            );
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            throw new IOException(String.format("Invalid watermark properties %s", prefix), e);
+        }
+    }
+
+    /**
+     * Writes watermark properties, see {@link #load(Properties, String)}
+     */
+    void store(Properties properties, String prefix) {
+        properties.setProperty(propertyName(prefix, PROPERTY_LAST_MODIFY_TIME), Long.toString(lastModifyTime));
+        properties.setProperty(propertyName(prefix, PROPERTY_DOC_ID), Long.toString(docId));
+        StringBuilder exportedValue = new StringBuilder();
+        for (Map.Entry<Long, Set<Long>> entry : exported.entrySet()) {
+            for (Long exportedDocId : entry.getValue()) {
+                if (exportedValue.length() > 0) {
+                    exportedValue.append(EXPORTED_DELIMITER);
+                }
+                exportedValue.append(entry.getKey()).append(EXPORTED_POSITION_DELIMITER).append(exportedDocId);
+            }
+        }
+        properties.setProperty(propertyName(prefix, PROPERTY_EXPORTED), exportedValue.toString());
+    }
+
+    private static String propertyName(String prefix, String name) {
+        return prefix.isEmpty() ? name : prefix + StringUtils.capitalize(name);
+    }
+
+    private static void add(NavigableMap<Long, Set<Long>> exported, long lastModifyTime, long docId) {
+        Set<Long> docIds = exported.get(lastModifyTime);
+        if (docIds == null) {
+            docIds = new HashSet<>();
+            exported.put(lastModifyTime, docIds);
+        }
+        docIds.add(docId);
+    }
+
+    private int compareTo(long otherLastModifyTime, long otherDocId) {
+        int result = Long.compare(lastModifyTime, otherLastModifyTime);
+        return result != 0 ? result : Long.compare(docId, otherDocId);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ExportWatermark{lastModifyTime=%s, docId=%s, exported=%s}", lastModifyTime, docId, exported);
+    }
+
+    /**
+     * Collects the greatest watermark of the exported documents and the documents exported within the overlap window
+     * before it, not thread-safe
+     */
+    public static final class Tracker {
+
+        private final long overlapMillis;
+        private final NavigableMap<Long, Set<Long>> exported = new TreeMap<>();
+        private long lastModifyTime;
+        private long docId;
+
+        public Tracker(ExportWatermark start) {
+            this(start, 0);
+        }
+
+        /**
+         * @param start         Watermark of the previous run
+         * @param overlapMillis Overlap window of the next run
+         */
+        public Tracker(ExportWatermark start, long overlapMillis) {
+            this.overlapMillis = Math.max(overlapMillis, 0);
+            this.lastModifyTime = start.lastModifyTime;
+            this.docId = start.docId;
+            for (Map.Entry<Long, Set<Long>> entry : start.exported.entrySet()) {
+                exported.put(entry.getKey(), new HashSet<>(entry.getValue()));
+            }
+            prune();
+        }
+
+        /**
+         * Moves the watermark to the document, if the document is after it, and remembers the document
+         *
+         * @param document Exported document
+         */
+        public void advance(Document document) {
+            long documentLastModifyTime = document.getLastModifyDate().getTime();
+            long documentDocId = document.getDocId();
+            if (documentLastModifyTime > lastModifyTime
+                    || documentLastModifyTime == lastModifyTime && documentDocId > docId) {
+                lastModifyTime = documentLastModifyTime;
+                docId = documentDocId;
+            }
+            add(exported, documentLastModifyTime, documentDocId);
+            prune();
+        }
+
+        public ExportWatermark getWatermark() {
+            NavigableMap<Long, Set<Long>> window = new TreeMap<>();
+            for (Map.Entry<Long, Set<Long>> entry : exported.entrySet()) {
+                window.put(entry.getKey(), new HashSet<>(entry.getValue()));
+            }
+            return new ExportWatermark(lastModifyTime, docId, window);
+        }
+
+        // Documents before the overlap window of the next run are not queried again
+        private void prune() {
+            if (lastModifyTime != Long.MIN_VALUE) {
+                exported.headMap(lastModifyTime - overlapMillis, false).clear();
+            }
+        }
+    }
+}
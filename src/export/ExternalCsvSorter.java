@@ -0,0 +1,331 @@
+package export;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.ObjectUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * External merge sort of the encoded CSV-lines by {@link Key}.
+ * <p>
+ * Lines are buffered in memory up to the memory limit, then the buffer is sorted and spilled as a run file
+ * <tt>${baseName}*.sortrun</tt> into the directory. {@link #writeTo} merges the runs and the buffer into the sink;
+ * at most {@link #MAX_MERGE_FAN_IN} runs are merged at once, so the merge memory is bounded by the fan-in whatever
+ * the number of runs. Lines with equal keys keep the order they were added in. Not thread-safe.
+ */
+public class ExternalCsvSorter implements Closeable {
+
+    static final int MAX_MERGE_FAN_IN = 64;
+
+    private static final int    RUN_BUFFER_SIZE     = 64 * 1024;
+    private static final String RUN_FILE_EXTENSION  = ".sortrun";
+
+    // Estimated memory of a buffered line besides its bytes: line, key and list slot objects
+    private static final int LINE_OVERHEAD_BYTES = 96;
+
+    private static final Comparator<Line> LINE_ORDER = new Comparator<Line>() {
+        @Override
+        public int compare(Line first, Line second) {
+            return first.compareTo(second);
+        }
+    };
+
+    /**
+     * Sort key of a line: trade date, then trade id, then the order of addition. Missing values go first.
+     */
+    public static final class Key implements Comparable<Key> {
+
+        private final long tradeDate;
+        private final BigDecimal tradeId;
+
+        /**
+         * @param tradeDate Trade date time, {@link Long#MIN_VALUE} to sort by the trade id only
+         * @param tradeId   Trade id, <tt>null</tt> if missing
+         */
+        public Key(long tradeDate, Number tradeId) {
+            this.tradeDate = tradeDate;
+            this.tradeId = tradeId != null ? new BigDecimal(tradeId.toString()) : null;
+        }
+
+        @Override
+        public int compareTo(Key other) {
+            int result = Long.compare(tradeDate, other.tradeDate);
+            return result != 0 ? result : ObjectUtils.compare(tradeId, other.tradeId);
+        }
+    }
+
+    private final File directory;
+    private final String baseName;
+    private final long maxMemoryBytes;
+
+    private final List<Line> buffer = new ArrayList<>();
+    private long bufferBytes;
+    private long sequence;
+    private final List<File> runs = new ArrayList<>();
+
+    /**
+     * @param directory      Directory of the run files
+     * @param baseName       Run files name prefix
+     * @param maxMemoryBytes Estimated memory of the buffered lines to spill a run at
+     */
+    public ExternalCsvSorter(File directory, String baseName, long maxMemoryBytes) {
+        if (maxMemoryBytes < 1) {
+            throw new IllegalArgumentException(String.format("Invalid sort memory: %s", maxMemoryBytes));
+        }
+        this.directory = directory;
+        this.baseName = baseName;
+        this.maxMemoryBytes = maxMemoryBytes;
+    }
+
+    /**
+     * Adds encoded CSV-line
+     *
+     * @param key    Sort key of the line
+     * @param bytes  Buffer with the line
+     * @param offset Offset of the line
+     * @param length Length of the line
+     *
+     * @throws IOException on run spill failure
+     */
+    public void add(Key key, byte[] bytes, int offset, int length) throws IOException {
+        buffer.add(new Line(key, sequence++, Arrays.copyOfRange(bytes, offset, offset + length)));
+        bufferBytes += length + LINE_OVERHEAD_BYTES;
+        if (bufferBytes >= maxMemoryBytes) {
+            spill();
+        }
+    }
+
+    /**
+     * Writes all lines in the key order, one line per write
+     *
+     * @param sink Target sink
+     *
+     * @throws IOException on run read or sink write failure
+     */
+    public void writeTo(CsvSink sink) throws IOException {
+        if (runs.isEmpty()) {
+            Collections.sort(buffer, LINE_ORDER);
+            for (Line line : buffer) {
+                sink.write(line.bytes, 0, line.bytes.length);
+            }
+            buffer.clear();
+            bufferBytes = 0;
+            return;
+        }
+        spill();
+
+        // Intermediate merges until the last merge fits the fan-in
+        while (runs.size() > MAX_MERGE_FAN_IN) {
+            List<File> merged = new ArrayList<>(runs.subList(0, MAX_MERGE_FAN_IN));
+            File run = createRunFile();
+            runs.add(run);
+            DataOutputStream output = openRun(run);
+            try {
+                merge(merged, new RunOutput(output));
+                output.close();
+            } finally {
+                IOUtils.closeQuietly(output);
+            }
+            deleteRuns(merged);
+        }
+        merge(new ArrayList<>(runs), new SinkOutput(sink));
+    }
+
+    /**
+     * @return Number of the spilled runs
+     */
+    public int getRunCount() {
+        return runs.size();
+    }
+
+    /**
+     * Deletes the run files
+     */
+    @Override
+    public void close() {
+        buffer.clear();
+        deleteRuns(new ArrayList<>(runs));
+    }
+
+    private void spill() throws IOException {
+        if (buffer.isEmpty()) {
+            return;
+        }
+        Collections.sort(buffer, LINE_ORDER);
+        File run = createRunFile();
+        runs.add(run);
+        DataOutputStream output = openRun(run);
+        try {
+            RunOutput runOutput = new RunOutput(output);
+            for (Line line : buffer) {
+                runOutput.write(line);
+            }
+            output.close();
+        } finally {
+            IOUtils.closeQuietly(output);
+        }
+        buffer.clear();
+        bufferBytes = 0;
+    }
+
+    /**
+     * K-way merge of the runs by the priority queue of the run heads
+     */
+    private static void merge(List<File> runFiles, LineOutput output) throws IOException {
+        List<RunReader> readers = new ArrayList<>(runFiles.size());
+        try {
+            PriorityQueue<RunReader> heads = new PriorityQueue<>(runFiles.size());
+            for (File runFile : runFiles) {
+                RunReader reader = new RunReader(runFile);
+                readers.add(reader);
+                if (reader.next()) {
+                    heads.add(reader);
+                }
+            }
+            while (!heads.isEmpty()) {
+                RunReader reader = heads.poll();
+                output.write(reader.head);
+                if (reader.next()) {
+                    heads.add(reader);
+                }
+            }
+        } finally {
+            for (RunReader reader : readers) {
+                IOUtils.closeQuietly(reader);
+            }
+        }
+    }
+
+    private File createRunFile() throws IOException {
+        return File.createTempFile(baseName, RUN_FILE_EXTENSION, directory);
+    }
+
+    private static DataOutputStream openRun(File run) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run), RUN_BUFFER_SIZE));
+    }
+
+    private void deleteRuns(List<File> runFiles) {
+        for (File run : runFiles) {
+            FileUtils.deleteQuietly(run);
+            runs.remove(run);
+        }
+    }
+
+    private static final class Line implements Comparable<Line> {
+
+        private final Key key;
+        private final long sequence;
+        private final byte[] bytes;
+
+        private Line(Key key, long sequence, byte[] bytes) {
+            this.key = key;
+            this.sequence = sequence;
+            this.bytes = bytes;
+        }
+
+        @Override
+        public int compareTo(Line other) {
+            int result = key.compareTo(other.key);
+            return result != 0 ? result : Long.compare(sequence, other.sequence);
+        }
+    }
+
+    private interface LineOutput {
+
+        void write(Line line) throws IOException;
+    }
+
+    private static final class SinkOutput implements LineOutput {
+
+        private final CsvSink sink;
+
+        private SinkOutput(CsvSink sink) {
+            this.sink = sink;
+        }
+
+        @Override
+        public void write(Line line) throws IOException {
+            sink.write(line.bytes, 0, line.bytes.length);
+        }
+    }
+
+    /**
+     * Run record: trade date, trade id presence and value, sequence, line length and bytes
+     */
+    private static final class RunOutput implements LineOutput {
+
+        private final DataOutputStream output;
+
+        private RunOutput(DataOutputStream output) {
+            this.output = output;
+        }
+
+        @Override
+        public void write(Line line) throws IOException {
+            output.writeLong(line.key.tradeDate);
+            output.writeBoolean(line.key.tradeId != null);
+            if (line.key.tradeId != null) {
+                output.writeUTF(line.key.tradeId.toString());
+            }
+            output.writeLong(line.sequence);
+            output.writeInt(line.bytes.length);
+            output.write(line.bytes);
+        }
+    }
+
+    private static final class RunReader implements Comparable<RunReader>, Closeable {
+
+        private final DataInputStream input;
+        private Line head;
+
+        private RunReader(File run) throws IOException {
+            this.input = new DataInputStream(new BufferedInputStream(new FileInputStream(run), RUN_BUFFER_SIZE));
+        }
+
+        /**
+         * @return <tt>false</tt> at the end of the run
+         */
+        private boolean next() throws IOException {
+            long tradeDate;
+            try {
+                tradeDate = input.readLong();
+            } catch (EOFException e) {
+                head = null;
+                return false;
+            }
+            BigDecimal tradeId = input.readBoolean() ? new BigDecimal(input.readUTF()) : null;
+            long sequence = input.readLong();
+            byte[] bytes = new byte[input.readInt()];
+            input.readFully(bytes);
+            head = new Line(new Key(tradeDate, tradeId), sequence, bytes);
+            return true;
+        }
+
+        @Override
+        public int compareTo(RunReader other) {
+            return head.compareTo(other.head);
+        }
+
+        @Override
+        public void close() throws IOException {
+            input.close();
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package export;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * CSV sink over a single {@link FileChannel}.
+ * <p>
+ * Data is collected in a direct buffer and written in big chunks into the temporary file
+ * <tt>${target}.tmp</tt>, which is atomically renamed to the target file on {@link #commit()}.
+ * <p>
+ * A resumable sink keeps the temporary file on {@link #close()} without commit, so the export can be continued
+ * from the last {@link #checkpoint()} by {@link #resume(File, long)}.
+ * <p>
+ * The first I/O failure fails the sink: the buffered data of the earlier writes may be lost, so every later
+ * write, checkpoint and commit throws and the temporary file is never published.
+ */
+public class FileChannelCsvSink implements CsvSink {
+
+    private static final int    DEFAULT_BUFFER_SIZE = 1024 * 1024;
+    private static final String TEMP_FILE_SUFFIX    = ".tmp";
+
+    private final File target;
+    private final File tempFile;
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final boolean resumable;
+
+    // Length of the temporary file including the buffered data
+    private long position;
+    private boolean committed;
+    private IOException failure;
+
+    public FileChannelCsvSink(File target) throws IOException {
+        this(target, DEFAULT_BUFFER_SIZE);
+    }
+
+    public FileChannelCsvSink(File target, int bufferSize) throws IOException {
+        this(target, bufferSize, false);
+        try {
+            channel.truncate(0);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private FileChannelCsvSink(File target, int bufferSize, boolean resumable) throws IOException {
+        this.target = target;
+        this.tempFile = PathFactory.getFileInstance(target.getParentFile(), target.getName() + TEMP_FILE_SUFFIX);
+        this.channel = FileChannel.open(
+                tempFile.toPath(),
+                StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE
+        );
+        this.buffer = ByteBuffer.allocateDirect(bufferSize);
+        this.resumable = resumable;
+    }
+
+    /**
+     * Creates resumable sink continuing the temporary file of the target from the offset
+     *
+     * @param target Target file
+     * @param offset Durable length of the temporary file, <tt>0</tt> to start a new file
+     *
+     * @return Resumable sink positioned at the offset, the temporary file tail after the offset is truncated
+     *
+     * @throws IOException if the temporary file is shorter than the offset or cannot be opened
+     */
+    public static FileChannelCsvSink resume(File target, long offset) throws IOException {
+        FileChannelCsvSink sink = new FileChannelCsvSink(target, DEFAULT_BUFFER_SIZE, true);
+        try {
+            if (sink.channel.size() < offset) {
+                throw new IOException(String.format("Temporary file %s is shorter than %s bytes", sink.tempFile, offset));
+            }
+            sink.channel.truncate(offset);
+            sink.channel.position(offset);
+            sink.position = offset;
+        } catch (IOException | RuntimeException e) {
+            sink.channel.close();
+            throw e;
+        }
+        return sink;
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        checkNotFailed();
+        if (length > buffer.remaining()) {
+            flush();
+        }
+        if (length > buffer.capacity()) {
+            writeFully(ByteBuffer.wrap(bytes, offset, length));
+        } else {
+            buffer.put(bytes, offset, length);
+        }
+        position += length;
+    }
+
+    /**
+     * Deletes temporary file of the interrupted resumable sink
+     *
+     * @param target Target file
+     */
+    public static void discard(File target) throws IOException {
+        Files.deleteIfExists(PathFactory.getFileInstance(target.getParentFile(), target.getName() + TEMP_FILE_SUFFIX).toPath());
+    }
+
+    /**
+     * Makes the written data durable
+     *
+     * @return Durable length of the temporary file
+     */
+    public long checkpoint() throws IOException {
+        checkNotFailed();
+        flush();
+        force();
+        return position;
+    }
+
+    @Override
+    public void commit() throws IOException {
+        checkNotFailed();
+        flush();
+        force();
+        channel.close();
+        Files.move(tempFile.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        committed = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!committed) {
+            try {
+                channel.close();
+            } finally {
+                if (!resumable) {
+                    Files.deleteIfExists(tempFile.toPath());
+                }
+            }
+        }
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        try {
+            writeFully(buffer);
+        } finally {
+            buffer.clear();
+        }
+    }
+
+    private void force() throws IOException {
+        try {
+            channel.force(false);
+        } catch (IOException e) {
+            failure = e;
+            throw e;
+        }
+    }
+
+    private void writeFully(ByteBuffer source) throws IOException {
+        try {
+            while (source.hasRemaining()) {
+                channel.write(source);
+            }
+        } catch (IOException e) {
+            failure = e;
+            throw e;
+        }
+    }
+
+    private void checkNotFailed() throws IOException {
+        if (failure != null) {
+            throw new IOException(String.format("Sink of %s failed earlier", target), failure);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package export;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * CSV sink compressing data with gzip into the delegate sink.
+ * <p>
+ * The native memory of the deflater is released on {@link #close()} whether the sink was committed or not.
+ */
+public class GzipCsvSink implements CsvSink {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final CsvSink delegate;
+    private final SinkGzipOutputStream gzipStream;
+    private final OutputStream stream;
+
+    public GzipCsvSink(CsvSink delegate) throws IOException {
+        this.delegate = delegate;
+        this.gzipStream = new SinkGzipOutputStream(delegate);
+        this.stream = new BufferedOutputStream(gzipStream, BUFFER_SIZE);
+    }
+
+    /**
+     * @param delegate Factory of the compressed data sinks
+     *
+     * @return Factory of the gzip sinks
+     */
+    public static CsvSink.Factory factory(final CsvSink.Factory delegate) {
+        return new CsvSink.Factory() {
+            @Override
+            public CsvSink create(File target) throws IOException {
+                CsvSink sink = delegate.create(target);
+                try {
+                    return new GzipCsvSink(sink);
+                } catch (IOException | RuntimeException e) {
+                    sink.close();
+                    throw e;
+                }
+            }
+        };
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        stream.write(bytes, offset, length);
+    }
+
+    @Override
+    public void commit() throws IOException {
+        stream.flush();
+        gzipStream.finish();
+        delegate.commit();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            gzipStream.end();
+        } finally {
+            delegate.close();
+        }
+    }
+
+    /**
+     * Gzip stream into the sink, closing is up to the sink owner
+     */
+    private static final class SinkGzipOutputStream extends GZIPOutputStream {
+
+        private SinkGzipOutputStream(CsvSink sink) throws IOException {
+            super(new SinkOutputStream(sink), BUFFER_SIZE);
+        }
+
+        /**
+         * Releases the deflater without writing the trailer, the stream is unusable afterwards
+         */
+        private void end() {
+            def.end();
+        }
+    }
+
+    /**
+     * Output stream view of the sink, closing is up to the sink owner
+     */
+    private static final class SinkOutputStream extends OutputStream {
+
+        private final CsvSink sink;
+
+        private SinkOutputStream(CsvSink sink) {
+            this.sink = sink;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            sink.write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            sink.write(bytes, offset, length);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package export;
+
+// Project imports:
+//      Document
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Document source over a collection of documents, evaluates queries in memory.
+ * <p>
+ * Intended for offline tests of the paged export: counts fetched pages and documents. The documents are kept in the
+ * query order, so a page seeks to the cursor by binary search and stops at the modify date upper bound. The documents
+ * are already loaded and are returned with all their fields, the projection is not applied but is recorded, so the
+ * tests check the projection the export requests.
+ */
+public class InMemoryDocumentSource implements DocumentSource {
+
+    private static final Comparator<Document> DOCUMENT_ORDER = new Comparator<Document>() {
+        @Override
+        public int compare(Document first, Document second) {
+            int result = Long.compare(first.getLastModifyDate().getTime(), second.getLastModifyDate().getTime());
+            return result != 0 ? result : Long.compare(first.getDocId(), second.getDocId());
+        }
+    };
+
+    private final List<Document> documents;
+    private final Map<Long, Document> documentsById;
+    private final AtomicInteger fetchedPages = new AtomicInteger();
+    private final AtomicInteger fetchedDocuments = new AtomicInteger();
+    private volatile Set<String> lastProjection;
+
+    public InMemoryDocumentSource(Collection<Document> documents) {
+        List<Document> sorted = new ArrayList<>(documents);
+        Collections.sort(sorted, DOCUMENT_ORDER);
+        this.documents = Collections.unmodifiableList(sorted);
+        this.documentsById = new HashMap<>(sorted.size() * 2);
+        for (Document document : sorted) {
+            documentsById.put(document.getDocId(), document);
+        }
+    }
+
+    @Override
+    public List<Document> fetchPage(DocumentQuery query, int pageSize) {
+        List<Document> page = new ArrayList<>(pageSize);
+        Date modifiedTo = query.getModifiedTo();
+        for (int index = seek(query); index < documents.size() && page.size() < pageSize; index++) {
+            Document document = documents.get(index);
+            if (modifiedTo != null && document.getLastModifyDate().getTime() >= modifiedTo.getTime()) {
+                break;
+            }
+            if (query.matches(document)) {
+                page.add(document);
+            }
+        }
+        fetchedPages.incrementAndGet();
+        fetchedDocuments.addAndGet(page.size());
+        lastProjection = query.getProjection();
+        return page;
+    }
+
+    @Override
+    public List<Document> load(List<Long> docIds, Set<String> projection) {
+        List<Document> loaded = new ArrayList<>(docIds.size());
+        for (Long docId : docIds) {
+            Document document = documentsById.get(docId);
+            if (document != null) {
+                loaded.add(document);
+            }
+        }
+        fetchedPages.incrementAndGet();
+        fetchedDocuments.addAndGet(loaded.size());
+        lastProjection = projection;
+        return loaded;
+    }
+
+    public int getFetchedPages() {
+        return fetchedPages.get();
+    }
+
+    public int getFetchedDocuments() {
+        return fetchedDocuments.get();
+    }
+
+    /**
+     * @return Projection of the last page or load, <tt>null</tt> before the first one
+     */
+    public Set<String> getLastProjection() {
+        return lastProjection;
+    }
+
+    /**
+     * @return Index of the first document after the query cursor and not before the query modify date lower bound
+     */
+    private int seek(DocumentQuery query) {
+        ExportWatermark cursor = query.getCursor();
+        Date modifiedFrom = query.getModifiedFrom();
+        int low = 0;
+        int high = documents.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            Document document = documents.get(middle);
+            if (cursor.isBefore(document)
+                    && (modifiedFrom == null || document.getLastModifyDate().getTime() >= modifiedFrom.getTime())) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,62 @@
+package export;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread-safe latency histogram with power-of-two nanosecond buckets.
+ * <p>
+ * Recording is lock-free and allocation-free; percentiles are reported as the upper bound of the bucket,
+ * so they are accurate within a factor of two.
+ */
+public class LatencyHistogram {
+
+    private static final int BUCKETS = Long.SIZE;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+
+    /**
+     * @param nanos Latency in nanoseconds
+     */
+    public void record(long nanos) {
+        long value = Math.max(nanos, 0);
+        // Bucket i holds [2^(i-1), 2^i - 1], bucket 0 holds zero
+        counts.incrementAndGet(Long.SIZE - Long.numberOfLeadingZeros(value));
+        count.increment();
+        totalNanos.add(value);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getMeanNanos() {
+        long samples = count.sum();
+        return samples > 0 ? totalNanos.sum() / samples : 0;
+    }
+
+    /**
+     * @param percentile Percentile in <tt>(0, 100]</tt>
+     *
+     * @return Upper bound of the bucket with the percentile, <tt>0</tt> without samples
+     */
+    public long getPercentileNanos(double percentile) {
+        long samples = 0;
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            samples += snapshot[i];
+        }
+        long rank = (long) Math.ceil(samples * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank && seen > 0) {
+                return i == 0 ? 0 : i == BUCKETS - 1 ? Long.MAX_VALUE : (1L << i) - 1;
+            }
+        }
+        return 0;
+    }
+}
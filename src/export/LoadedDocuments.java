@@ -0,0 +1,89 @@
+package export;
+
+// Project imports:
+//      Document
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Documents of the ids loaded lazily page by page with the projection fields, only the ids and the current page
+ * are kept in memory. Documents deleted since the ids were taken are skipped.
+ */
+public class LoadedDocuments implements Iterable<Document> {
+
+    private final DocumentSource source;
+    private final long[] docIds;
+    private final Set<String> projection;
+    private final int pageSize;
+
+    public LoadedDocuments(DocumentSource source, long[] docIds, Set<String> projection, int pageSize) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException(String.format("Invalid page size: %s", pageSize));
+        }
+        this.source = source;
+        this.docIds = docIds;
+        this.projection = projection;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * @return Ids of the documents in the iteration order
+     */
+    public static long[] getDocIds(Collection<Document> documents) {
+        long[] docIds = new long[documents.size()];
+        int index = 0;
+        for (Document document : documents) {
+            docIds[index++] = document.getDocId();
+        }
+        return docIds;
+    }
+
+    @Override
+    public Iterator<Document> iterator() {
+        return new PageIterator();
+    }
+
+    private final class PageIterator implements Iterator<Document> {
+
+        private List<Document> page = Collections.emptyList();
+        private int position;
+        private int loaded;
+
+        @Override
+        public boolean hasNext() {
+            while (position == page.size()) {
+                if (loaded == docIds.length) {
+                    return false;
+                }
+                int size = Math.min(pageSize, docIds.length - loaded);
+                List<Long> pageDocIds = new ArrayList<>(size);
+                for (int i = loaded; i < loaded + size; i++) {
+                    pageDocIds.add(docIds[i]);
+                }
+                page = source.load(pageDocIds, projection);
+                position = 0;
+                loaded += size;
+            }
+            return true;
+        }
+
+        @Override
+        public Document next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return page.get(position++);
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package export;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * CSV sink recording written bytes and time spent in the delegate sink
+ */
+public class MeteredCsvSink implements CsvSink {
+
+    private final CsvSink delegate;
+    private final ExportRunMetrics metrics;
+
+    public MeteredCsvSink(CsvSink delegate, ExportRunMetrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    /**
+     * @param delegate Factory of the metered sinks
+     * @param metrics  Run metrics
+     *
+     * @return Factory of the metered sinks
+     */
+    public static CsvSink.Factory factory(final CsvSink.Factory delegate, final ExportRunMetrics metrics) {
+        return new CsvSink.Factory() {
+            @Override
+            public CsvSink create(File target) throws IOException {
+                return new MeteredCsvSink(delegate.create(target), metrics);
+            }
+        };
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        long start = System.nanoTime();
+        delegate.write(bytes, offset, length);
+        metrics.written(System.nanoTime() - start, length);
+    }
+
+    @Override
+    public void commit() throws IOException {
+        long start = System.nanoTime();
+        delegate.commit();
+        metrics.written(System.nanoTime() - start, 0);
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+    }
+}
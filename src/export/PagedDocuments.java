@@ -0,0 +1,70 @@
+package export;
+
+// Project imports:
+//      Document
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Documents of the query read lazily page by page, only the current page is kept in memory
+ */
+public class PagedDocuments implements Iterable<Document> {
+
+    private final DocumentSource source;
+    private final DocumentQuery query;
+    private final int pageSize;
+
+    public PagedDocuments(DocumentSource source, DocumentQuery query, int pageSize) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException(String.format("Invalid page size: %s", pageSize));
+        }
+        this.source = source;
+        this.query = query;
+        this.pageSize = pageSize;
+    }
+
+    @Override
+    public Iterator<Document> iterator() {
+        return new PageIterator();
+    }
+
+    private final class PageIterator implements Iterator<Document> {
+
+        private DocumentQuery pageQuery = query;
+        private List<Document> page = Collections.emptyList();
+        private int position;
+        private boolean lastPage;
+
+        @Override
+        public boolean hasNext() {
+            while (position == page.size()) {
+                if (lastPage) {
+                    return false;
+                }
+                page = source.fetchPage(pageQuery, pageSize);
+                position = 0;
+                lastPage = page.size() < pageSize;
+                if (!page.isEmpty()) {
+                    pageQuery = pageQuery.after(page.get(page.size() - 1));
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public Document next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return page.get(position++);
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,310 @@
+package export;
+
+// Project imports:
+//      Document
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Export pipeline with parallel documents filtering and conversion, shared by the export runs. Thread-safe.
+ * <p>
+ * Documents are split into chunks which are encoded by the workers of the run, encoded rows are passed to the
+ * single writer (the calling thread). The number of chunks in flight is bounded, so the workers wait for the writer
+ * when it falls behind. In ordered mode rows are written in the documents order, otherwise chunks are written
+ * as soon as they are encoded. A failure of a worker or of the writer stops the run: the chunks in flight are
+ * cancelled and the workers of the run are stopped.
+ * <p>
+ * Worker threads are pooled across the runs and idle threads expire. Chunks with their row buffers are pooled
+ * as well, a chunk is reused as soon as its rows are written.
+ */
+public class ParallelExportPipeline {
+
+    static final int IN_FLIGHT_CHUNKS_PER_WORKER = 2;
+
+    private static final int    DEFAULT_CHUNK_SIZE    = 512;
+    private static final int    CHUNK_BUFFER_CAPACITY = 64 * 1024;
+    private static final int    MAX_POOLED_CHUNKS     = 64;
+    private static final String WORKER_THREAD_NAME    = "csv-export-worker-";
+
+    /**
+     * Encodes document to CSV-line, called from worker threads
+     */
+    public interface RowEncoder {
+
+        /**
+         * @param document Document
+         * @param row      Buffer to append the encoded CSV-line to
+         *
+         * @return <tt>false</tt>, if the document is not exported
+         */
+        boolean encode(Document document, CsvRowBuffer row);
+    }
+
+    /**
+     * Writes encoded CSV-lines, called from the calling thread only
+     */
+    public interface RowWriter {
+
+        /**
+         * @param document Document
+         * @param bytes    Buffer with the encoded CSV-line of the document
+         * @param offset   Offset of the line
+         * @param length   Length of the line
+         *
+         * @throws IOException if the export cannot continue, the pipeline is stopped
+         */
+        void write(Document document, byte[] bytes, int offset, int length) throws IOException;
+    }
+
+    private final int chunkSize;
+    private final ExecutorService executor = Executors.newCachedThreadPool(new WorkerThreadFactory());
+    private final Queue<Chunk> pooledChunks = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooledChunkCount = new AtomicInteger();
+    private final AtomicInteger activeWorkers = new AtomicInteger();
+
+    public ParallelExportPipeline() {
+        this(DEFAULT_CHUNK_SIZE);
+    }
+
+    public ParallelExportPipeline(int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException(String.format("Invalid chunk size: %s", chunkSize));
+        }
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Encodes and writes documents
+     *
+     * @param documents     Documents
+     * @param parallelism   Number of the workers of the run
+     * @param preserveOrder <tt>true</tt> to write rows in the documents order
+     * @param encoder       Row encoder
+     * @param writer        Row writer
+     *
+     * @throws IOException if the pipeline is interrupted or the writer fails
+     */
+    public void run(Iterable<Document> documents,
+                    int parallelism,
+                    boolean preserveOrder,
+                    RowEncoder encoder,
+                    RowWriter writer) throws IOException {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException(String.format("Invalid parallelism: %s", parallelism));
+        }
+        BlockingQueue<Runnable> pending = new LinkedBlockingQueue<>();
+        // Encoded chunks in the completion order, unordered mode only
+        BlockingQueue<ChunkTask> completed = preserveOrder ? null : new LinkedBlockingQueue<ChunkTask>();
+        Deque<ChunkTask> inFlight = new ArrayDeque<>();
+        int maxInFlight = parallelism * IN_FLIGHT_CHUNKS_PER_WORKER;
+
+        List<Future<?>> workers = new ArrayList<>(parallelism);
+        try {
+            for (int i = 0; i < parallelism; i++) {
+                workers.add(executor.submit(new Worker(pending)));
+            }
+            Iterator<Document> iterator = documents.iterator();
+            while (iterator.hasNext()) {
+                ChunkTask task = new ChunkTask(nextDocuments(iterator), encoder, completed);
+                inFlight.addLast(task);
+                pending.add(task);
+                if (inFlight.size() >= maxInFlight) {
+                    writeChunk(nextCompleted(inFlight, completed), writer);
+                }
+            }
+            while (!inFlight.isEmpty()) {
+                writeChunk(nextCompleted(inFlight, completed), writer);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Export pipeline interrupted", e);
+        } finally {
+            // Chunks of the failed run are not pooled, a cancelled chunk may still be encoded
+            for (ChunkTask task : inFlight) {
+                task.cancel(false);
+            }
+            for (Future<?> worker : workers) {
+                worker.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Stops the worker threads, the pipeline cannot be run after it
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * @return Number of the workers running or waiting for chunks
+     */
+    int getActiveWorkerCount() {
+        return activeWorkers.get();
+    }
+
+    private Chunk nextDocuments(Iterator<Document> iterator) {
+        Chunk chunk = pooledChunks.poll();
+        if (chunk != null) {
+            pooledChunkCount.decrementAndGet();
+        } else {
+            chunk = new Chunk(chunkSize);
+        }
+        while (iterator.hasNext() && chunk.documents.size() < chunkSize) {
+            chunk.documents.add(iterator.next());
+        }
+        return chunk;
+    }
+
+    private Chunk nextCompleted(Deque<ChunkTask> inFlight, BlockingQueue<ChunkTask> completed) throws InterruptedException {
+        ChunkTask task;
+        if (completed == null) {
+            task = inFlight.removeFirst();
+        } else {
+            task = completed.take();
+            inFlight.remove(task);
+        }
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    private void writeChunk(Chunk chunk, RowWriter writer) throws IOException {
+        int offset = 0;
+        for (int i = 0; i < chunk.exported.size(); i++) {
+            writer.write(chunk.exported.get(i), chunk.rows.array(), offset, chunk.rowEnds[i] - offset);
+            offset = chunk.rowEnds[i];
+        }
+        chunk.clear();
+        if (pooledChunkCount.incrementAndGet() <= MAX_POOLED_CHUNKS) {
+            pooledChunks.offer(chunk);
+        } else {
+            pooledChunkCount.decrementAndGet();
+        }
+    }
+
+    /**
+     * Documents of a chunk with their encoded rows
+     */
+    private static final class Chunk {
+
+        private final List<Document> documents;
+        private final List<Document> exported;
+        private final CsvRowBuffer rows = new CsvRowBuffer(CHUNK_BUFFER_CAPACITY);
+        private final int[] rowEnds;
+
+        private Chunk(int chunkSize) {
+            this.documents = new ArrayList<>(chunkSize);
+            this.exported = new ArrayList<>(chunkSize);
+            this.rowEnds = new int[chunkSize];
+        }
+
+        private void encode(RowEncoder encoder) {
+            for (Document document : documents) {
+                int rowStart = rows.size();
+                if (encoder.encode(document, rows)) {
+                    rowEnds[exported.size()] = rows.size();
+                    exported.add(document);
+                } else {
+                    rows.truncate(rowStart);
+                }
+            }
+        }
+
+        private void clear() {
+            documents.clear();
+            exported.clear();
+            rows.clear();
+        }
+    }
+
+    /**
+     * Encoding of a chunk, reports its completion to the completion queue of the unordered run
+     */
+    private static final class ChunkTask extends FutureTask<Chunk> {
+
+        private final BlockingQueue<ChunkTask> completed;
+
+        private ChunkTask(final Chunk chunk, final RowEncoder encoder, BlockingQueue<ChunkTask> completed) {
+            super(new Callable<Chunk>() {
+                @Override
+                public Chunk call() {
+                    chunk.encode(encoder);
+                    return chunk;
+                }
+            });
+            this.completed = completed;
+        }
+
+        @Override
+        protected void done() {
+            if (completed != null) {
+                completed.add(this);
+            }
+        }
+    }
+
+    /**
+     * Worker of a run, encodes the chunks of the run until cancelled
+     */
+    private final class Worker implements Runnable {
+
+        private final BlockingQueue<Runnable> pending;
+
+        private Worker(BlockingQueue<Runnable> pending) {
+            this.pending = pending;
+        }
+
+        @Override
+        public void run() {
+            activeWorkers.incrementAndGet();
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    pending.take().run();
+                }
+            } catch (InterruptedException e) {
+                // The run is finished
+            } finally {
+                activeWorkers.decrementAndGet();
+            }
+        }
+    }
+
+    private static final class WorkerThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, WORKER_THREAD_NAME + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
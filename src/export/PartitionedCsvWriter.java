@@ -0,0 +1,467 @@
+package export;
+
+// Project imports:
+//      PathFactory
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writer of the export split into partition files.
+ * <p>
+ * Every partition is written into <tt>${baseName}_${partition}${extension}</tt> with the header. Rows are handed
+ * over in blocks to a bounded pool of writer threads, every partition is written by the same thread, so a thread
+ * serves several partitions when there are more partitions than threads. The number of partitions is limited as well,
+ * every open partition holds its sink and block buffer until the commit. On {@link #commit()} all partition files are
+ * committed and the manifest <tt>${baseName}.manifest</tt> listing the partitions with row counts is written
+ * atomically. If the writer is closed without {@link #commit()}, the partition files are deleted.
+ * <p>
+ * A failed partition write loses the rows of the failed block and of all the later blocks of the partition, the
+ * writing of the partition stops with a {@link PartitionWriteException} listing the ids of the lost rows.
+ * <p>
+ * Rows must be written from a single thread.
+ */
+public class PartitionedCsvWriter implements Closeable {
+
+    public static final int DEFAULT_MAX_PARTITIONS = 256;
+    public static final int DEFAULT_WRITER_THREADS = 4;
+
+    private static final String PARTITION_NAME_FORMAT = "%s_%s%s";
+    private static final String MANIFEST_EXTENSION    = ".manifest";
+    private static final String MANIFEST_HEADER       = "Partition;File;Rows";
+    private static final String MANIFEST_LINE_FORMAT  = "%s;%s;%s";
+    private static final String TEMP_FILE_SUFFIX      = ".tmp";
+    private static final String WRITER_THREAD_NAME    = "csv-export-partition-writer-%s";
+
+    // Rows are handed over to the writer thread in blocks of the size
+    private static final int BLOCK_SIZE = 64 * 1024;
+
+    // Blocks waiting for a writer thread, the producer is blocked when the queue is full
+    private static final int QUEUED_BLOCKS_PER_WRITER = 8;
+
+    // Initial capacity of the row ids of a block
+    private static final int BLOCK_ROW_IDS = 256;
+
+    private static final long[] NO_ROW_IDS = new long[0];
+
+    // End of the writer data
+    private static final Block END_OF_DATA = new Block(null, new byte[0], NO_ROW_IDS);
+
+    private final File directory;
+    private final String baseName;
+    private final String extension;
+    private final CsvSink.Factory partitionFactory;
+    private final byte[] header;
+    private final int maxPartitions;
+    private final PartitionWriter[] writers;
+
+    private final Map<String, Partition> partitions = new LinkedHashMap<>();
+    private final List<File> committedFiles = new ArrayList<>();
+    private int startedWriters;
+    private boolean finished;
+    private boolean committed;
+
+    /**
+     * @param directory        Target directory
+     * @param baseName         Partition file name prefix
+     * @param extension        Partition file name extension
+     * @param partitionFactory Factory of the partition sinks, the sinks are used by the writer threads
+     * @param header           Header written into every partition
+     */
+    public PartitionedCsvWriter(File directory,
+                                String baseName,
+                                String extension,
+                                CsvSink.Factory partitionFactory,
+                                byte[] header) {
+        this(directory, baseName, extension, partitionFactory, header, DEFAULT_MAX_PARTITIONS, DEFAULT_WRITER_THREADS);
+    }
+
+    /**
+     * @param directory        Target directory
+     * @param baseName         Partition file name prefix
+     * @param extension        Partition file name extension
+     * @param partitionFactory Factory of the partition sinks, the sinks are used by the writer threads
+     * @param header           Header written into every partition
+     * @param maxPartitions    Maximum number of partitions
+     * @param writerThreads    Maximum number of writer threads
+     */
+    public PartitionedCsvWriter(File directory,
+                                String baseName,
+                                String extension,
+                                CsvSink.Factory partitionFactory,
+                                byte[] header,
+                                int maxPartitions,
+                                int writerThreads) {
+        if (maxPartitions < 1 || writerThreads < 1) {
+            throw new IllegalArgumentException(String.format("Invalid partitioning: max partitions = %s, writer threads = %s",
+                    maxPartitions, writerThreads));
+        }
+        this.directory = directory;
+        this.baseName = baseName;
+        this.extension = extension;
+        this.partitionFactory = partitionFactory;
+        this.header = header.clone();
+        this.maxPartitions = maxPartitions;
+        this.writers = new PartitionWriter[Math.min(writerThreads, maxPartitions)];
+    }
+
+    /**
+     * Writes whole CSV-line(s) into the partition, the partition is created on the first write
+     *
+     * @param partition Partition name, characters other than letters, digits, <tt>-</tt> and <tt>.</tt> are replaced
+     * @param rowId     Id of the written row, reported if the row is lost
+     * @param bytes     Encoded lines
+     * @param offset    Offset of the lines
+     * @param length    Length of the lines
+     *
+     * @throws PartitionWriteException if the writer thread failed to write the previous lines of the partition
+     * @throws IOException             if the partition cannot be created: the partition limit is reached
+     *                                 or the sink cannot be opened
+     */
+    public void write(String partition, long rowId, byte[] bytes, int offset, int length) throws IOException {
+        Partition target = partitions.get(partition);
+        if (target == null) {
+            target = startPartition(partition);
+        }
+        target.write(rowId, bytes, offset, length);
+    }
+
+    /**
+     * Waits for the writer threads, commits the partition files and writes the manifest
+     *
+     * @throws PartitionWriteException if the writer thread failed to write a partition
+     */
+    public void commit() throws IOException {
+        finish();
+        for (Partition partition : partitions.values()) {
+            partition.sink.commit();
+            committedFiles.add(partition.file);
+        }
+        writeManifest();
+        committed = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (!finished) {
+                for (int i = 0; i < startedWriters; i++) {
+                    writers[i].thread.interrupt();
+                }
+                for (int i = 0; i < startedWriters; i++) {
+                    writers[i].join();
+                }
+            }
+            for (Partition partition : partitions.values()) {
+                IOUtils.closeQuietly(partition.sink);
+            }
+        } finally {
+            if (!committed) {
+                for (File committedFile : committedFiles) {
+                    Files.deleteIfExists(committedFile.toPath());
+                }
+            }
+        }
+    }
+
+    /**
+     * @return Rows written into the partitions in the order of the partitions creation
+     */
+    public Map<String, Long> getRowCounts() {
+        Map<String, Long> rowCounts = new LinkedHashMap<>();
+        for (Partition partition : partitions.values()) {
+            rowCounts.put(partition.name, partition.rows);
+        }
+        return rowCounts;
+    }
+
+    /**
+     * @return Name of the partition for the key parts, empty and <tt>null</tt> parts are named <tt>none</tt>
+     */
+    public static String partitionName(Object... keyParts) {
+        StringBuilder name = new StringBuilder();
+        for (Object keyPart : keyParts) {
+            if (name.length() > 0) {
+                name.append('_');
+            }
+            String value = keyPart != null ? keyPart.toString() : "";
+            name.append(value.isEmpty() ? "none" : value);
+        }
+        return name.toString();
+    }
+
+    private Partition startPartition(String name) throws IOException {
+        if (partitions.size() >= maxPartitions) {
+            throw new IOException(String.format("Partition %s exceeds the limit of %s partitions", name, maxPartitions));
+        }
+        String fileName = String.format(PARTITION_NAME_FORMAT, baseName, name.replaceAll("[^A-Za-z0-9.-]", "-"), extension);
+        File file = PathFactory.getFileInstance(directory, fileName);
+        for (Partition partition : partitions.values()) {
+            if (partition.file.equals(file)) {
+                throw new IOException(String.format("Partitions %s and %s share file %s", partition.name, name, file));
+            }
+        }
+        CsvSink sink = partitionFactory.create(file);
+
+        // Partitions are assigned to the writers round-robin, the writer threads are started on demand
+        int writerIndex = partitions.size() % writers.length;
+        if (writers[writerIndex] == null) {
+            writers[writerIndex] = new PartitionWriter(writerIndex);
+            writers[writerIndex].thread.start();
+            startedWriters++;
+        }
+        Partition partition = new Partition(name, file, sink, writers[writerIndex]);
+        partitions.put(name, partition);
+        partition.writeHeader(header);
+        return partition;
+    }
+
+    private void finish() throws IOException {
+        for (Partition partition : partitions.values()) {
+            partition.flush();
+        }
+        for (int i = 0; i < startedWriters; i++) {
+            writers[i].put(END_OF_DATA);
+        }
+        for (int i = 0; i < startedWriters; i++) {
+            writers[i].join();
+        }
+        finished = true;
+        for (Partition partition : partitions.values()) {
+            partition.checkFailure(NO_ROW_IDS);
+        }
+    }
+
+    private void writeManifest() throws IOException {
+        File file = PathFactory.getFileInstance(directory, baseName + MANIFEST_EXTENSION);
+        File tempFile = PathFactory.getFileInstance(directory, baseName + MANIFEST_EXTENSION + TEMP_FILE_SUFFIX);
+        try (Writer writer = Files.newBufferedWriter(tempFile.toPath(), StandardCharsets.UTF_8)) {
+            writer.write(MANIFEST_HEADER);
+            writer.write(ExportContext.END_OF_LINE);
+            for (Partition partition : partitions.values()) {
+                writer.write(String.format(MANIFEST_LINE_FORMAT, partition.name, partition.file.getName(), partition.rows));
+                writer.write(ExportContext.END_OF_LINE);
+            }
+        }
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        committedFiles.add(file);
+    }
+
+    /**
+     * Failure of the partition writing
+     */
+    public static class PartitionWriteException extends IOException {
+
+        private final String partition;
+        private final long[] lostRowIds;
+
+        PartitionWriteException(String partition, long[] lostRowIds, Throwable cause) {
+            super(String.format("Partition %s writing failed, rows lost: %s", partition, lostRowIds.length), cause);
+            this.partition = partition;
+            this.lostRowIds = lostRowIds;
+        }
+
+        public String getPartition() {
+            return partition;
+        }
+
+        /**
+         * @return Ids of the rows not written into the partition in the order of writing
+         */
+        public long[] getLostRowIds() {
+            return lostRowIds.clone();
+        }
+    }
+
+    /**
+     * Rows of a partition handed over to the writer thread
+     */
+    private static final class Block {
+
+        private final Partition partition;
+        private final byte[] bytes;
+        private final long[] rowIds;
+
+        private Block(Partition partition, byte[] bytes, long[] rowIds) {
+            this.partition = partition;
+            this.bytes = bytes;
+            this.rowIds = rowIds;
+        }
+    }
+
+    /**
+     * Partition file with the producer side block
+     */
+    private static final class Partition {
+
+        private final String name;
+        private final File file;
+        private final CsvSink sink;
+        private final PartitionWriter writer;
+
+        // Producer side
+        private final byte[] block = new byte[BLOCK_SIZE];
+        private int blockSize;
+        private long[] blockRowIds = new long[BLOCK_ROW_IDS];
+        private int blockRows;
+        private long rows;
+
+        // Writer side, the failure is published after the lost row ids
+        private final List<long[]> lostRowIds = new ArrayList<>();
+        private volatile IOException failure;
+
+        private Partition(String name, File file, CsvSink sink, PartitionWriter writer) {
+            this.name = name;
+            this.file = file;
+            this.sink = sink;
+            this.writer = writer;
+        }
+
+        private void writeHeader(byte[] header) throws IOException {
+            writer.put(new Block(this, header, NO_ROW_IDS));
+        }
+
+        private void write(long rowId, byte[] bytes, int offset, int length) throws IOException {
+            checkFailure(new long[]{rowId});
+            if (blockSize + length > BLOCK_SIZE) {
+                flush();
+            }
+            if (length > BLOCK_SIZE) {
+                writer.put(new Block(this, Arrays.copyOfRange(bytes, offset, offset + length), new long[]{rowId}));
+            } else {
+                System.arraycopy(bytes, offset, block, blockSize, length);
+                blockSize += length;
+                if (blockRows == blockRowIds.length) {
+                    blockRowIds = Arrays.copyOf(blockRowIds, blockRowIds.length * 2);
+                }
+                blockRowIds[blockRows++] = rowId;
+            }
+            rows++;
+        }
+
+        private void flush() throws IOException {
+            if (blockSize > 0) {
+                writer.put(new Block(this, Arrays.copyOf(block, blockSize), Arrays.copyOf(blockRowIds, blockRows)));
+                blockSize = 0;
+                blockRows = 0;
+            }
+        }
+
+        /**
+         * @param unwrittenRowIds Rows of the producer not handed over to the writer yet, lost on failure as well
+         */
+        private void checkFailure(long[] unwrittenRowIds) throws PartitionWriteException {
+            IOException e = failure;
+            if (e == null) {
+                return;
+            }
+            long[] lost;
+            synchronized (lostRowIds) {
+                int count = blockRows + unwrittenRowIds.length;
+                for (long[] blockLost : lostRowIds) {
+                    count += blockLost.length;
+                }
+                lost = new long[count];
+                int position = 0;
+                for (long[] blockLost : lostRowIds) {
+                    System.arraycopy(blockLost, 0, lost, position, blockLost.length);
+                    position += blockLost.length;
+                }
+                System.arraycopy(blockRowIds, 0, lost, position, blockRows);
+                System.arraycopy(unwrittenRowIds, 0, lost, position + blockRows, unwrittenRowIds.length);
+            }
+            throw new PartitionWriteException(name, lost, e);
+        }
+
+        /**
+         * Called by the writer thread
+         */
+        private void writeBlock(Block block) {
+            if (failure == null) {
+                try {
+                    sink.write(block.bytes, 0, block.bytes.length);
+                    return;
+                } catch (IOException e) {
+                    lost(block, e);
+                    return;
+                } catch (RuntimeException e) {
+                    lost(block, new IOException(e));
+                    return;
+                }
+            }
+            // The blocks after the failure are not written
+            lost(block, failure);
+        }
+
+        private void lost(Block block, IOException e) {
+            synchronized (lostRowIds) {
+                lostRowIds.add(block.rowIds);
+            }
+            failure = e;
+        }
+    }
+
+    /**
+     * Writer thread of the partitions, the failure of a partition does not stop the other ones
+     */
+    private static final class PartitionWriter implements Runnable {
+
+        private final BlockingQueue<Block> queue = new ArrayBlockingQueue<>(QUEUED_BLOCKS_PER_WRITER);
+        private final Thread thread;
+
+        private PartitionWriter(int index) {
+            this.thread = new Thread(this, String.format(WRITER_THREAD_NAME, index));
+            this.thread.setDaemon(true);
+        }
+
+        private void put(Block block) throws IOException {
+            try {
+                // The writer does not take blocks once interrupted, do not wait for the free space forever
+                while (!queue.offer(block, 100, TimeUnit.MILLISECONDS)) {
+                    if (!thread.isAlive()) {
+                        throw new IOException(String.format("Writer %s is stopped", thread.getName()));
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException(String.format("Interrupted writing partitions of %s", thread.getName()));
+            }
+        }
+
+        private void join() throws IOException {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException(String.format("Interrupted waiting for %s", thread.getName()));
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                for (Block block = queue.take(); block != END_OF_DATA; block = queue.take()) {
+                    block.partition.writeBlock(block);
+                }
+            } catch (InterruptedException e) {
+                // Closed without commit, the partitions are discarded
+            }
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package export;
+
+// Project imports:
+//      PathFactory
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * CSV sink splitting the output into parts of limited size.
+ * <p>
+ * Every part starts with the header and is named <tt>${baseName}_partNNN${extension}</tt>. A new part is started
+ * between writes, so every write must contain whole lines. Completed parts are committed as pending files
+ * <tt>${baseName}_part${sequence}${extension}.pending</tt> and renamed to the part names only by {@link #commit()},
+ * so no part is visible before the whole output is. The part numbers are zero-padded to the same width of at least
+ * three digits, so the part names sort in the order of writing whatever the number of parts. If the sink is closed
+ * without {@link #commit()}, the pending parts are deleted.
+ */
+public class RollingCsvSink implements CsvSink {
+
+    // Format of the part name format by the part number width
+    private static final String PART_NAME_FORMAT    = "%%s_part%%0%dd%%s";
+    private static final int    PART_NUMBER_WIDTH   = 3;
+    private static final String PENDING_PART_FORMAT = "%s_part%d%s.pending";
+
+    private final File directory;
+    private final String baseName;
+    private final String extension;
+    private final CsvSink.Factory partFactory;
+    private final byte[] header;
+    private final long maxPartBytes;
+    private final long maxPartRows;
+
+    private final List<File> pendingParts = new ArrayList<>();
+    private final List<File> committedParts = new ArrayList<>();
+    private CsvSink part;
+    private File partFile;
+    private long partBytes;
+    private long partRows;
+    private boolean committed;
+
+    /**
+     * @param directory    Target directory
+     * @param baseName     Part name prefix
+     * @param extension    Part name extension
+     * @param partFactory  Factory of the part sinks
+     * @param header       Header written into every part
+     * @param maxPartBytes Maximum number of bytes in a part (header excluded), not limited if not positive
+     * @param maxPartRows  Maximum number of rows in a part (header excluded), not limited if not positive
+     */
+    public RollingCsvSink(File directory,
+                          String baseName,
+                          String extension,
+                          CsvSink.Factory partFactory,
+                          byte[] header,
+                          long maxPartBytes,
+                          long maxPartRows) {
+        this.directory = directory;
+        this.baseName = baseName;
+        this.extension = extension;
+        this.partFactory = partFactory;
+        this.header = header.clone();
+        this.maxPartBytes = maxPartBytes;
+        this.maxPartRows = maxPartRows;
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        if (part == null || isPartFull(length)) {
+            nextPart();
+        }
+        part.write(bytes, offset, length);
+        partBytes += length;
+        partRows++;
+    }
+
+    /**
+     * Completes the last part and renames the pending parts to the part names in the order of writing
+     */
+    @Override
+    public void commit() throws IOException {
+        if (part == null) {
+            nextPart();
+        }
+        completePart();
+        int width = Math.max(PART_NUMBER_WIDTH, Integer.toString(pendingParts.size()).length());
+        String partNameFormat = String.format(PART_NAME_FORMAT, width);
+        for (int i = 0; i < pendingParts.size(); i++) {
+            File committedPart = PathFactory.getFileInstance(directory,
+                    String.format(partNameFormat, baseName, i + 1, extension));
+            Files.move(pendingParts.get(i).toPath(), committedPart.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+            committedParts.add(committedPart);
+        }
+        pendingParts.clear();
+        committed = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (part != null) {
+                part.close();
+            }
+        } finally {
+            // Parts renamed before a failed commit are deleted as well
+            if (!committed) {
+                for (File pendingPart : pendingParts) {
+                    Files.deleteIfExists(pendingPart.toPath());
+                }
+                for (File committedPart : committedParts) {
+                    Files.deleteIfExists(committedPart.toPath());
+                }
+                pendingParts.clear();
+                committedParts.clear();
+            }
+        }
+    }
+
+    /**
+     * @return Committed parts in the order of writing, empty before {@link #commit()}
+     */
+    public List<File> getCommittedParts() {
+        return new ArrayList<>(committedParts);
+    }
+
+    private boolean isPartFull(int length) {
+        // A part always gets at least one row
+        if (partRows == 0) {
+            return false;
+        }
+        return maxPartRows > 0 && partRows >= maxPartRows
+                || maxPartBytes > 0 && partBytes + length > maxPartBytes;
+    }
+
+    private void nextPart() throws IOException {
+        if (part != null) {
+            completePart();
+        }
+        partFile = PathFactory.getFileInstance(directory,
+                String.format(PENDING_PART_FORMAT, baseName, pendingParts.size() + 1, extension));
+        part = partFactory.create(partFile);
+        part.write(header, 0, header.length);
+        partBytes = 0;
+        partRows = 0;
+    }
+
+    /**
+     * Commits the part sink into its pending file
+     */
+    private void completePart() throws IOException {
+        part.commit();
+        part.close();
+        part = null;
+        pendingParts.add(partFile);
+    }
+}
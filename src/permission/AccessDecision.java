@@ -0,0 +1,29 @@
+package permission;
+
+// Project imports:
+//      AccessMode
+
+/**
+ * Branch of the access mode decision
+ */
+public enum AccessDecision {
+
+    // Trustee role with Infocrypt token
+    TRUSTEE_WITH_INFOCRYPT(AccessMode.FULL_ACCESS),
+
+    // Individual Executive Agency for any of the context organizations
+    INDIVIDUAL_EXECUTIVE_AGENCY(AccessMode.FULL_ACCESS),
+
+    // No rights for the full access
+    DEFAULT(AccessMode.READ_ONLY);
+
+    private final AccessMode accessMode;
+
+    AccessDecision(AccessMode accessMode) {
+        this.accessMode = accessMode;
+    }
+
+    public AccessMode getAccessMode() {
+        return accessMode;
+    }
+}
@@ -0,0 +1,251 @@
+package permission;
+
+// Project imports:
+//      CryptoProfile
+//      CustomPermissionContext
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.apache.commons.lang.ObjectUtils;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Access mode decisions cache shared by permission handlers.
+ * <p>
+ * Decisions are keyed by the user, the trustee role match of the handler, the organization ids of the context, the
+ * versions of the user crypto profiles and the usage of their crypto types, so a changed profile or a crypto type
+ * switched off gets a new key: the crypto type is shared by the profiles and its change does not touch the profile
+ * versions. Every decision expires at the nearest period boundary of the sign assignments it depends on and is never
+ * returned after it.
+ */
+public class AccessDecisionCache {
+
+    private static final long DEFAULT_MAXIMUM_SIZE         = 10000;
+    private static final long DEFAULT_TIME_TO_LIVE_MINUTES = 60;
+
+    private final Cache<Key, Decision> cache;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    public AccessDecisionCache() {
+        this(DEFAULT_MAXIMUM_SIZE, DEFAULT_TIME_TO_LIVE_MINUTES);
+    }
+
+    public AccessDecisionCache(long maximumSize, long timeToLiveMinutes) {
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(timeToLiveMinutes, TimeUnit.MINUTES)
+                .build();
+    }
+
+    /**
+     * @param key Decision key
+     * @param now Current time
+     *
+     * @return Cached decision valid at the time or <tt>null</tt>
+     */
+    public AccessDecision get(Key key, long now) {
+        Decision decision = cache.getIfPresent(key);
+        if (decision != null && now >= decision.validUntil) {
+            cache.asMap().remove(key, decision);
+            expirations.increment();
+            decision = null;
+        }
+        if (decision == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return decision.decision;
+    }
+
+    /**
+     * @param key        Decision key
+     * @param decision   Access mode decision
+     * @param validUntil Time the decision expires at, the decision is not cached if the time is in the past
+     * @param now        Current time
+     */
+    public void put(Key key, AccessDecision decision, long validUntil, long now) {
+        if (validUntil > now) {
+            cache.put(key, new Decision(decision, validUntil));
+        }
+    }
+
+    /**
+     * Invalidation hook of the user changes
+     *
+     * @param userId User id
+     */
+    public void invalidateUser(Object userId) {
+        for (Key key : cache.asMap().keySet()) {
+            if (ObjectUtils.equals(key.userId, userId)) {
+                cache.invalidate(key);
+            }
+        }
+    }
+
+    /**
+     * Invalidation hook of the crypto profile and its sign assignments changes
+     *
+     * @param cryptoProfileId Crypto profile id
+     */
+    public void invalidateCryptoProfile(Object cryptoProfileId) {
+        for (Key key : cache.asMap().keySet()) {
+            if (key.cryptoProfileIds.contains(cryptoProfileId)) {
+                cache.invalidate(key);
+            }
+        }
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * @return Number of decisions dropped at the sign assignment period boundary
+     */
+    public long getExpiredCount() {
+        return expirations.sum();
+    }
+
+    /**
+     * @return Ratio of the hits, <tt>1.0</tt> without requests
+     */
+    public double getHitRatio() {
+        long hitCount = hits.sum();
+        long requestCount = hitCount + misses.sum();
+        return requestCount > 0 ? (double) hitCount / requestCount : 1.0;
+    }
+
+    public long getSize() {
+        return cache.size();
+    }
+
+    /**
+     * @param context Handler context
+     * @param orgIds  Ids of the context organizations
+     * @param trustee <tt>true</tt>, if the user has a trustee role of the handler
+     *
+     * @return Decision key of the context
+     */
+    public static Key key(CustomPermissionContext context, Set<Object> orgIds, boolean trustee) {
+        List<CryptoProfile> cryptoProfiles = context.getCryptoProfiles();
+        List<Object> cryptoProfileIds = new ArrayList<>(cryptoProfiles.size());
+        List<Object> cryptoProfileVersions = new ArrayList<>(cryptoProfiles.size());
+        BitSet cryptoTypesUsed = new BitSet(cryptoProfiles.size());
+        for (int i = 0; i < cryptoProfiles.size(); i++) {
+            CryptoProfile cryptoProfile = cryptoProfiles.get(i);
+            cryptoProfileIds.add(cryptoProfile.getId());
+            cryptoProfileVersions.add(cryptoProfile.getVersion());
+            cryptoTypesUsed.set(i, cryptoProfile.getCryptoType().isUsed());
+        }
+        return new Key(context.getUserId(), trustee, orgIds, cryptoProfileIds, cryptoProfileVersions, cryptoTypesUsed);
+    }
+
+    /**
+     * Decision key, immutable
+     */
+    public static final class Key {
+
+        private final Object userId;
+        private final boolean trustee;
+        private final Set<Object> orgIds;
+        private final List<Object> cryptoProfileIds;
+        private final List<Object> cryptoProfileVersions;
+
+        // Usage of the crypto type of every profile in the order of the profiles
+        private final BitSet cryptoTypesUsed;
+        private final int hashCode;
+
+        private Key(Object userId,
+                    boolean trustee,
+                    Set<Object> orgIds,
+                    List<Object> cryptoProfileIds,
+                    List<Object> cryptoProfileVersions,
+                    BitSet cryptoTypesUsed) {
+            this.userId = userId;
+            this.trustee = trustee;
+            this.orgIds = Collections.unmodifiableSet(orgIds);
+            this.cryptoProfileIds = Collections.unmodifiableList(cryptoProfileIds);
+            this.cryptoProfileVersions = Collections.unmodifiableList(cryptoProfileVersions);
+            this.cryptoTypesUsed = cryptoTypesUsed;
+            this.hashCode = computeHashCode();
+        }
+
+        /**
+         * @return Key of the role-independent part of the decision, the trustee role match left out
+         */
+        Key withoutTrustee() {
+            return trustee
+                    ? new Key(userId, false, orgIds, cryptoProfileIds, cryptoProfileVersions, cryptoTypesUsed)
+                    : this;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return hashCode == key.hashCode
+                    && trustee == key.trustee
+                    && ObjectUtils.equals(userId, key.userId)
+                    && orgIds.equals(key.orgIds)
+                    && cryptoProfileIds.equals(key.cryptoProfileIds)
+                    && cryptoProfileVersions.equals(key.cryptoProfileVersions)
+                    && cryptoTypesUsed.equals(key.cryptoTypesUsed);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        private int computeHashCode() {
+            int result = ObjectUtils.hashCode(userId);
+            result = 31 * result + (trustee ? 1 : 0);
+            result = 31 * result + orgIds.hashCode();
+            result = 31 * result + cryptoProfileIds.hashCode();
+            result = 31 * result + cryptoProfileVersions.hashCode();
+            result = 31 * result + cryptoTypesUsed.hashCode();
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Key{userId=%s, trustee=%s, orgIds=%s, cryptoProfileIds=%s, cryptoProfileVersions=%s, cryptoTypesUsed=%s}",
+                    userId, trustee, orgIds, cryptoProfileIds, cryptoProfileVersions, cryptoTypesUsed);
+        }
+    }
+
+    private static final class Decision {
+
+        private final AccessDecision decision;
+        private final long validUntil;
+
+        private Decision(AccessDecision decision, long validUntil) {
+            this.decision = decision;
+            this.validUntil = validUntil;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package permission;
+
+// Project imports:
+//      CryptoProfile
+//      CustomPermissionContext
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Role-independent facts of a permission context: Infocrypt token presence and Individual Executive Agency rights
+ * for the context organizations. The facts are evaluated on the first request and reused by all handlers of the
+ * context until the nearest sign assignment period boundary, thread-safe.
+ * <p>
+ * Individual Executive Agency rights of the users known to the eligibility view are looked up in the view, if the view
+ * was evaluated with the profiles of the context, and are evaluated from the profiles otherwise.
+ */
+final class ContextFacts {
+
+    private final UserAccess userAccess;
+    private final Set<Object> orgIds;
+    private final Object userId;
+    private final List<CryptoProfile> cryptoProfiles;
+    private final IeaEligibilityView eligibilityView;
+
+    // Individual Executive Agency memo, valid until the boundary
+    private boolean individualExecutiveAgency;
+    private long individualExecutiveAgencyUntil = Long.MIN_VALUE;
+
+    private ContextFacts(UserAccess userAccess,
+                         Set<Object> orgIds,
+                         Object userId,
+                         List<CryptoProfile> cryptoProfiles,
+                         IeaEligibilityView eligibilityView) {
+        this.userAccess = userAccess;
+        this.orgIds = orgIds;
+        this.userId = userId;
+        this.cryptoProfiles = cryptoProfiles;
+        this.eligibilityView = eligibilityView;
+    }
+
+    /**
+     * @param context         Handler context
+     * @param orgIds          Ids of the context organizations
+     * @param eligibilityView Individual Executive Agency eligibility view, <tt>null</tt> if not used
+     *
+     * @return Facts of the context, nothing is evaluated yet
+     */
+    static ContextFacts of(CustomPermissionContext context, Set<Object> orgIds, IeaEligibilityView eligibilityView) {
+        return new ContextFacts(UserAccess.of(context.getCryptoProfiles()), Collections.unmodifiableSet(orgIds),
+                context.getUserId(), context.getCryptoProfiles(), eligibilityView);
+    }
+
+    /**
+     * Java doc with business comment
+     *
+     * @param trustee <tt>true</tt>, if the user has a trustee role of the handler
+     * @param now     Current time
+     *
+     * @return Decision of the user access mode
+     */
+    AccessDecision decide(boolean trustee, long now) {
+        // FULL_ACCESS for Trustee with Infocrypt token
+        if (trustee && userAccess.isInfocrypt()) {
+            return AccessDecision.TRUSTEE_WITH_INFOCRYPT;
+        }
+
+        // FULL_ACCESS for Individual Executive Agency
+        if (isIndividualExecutiveAgency(now)) {
+            return AccessDecision.INDIVIDUAL_EXECUTIVE_AGENCY;
+        }
+
+        return AccessDecision.DEFAULT;
+    }
+
+    /**
+     * @param trustee <tt>true</tt>, if the user has a trustee role of the handler
+     * @param now     Current time
+     *
+     * @return Time the access mode may change at, {@link Long#MAX_VALUE} if it never changes
+     */
+    long getValidUntil(boolean trustee, long now) {
+        if (trustee && userAccess.isInfocrypt()) {
+            return Long.MAX_VALUE;
+        }
+        synchronized (this) {
+            isIndividualExecutiveAgency(now);
+            return individualExecutiveAgencyUntil;
+        }
+    }
+
+    Object getUserId() {
+        return userId;
+    }
+
+    private synchronized boolean isIndividualExecutiveAgency(long now) {
+        if (now >= individualExecutiveAgencyUntil && eligibilityView != null) {
+            // Read before the lookup, a refresh in between only makes the memo expire earlier
+            long validUntil = eligibilityView.getValidUntil(userId, cryptoProfiles, now);
+            Boolean eligible = eligibilityView.isIndividualExecutiveAgency(userId, cryptoProfiles, orgIds, now);
+            if (eligible != null) {
+                individualExecutiveAgency = eligible;
+                individualExecutiveAgencyUntil = validUntil;
+                return individualExecutiveAgency;
+            }
+        }
+        if (now >= individualExecutiveAgencyUntil) {
+            individualExecutiveAgency = userAccess.isIndividualExecutiveAgency(orgIds, new Date(now));
+            individualExecutiveAgencyUntil = userAccess.nextBoundary(orgIds, now);
+        }
+        return individualExecutiveAgency;
+    }
+}
@@ -0,0 +1,100 @@
+package permission;
+
+// Project imports:
+//      CustomPermissionContext
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.apache.commons.lang.ObjectUtils;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Store of the context facts shared by permission handlers.
+ * <p>
+ * Facts are keyed as the decisions of {@link AccessDecisionCache} with the trustee role match left out: by the user,
+ * the organization ids of the context, the versions of the user crypto profiles and the usage of their crypto types.
+ * Handlers called for the same user and organizations reuse the Infocrypt and Individual Executive Agency checks,
+ * within a request and across requests, while a changed profile or a crypto type switched off gets new facts.
+ * The facts keep their own period boundary, entries are evicted by size and time-to-live.
+ */
+public class ContextFactsCache {
+
+    private static final long DEFAULT_MAXIMUM_SIZE         = 10000;
+    private static final long DEFAULT_TIME_TO_LIVE_MINUTES = 60;
+
+    private final Cache<AccessDecisionCache.Key, ContextFacts> cache;
+
+    public ContextFactsCache() {
+        this(DEFAULT_MAXIMUM_SIZE, DEFAULT_TIME_TO_LIVE_MINUTES);
+    }
+
+    public ContextFactsCache(long maximumSize, long timeToLiveMinutes) {
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(timeToLiveMinutes, TimeUnit.MINUTES)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * @param key             Decision key of the context, the trustee role match is ignored
+     * @param context         Handler context
+     * @param orgIds          Ids of the context organizations
+     * @param eligibilityView Individual Executive Agency eligibility view, <tt>null</tt> if not used
+     *
+     * @return Facts of the context, created on the first request
+     */
+    ContextFacts get(AccessDecisionCache.Key key,
+                     final CustomPermissionContext context,
+                     final Set<Object> orgIds,
+                     final IeaEligibilityView eligibilityView) {
+        try {
+            return cache.get(key.withoutTrustee(), new Callable<ContextFacts>() {
+                @Override
+                public ContextFacts call() {
+                    return ContextFacts.of(context, orgIds, eligibilityView);
+                }
+            });
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Invalidation hook of the user changes
+     *
+     * @param userId User id
+     */
+    public void invalidateUser(Object userId) {
+        for (Map.Entry<AccessDecisionCache.Key, ContextFacts> entry : cache.asMap().entrySet()) {
+            if (ObjectUtils.equals(entry.getValue().getUserId(), userId)) {
+                cache.asMap().remove(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    public long getHitCount() {
+        return cache.stats().hitCount();
+    }
+
+    public long getMissCount() {
+        return cache.stats().missCount();
+    }
+
+    public long getSize() {
+        return cache.size();
+    }
+}
@@ -0,0 +1,89 @@
+package permission;
+
+// Project imports:
+//      CryptoProfile
+
+import org.springframework.context.ApplicationEvent;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Change of the user crypto profiles, their sign assignments or the crypto types, published by the platform services
+ * into the application context and handled by {@link IeaEligibilityView}
+ */
+public class CryptoProfileChangeEvent extends ApplicationEvent {
+
+    /**
+     * Kind of the change
+     */
+    public enum Kind {
+
+        // Crypto profiles or sign assignments of the user changed
+        PROFILES_CHANGED,
+
+        // User removed or lost all crypto profiles
+        USER_REMOVED,
+
+        // Usage of a crypto type changed, affects all users
+        CRYPTO_TYPE_CHANGED
+    }
+
+    private final Kind kind;
+    private final Object userId;
+    private final List<CryptoProfile> cryptoProfiles;
+
+    private CryptoProfileChangeEvent(Object source, Kind kind, Object userId, List<CryptoProfile> cryptoProfiles) {
+        super(source);
+        this.kind = kind;
+        this.userId = userId;
+        this.cryptoProfiles = cryptoProfiles;
+    }
+
+    /**
+     * @param source         Publisher
+     * @param userId         User id
+     * @param cryptoProfiles Current crypto profiles of the user
+     */
+    public static CryptoProfileChangeEvent profilesChanged(Object source, Object userId, List<CryptoProfile> cryptoProfiles) {
+        return new CryptoProfileChangeEvent(source, Kind.PROFILES_CHANGED, userId, Collections.unmodifiableList(cryptoProfiles));
+    }
+
+    /**
+     * @param source Publisher
+     * @param userId User id
+     */
+    public static CryptoProfileChangeEvent userRemoved(Object source, Object userId) {
+        return new CryptoProfileChangeEvent(source, Kind.USER_REMOVED, userId, Collections.<CryptoProfile>emptyList());
+    }
+
+    /**
+     * @param source Publisher
+     */
+    public static CryptoProfileChangeEvent cryptoTypeChanged(Object source) {
+        return new CryptoProfileChangeEvent(source, Kind.CRYPTO_TYPE_CHANGED, null, Collections.<CryptoProfile>emptyList());
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * @return User id, <tt>null</tt> for the crypto type change
+     */
+    public Object getUserId() {
+        return userId;
+    }
+
+    /**
+     * @return Current crypto profiles of the user, empty for the other changes
+     */
+    public List<CryptoProfile> getCryptoProfiles() {
+        return cryptoProfiles;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("CryptoProfileChangeEvent{kind=%s, userId=%s, cryptoProfiles=%s}", kind, userId, cryptoProfiles.size());
+    }
+}
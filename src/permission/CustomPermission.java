@@ -11,26 +11,44 @@ package permission;
 
 import org.apache.commons.lang.ObjectUtils;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
-
-import static org.apache.commons.collections.CollectionUtils.containsAny;
+import java.util.Set;
 
 /**
  * Java doc with business comment
  */
 public class CustomPermission extends AbstractCustomPermission {
 
-    // Trustee roles
-    private final List<String> fullAccessRoles;
+    // Trustee roles, hashed once per handler
+    private final Set<String> fullAccessRoles;
+
+    // Decisions cache, decisions are evaluated on every call without it
+    private AccessDecisionCache decisionCache;
+
+    // Role-independent facts shared by handlers of the same user, organizations and profiles state, evaluated per
+    // decision without it
+    private ContextFactsCache contextFactsCache;
+
+    // Individual Executive Agency eligibility view looked up by the context facts, the rights are evaluated from
+    // the context profiles without it
+    private IeaEligibilityView eligibilityView;
+
+    // Decisions metrics, optional
+    private PermissionMetrics metrics;
 
     public CustomPermission() {
-        this.fullAccessRoles = Collections.emptyList();
+        this.fullAccessRoles = Collections.emptySet();
     }
 
     public CustomPermission(List<String> fullAccessRoles) {
-        this.fullAccessRoles = fullAccessRoles != null? fullAccessRoles : Collections.emptyList();
+        this.fullAccessRoles = fullAccessRoles != null
+                ? Collections.unmodifiableSet(new HashSet<>(fullAccessRoles))
+                : Collections.<String>emptySet();
     }
 
     /**
@@ -43,33 +61,185 @@ public class CustomPermission extends AbstractCustomPermission {
      */
     @Override
     public AccessMode getAccessMode(AccessMode ignored, CustomPermissionContext context) {
-        // FULL_ACCESS for Trustee with Infocrypt token
-        if (containsAny(fullAccessRoles, context.getFuncRoleNames()) && isInfocrypt(context.getCryptoProfiles())) {
-            return AccessMode.FULL_ACCESS;
+        long start = System.nanoTime();
+
+        // The only handler-specific part of the decision
+        boolean trustee = isTrustee(context.getFuncRoleNames());
+        long now = System.currentTimeMillis();
+
+        Set<Object> orgIds = getOrgIds(context);
+        AccessDecisionCache.Key key = key(context, orgIds, trustee);
+        AccessDecision decision = getCachedDecision(key, now);
+        boolean cached = decision != null;
+        if (!cached) {
+            decision = evaluate(context, orgIds, trustee, key, now);
         }
 
-        // FULL_ACCESS for Individual Executive Agency
-        if (isIndividualExecutiveAgency(context)) {
-            return AccessMode.FULL_ACCESS;
+        if (metrics != null) {
+            metrics.decided(decision, System.nanoTime() - start, cached);
         }
+        return decision.getAccessMode();
+    }
 
-        return AccessMode.READ_ONLY;
+    /**
+     * Returns access modes of a single user for many organization sets, e.g. rows of a list view.
+     * The trustee role check is done once, every set is decided as {@link #getAccessMode} decides the context with
+     * the organizations of the set: by the decisions cache, the context facts and the eligibility view.
+     *
+     * @param context   Handler context of the user, its organizations are ignored
+     * @param orgIdSets Organization ids of every row
+     *
+     * @return Access modes in the order of the sets
+     */
+    public List<AccessMode> getAccessModes(CustomPermissionContext context, List<? extends Collection<?>> orgIdSets) {
+        boolean trustee = isTrustee(context.getFuncRoleNames());
+        long now = System.currentTimeMillis();
+        List<AccessMode> accessModes = new ArrayList<>(orgIdSets.size());
+        for (Collection<?> orgIds : orgIdSets) {
+            accessModes.add(bulkDecide(context, new HashSet<Object>(orgIds), trustee, now));
+        }
+        return accessModes;
     }
 
     /**
-     * Java doc with business comment
+     * Returns access modes of many contexts in one pass. The trustee role check is repeated only when the context
+     * has other roles instance than the previous one, every context is decided as {@link #getAccessMode} decides it.
+     *
+     * @param contexts Handler contexts
+     *
+     * @return Access modes in the order of the contexts
+     */
+    public List<AccessMode> getAccessModes(List<? extends CustomPermissionContext> contexts) {
+        long now = System.currentTimeMillis();
+        List<AccessMode> accessModes = new ArrayList<>(contexts.size());
+        Collection<String> funcRoleNames = null;
+        boolean trustee = false;
+        for (CustomPermissionContext context : contexts) {
+            if (accessModes.isEmpty() || context.getFuncRoleNames() != funcRoleNames) {
+                funcRoleNames = context.getFuncRoleNames();
+                trustee = isTrustee(funcRoleNames);
+            }
+            accessModes.add(bulkDecide(context, getOrgIds(context), trustee, now));
+        }
+        return accessModes;
+    }
+
+    public void setDecisionCache(AccessDecisionCache decisionCache) {
+        this.decisionCache = decisionCache;
+    }
+
+    public void setContextFactsCache(ContextFactsCache contextFactsCache) {
+        this.contextFactsCache = contextFactsCache;
+    }
+
+    public void setEligibilityView(IeaEligibilityView eligibilityView) {
+        this.eligibilityView = eligibilityView;
+    }
+
+    public void setMetrics(PermissionMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    private AccessMode bulkDecide(CustomPermissionContext context, Set<Object> orgIds, boolean trustee, long now) {
+        AccessDecisionCache.Key key = key(context, orgIds, trustee);
+        AccessDecision decision = getCachedDecision(key, now);
+        if (decision == null) {
+            decision = evaluate(context, orgIds, trustee, key, now);
+        }
+        if (metrics != null) {
+            metrics.bulkDecided(decision);
+        }
+        return decision.getAccessMode();
+    }
+
+    /**
+     * @return Decision key of the context, <tt>null</tt> without the caches
+     */
+    private AccessDecisionCache.Key key(CustomPermissionContext context, Set<Object> orgIds, boolean trustee) {
+        return decisionCache != null || contextFactsCache != null
+                ? AccessDecisionCache.key(context, orgIds, trustee)
+                : null;
+    }
+
+    private AccessDecision getCachedDecision(AccessDecisionCache.Key key, long now) {
+        return decisionCache != null ? decisionCache.get(key, now) : null;
+    }
+
+    /**
+     * Evaluates the decision from the context facts and caches it until the facts may change
+     */
+    private AccessDecision evaluate(CustomPermissionContext context,
+                                    Set<Object> orgIds,
+                                    boolean trustee,
+                                    AccessDecisionCache.Key key,
+                                    long now) {
+        ContextFacts contextFacts = getContextFacts(context, orgIds, key);
+        AccessDecision decision = contextFacts.decide(trustee, now);
+        if (decisionCache != null) {
+            decisionCache.put(key, decision, contextFacts.getValidUntil(trustee, now), now);
+        }
+        return decision;
+    }
+
+    /**
+     * @param context Handler context
+     * @param orgIds  Ids of the context organizations
+     * @param key     Decision key of the context, <tt>null</tt> without the caches
+     *
+     * @return Facts of the context
+     */
+    private ContextFacts getContextFacts(CustomPermissionContext context, Set<Object> orgIds, AccessDecisionCache.Key key) {
+        return contextFactsCache != null
+                ? contextFactsCache.get(key, context, orgIds, eligibilityView)
+                : ContextFacts.of(context, orgIds, eligibilityView);
+    }
+
+    /**
+     * @param funcRoleNames User roles
+     *
+     * @return <tt>true</tt>, if any of the roles is a trustee role of the handler
+     */
+    private boolean isTrustee(Collection<String> funcRoleNames) {
+        if (fullAccessRoles.isEmpty() || funcRoleNames == null) {
+            return false;
+        }
+        for (String funcRoleName : funcRoleNames) {
+            if (fullAccessRoles.contains(funcRoleName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param context Handler context
+     *
+     * @return Ids of the context organizations
+     */
+    private static Set<Object> getOrgIds(CustomPermissionContext context) {
+        Set<Object> orgIds = new HashSet<>();
+        for (CustomPermissionContext.PermissionOrg permOrg : context.getOrgs()) {
+            orgIds.add(permOrg.getOrgId());
+        }
+        return orgIds;
+    }
+
+    /**
+     * Java doc with business comment.
+     * <p>
+     * Linear scan over the profiles, assignments and organizations, the reference the indexed evaluation
+     * is checked against.
      *
      * @param context Handler context
+     * @param today   Current date
      *
      * @return <tt>true</tt> for Individual Executive Agency
      */
-    private static boolean isIndividualExecutiveAgency(CustomPermissionContext context) {
-        final Date today = new Date();
-
+    static boolean isIndividualExecutiveAgencyByScan(CustomPermissionContext context, Date today) {
         for (CryptoProfile cryptoProfile : context.getCryptoProfiles()) {
             boolean isUsed      = cryptoProfile.getCryptoType().isUsed();
             boolean isAllowSign = cryptoProfile.isAllowSign();
-            boolean isInfocrypt = InfocryptCryptoProvider.CRYPTO_TYPE.equals(cryptoProfile.getCryptoType().getName());
+            boolean isInfocrypt = InfocryptCrypto.CRYPTO_TYPE.equals(cryptoProfile.getCryptoType().getName());
 
             if (isUsed && isAllowSign && isInfocrypt) {
                 for (SignAssignment signAssignment : cryptoProfile.getSignAssignments().values()) {
@@ -90,22 +260,6 @@ public class CustomPermission extends AbstractCustomPermission {
         return false;
     }
 
-    /**
-     * Java doc with business comment
-     *
-     * @param cryptoProfiles List of crypto-profiles
-     *
-     * @return <tt>true</tt> for Infocrypt
-     */
-    private static boolean isInfocrypt(List<CryptoProfile> cryptoProfiles) {
-        for (CryptoProfile cryptoProfile : cryptoProfiles) {
-            if (InfocryptCrypto.CRYPTO_TYPE.equals(cryptoProfile.getCryptoType().getName())) {
-                return true;
-            }
-        }
-        return false;
-    }
-
     /**
      * @param signAssignment Sign assignment
      * @param contextOrgs    List of organizations from context
@@ -0,0 +1,257 @@
+package permission;
+
+// Project imports:
+//      CryptoProfile
+//      SignAssignment
+//      InfocryptCrypto
+//      DateUtilities
+
+import org.apache.commons.lang.time.DateUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Individual Executive Agency sign assignments of the user crypto profiles indexed by organization.
+ * <p>
+ * Only assignments of the used Infocrypt profiles allowed to sign are indexed. Assignments of an organization are
+ * sorted by the period start with the running maximum of the period end, so the lookup checks only the assignments
+ * whose periods may contain the date. The periods are widened to whole days for the lookup, the final check is
+ * the same {@link DateUtilities#isDateInSoftRange} call, so the decisions are identical to the linear scan.
+ */
+final class IeaAssignmentIndex {
+
+    private static final IeaAssignmentIndex EMPTY = new IeaAssignmentIndex(Collections.<Object, OrgAssignments>emptyMap());
+
+    private final Map<Object, OrgAssignments> assignmentsByOrg;
+
+    private IeaAssignmentIndex(Map<Object, OrgAssignments> assignmentsByOrg) {
+        this.assignmentsByOrg = assignmentsByOrg;
+    }
+
+    /**
+     * @param cryptoProfiles User crypto profiles
+     *
+     * @return Index of the Individual Executive Agency assignments of the profiles
+     */
+    static IeaAssignmentIndex build(Collection<CryptoProfile> cryptoProfiles) {
+        Map<Object, List<SignAssignment>> assignments = new HashMap<>();
+        for (CryptoProfile cryptoProfile : cryptoProfiles) {
+            boolean isUsed      = cryptoProfile.getCryptoType().isUsed();
+            boolean isAllowSign = cryptoProfile.isAllowSign();
+            boolean isInfocrypt = InfocryptCrypto.CRYPTO_TYPE.equals(cryptoProfile.getCryptoType().getName());
+
+            if (isUsed && isAllowSign && isInfocrypt) {
+                for (SignAssignment signAssignment : cryptoProfile.getSignAssignments().values()) {
+                    if (signAssignment.isIndividualExecutiveAgency()) {
+                        Object orgId = signAssignment.getOrg().getId();
+                        List<SignAssignment> orgAssignments = assignments.get(orgId);
+                        if (orgAssignments == null) {
+                            orgAssignments = new ArrayList<>();
+                            assignments.put(orgId, orgAssignments);
+                        }
+                        orgAssignments.add(signAssignment);
+                    }
+                }
+            }
+        }
+        if (assignments.isEmpty()) {
+            return EMPTY;
+        }
+        Map<Object, OrgAssignments> assignmentsByOrg = new HashMap<>();
+        for (Map.Entry<Object, List<SignAssignment>> entry : assignments.entrySet()) {
+            assignmentsByOrg.put(entry.getKey(), new OrgAssignments(entry.getValue()));
+        }
+        return new IeaAssignmentIndex(assignmentsByOrg);
+    }
+
+    /**
+     * @return <tt>true</tt>, if the profiles have no Individual Executive Agency assignments
+     */
+    boolean isEmpty() {
+        return assignmentsByOrg.isEmpty();
+    }
+
+    /**
+     * @return Organizations with Individual Executive Agency assignments in any period
+     */
+    Set<Object> getOrgIds() {
+        return Collections.unmodifiableSet(assignmentsByOrg.keySet());
+    }
+
+    /**
+     * @param orgIds Organization ids
+     * @param today  Date
+     *
+     * @return <tt>true</tt>, if any of the organizations has an assignment active at the date
+     */
+    boolean isActive(Collection<?> orgIds, Date today) {
+        for (Object orgId : orgIds) {
+            if (isActive(orgId, today)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param orgId Organization id
+     * @param today Date
+     *
+     * @return <tt>true</tt>, if the organization has an assignment active at the date
+     */
+    boolean isActive(Object orgId, Date today) {
+        OrgAssignments orgAssignments = assignmentsByOrg.get(orgId);
+        return orgAssignments != null && orgAssignments.isActive(today);
+    }
+
+    /**
+     * @param orgIds Organization ids
+     * @param now    Current time
+     *
+     * @return Nearest time after <tt>now</tt> the assignments of the organizations may change their activity,
+     *         {@link Long#MAX_VALUE} if they never change
+     */
+    long nextBoundary(Collection<?> orgIds, long now) {
+        long boundary = Long.MAX_VALUE;
+        for (Object orgId : orgIds) {
+            OrgAssignments orgAssignments = assignmentsByOrg.get(orgId);
+            if (orgAssignments != null) {
+                boundary = Math.min(boundary, orgAssignments.nextBoundary(now));
+            }
+        }
+        return boundary;
+    }
+
+    /**
+     * Assignments of a single organization
+     */
+    private static final class OrgAssignments {
+
+        private final boolean unlimited;
+
+        // Assignments sorted by the widened period start, with the running maximum of the widened period end
+        private final SignAssignment[] assignments;
+        private final long[] starts;
+        private final long[] maxEnds;
+
+        // Sorted times the assignments may enter or leave their periods: exact period bounds and their whole days
+        private final long[] boundaries;
+
+        private OrgAssignments(List<SignAssignment> orgAssignments) {
+            boolean anyUnlimited = false;
+            List<SignAssignment> limited = new ArrayList<>(orgAssignments.size());
+            for (SignAssignment signAssignment : orgAssignments) {
+                if (signAssignment.isUnlimited()) {
+                    anyUnlimited = true;
+                } else {
+                    limited.add(signAssignment);
+                }
+            }
+            Collections.sort(limited, new Comparator<SignAssignment>() {
+                @Override
+                public int compare(SignAssignment first, SignAssignment second) {
+                    return Long.compare(start(first), start(second));
+                }
+            });
+
+            this.unlimited = anyUnlimited;
+            this.assignments = limited.toArray(new SignAssignment[limited.size()]);
+            this.starts = new long[assignments.length];
+            this.maxEnds = new long[assignments.length];
+            List<Long> periodBoundaries = new ArrayList<>();
+            long maxEnd = Long.MIN_VALUE;
+            for (int i = 0; i < assignments.length; i++) {
+                starts[i] = start(assignments[i]);
+                maxEnd = Math.max(maxEnd, end(assignments[i]));
+                maxEnds[i] = maxEnd;
+                addBoundaries(periodBoundaries, assignments[i]);
+            }
+            this.boundaries = new long[periodBoundaries.size()];
+            for (int i = 0; i < boundaries.length; i++) {
+                boundaries[i] = periodBoundaries.get(i);
+            }
+            Arrays.sort(boundaries);
+        }
+
+        private boolean isActive(Date today) {
+            if (unlimited) {
+                return true;
+            }
+            long time = today.getTime();
+            // Assignments starting after the date are skipped, the scan stops when no earlier period reaches the date
+            for (int i = upperBound(starts, time) - 1; i >= 0 && maxEnds[i] > time; i--) {
+                SignAssignment signAssignment = assignments[i];
+                if (DateUtilities.isDateInSoftRange(today, signAssignment.getPeriodFrom(), signAssignment.getPeriodTo())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private long nextBoundary(long now) {
+            if (unlimited) {
+                return Long.MAX_VALUE;
+            }
+            int index = upperBound(boundaries, now);
+            return index < boundaries.length ? boundaries[index] : Long.MAX_VALUE;
+        }
+
+        private static void addBoundaries(List<Long> boundaries, SignAssignment signAssignment) {
+            Date periodFrom = signAssignment.getPeriodFrom();
+            if (periodFrom != null) {
+                boundaries.add(periodFrom.getTime());
+                boundaries.add(DateUtils.truncate(periodFrom, Calendar.DAY_OF_MONTH).getTime());
+            }
+            Date periodTo = signAssignment.getPeriodTo();
+            if (periodTo != null) {
+                boundaries.add(periodTo.getTime());
+                boundaries.add(DateUtils.addDays(DateUtils.truncate(periodTo, Calendar.DAY_OF_MONTH), 1).getTime());
+            }
+        }
+
+        /**
+         * @return Period start widened to the start of the day, {@link Long#MIN_VALUE} for open start
+         */
+        private static long start(SignAssignment signAssignment) {
+            Date periodFrom = signAssignment.getPeriodFrom();
+            return periodFrom != null ? DateUtils.truncate(periodFrom, Calendar.DAY_OF_MONTH).getTime() : Long.MIN_VALUE;
+        }
+
+        /**
+         * @return Period end (exclusive) widened to the start of the next day, {@link Long#MAX_VALUE} for open end
+         */
+        private static long end(SignAssignment signAssignment) {
+            Date periodTo = signAssignment.getPeriodTo();
+            return periodTo != null
+                    ? DateUtils.addDays(DateUtils.truncate(periodTo, Calendar.DAY_OF_MONTH), 1).getTime()
+                    : Long.MAX_VALUE;
+        }
+
+        /**
+         * @return Number of the values not greater than the key
+         */
+        private static int upperBound(long[] values, long key) {
+            int low = 0;
+            int high = values.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (values[middle] <= key) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+}
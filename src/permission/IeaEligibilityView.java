@@ -0,0 +1,428 @@
+package permission;
+
+// Project imports:
+//      CryptoProfile
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import org.apache.commons.lang.ObjectUtils;
+import org.springframework.context.ApplicationListener;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Materialized view of the Individual Executive Agency eligibility: user id to the ids of the organizations
+ * with active Individual Executive Agency rights.
+ * <p>
+ * The view is updated incrementally by the change events of the crypto profiles, crypto types and sign assignments
+ * and by the boundary scheduler, which refreshes a user at the nearest period boundary of the user assignments.
+ * A lookup after a missed boundary refreshes the user inline, so the view never returns an outdated eligibility.
+ * The events are published by the platform as {@link CryptoProfileChangeEvent}s, the lookups never change the view:
+ * users unknown to the view and users whose profiles differ from the ones the view was evaluated with are evaluated
+ * by the handlers from their context. Every event invalidates the decisions and the context facts cached for the
+ * affected users. Users are evicted by size and by the time since the last lookup or event, together with their
+ * scheduled refresh. {@link #rebuild} replaces the whole view and {@link #verify} compares it with the full
+ * evaluation for consistency checks. Thread-safe.
+ */
+public class IeaEligibilityView implements ApplicationListener<CryptoProfileChangeEvent> {
+
+    private static final String SCHEDULER_THREAD_NAME = "iea-eligibility-boundary";
+
+    private static final long DEFAULT_MAXIMUM_SIZE         = 100000;
+    private static final long DEFAULT_TIME_TO_IDLE_MINUTES = 24 * 60;
+
+    private final ConcurrentMap<Object, Eligibility> eligibilities;
+    private final ConcurrentMap<Object, ScheduledFuture<?>> refreshes = new ConcurrentHashMap<>();
+
+    private volatile ScheduledExecutorService scheduler;
+
+    // Caches invalidated by the events, optional
+    private AccessDecisionCache decisionCache;
+    private ContextFactsCache contextFactsCache;
+
+    public IeaEligibilityView() {
+        this(DEFAULT_MAXIMUM_SIZE, DEFAULT_TIME_TO_IDLE_MINUTES);
+    }
+
+    public IeaEligibilityView(long maximumSize, long timeToIdleMinutes) {
+        Cache<Object, Eligibility> cache = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterAccess(timeToIdleMinutes, TimeUnit.MINUTES)
+                .removalListener(new RemovalListener<Object, Eligibility>() {
+                    @Override
+                    public void onRemoval(RemovalNotification<Object, Eligibility> notification) {
+                        // The user may be put back by an event before the notification
+                        if (notification.wasEvicted() && !eligibilities.containsKey(notification.getKey())) {
+                            cancelRefresh(notification.getKey());
+                        }
+                    }
+                })
+                .build();
+        this.eligibilities = cache.asMap();
+    }
+
+    /**
+     * Starts the boundary scheduler
+     */
+    public synchronized void start() {
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, SCHEDULER_THREAD_NAME);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            long now = System.currentTimeMillis();
+            for (Map.Entry<Object, Eligibility> entry : eligibilities.entrySet()) {
+                scheduleRefresh(entry.getKey(), entry.getValue(), now);
+            }
+        }
+    }
+
+    /**
+     * Stops the boundary scheduler, the lookups refresh users inline
+     */
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+            refreshes.clear();
+        }
+    }
+
+    @Override
+    public void onApplicationEvent(CryptoProfileChangeEvent event) {
+        switch (event.getKind()) {
+            case PROFILES_CHANGED:
+                onCryptoProfilesChanged(event.getUserId(), event.getCryptoProfiles());
+                break;
+            case USER_REMOVED:
+                onUserRemoved(event.getUserId());
+                break;
+            default:
+                onCryptoTypeChanged();
+                break;
+        }
+    }
+
+    /**
+     * Event of the crypto profiles or sign assignments change of the user
+     *
+     * @param userId         User id
+     * @param cryptoProfiles Current crypto profiles of the user
+     */
+    public void onCryptoProfilesChanged(Object userId, List<CryptoProfile> cryptoProfiles) {
+        long now = System.currentTimeMillis();
+        Eligibility eligibility = Eligibility.evaluate(cryptoProfiles, now);
+        eligibilities.put(userId, eligibility);
+        scheduleRefresh(userId, eligibility, now);
+        invalidateUser(userId);
+    }
+
+    /**
+     * Event of the user removal or loss of all crypto profiles
+     *
+     * @param userId User id
+     */
+    public void onUserRemoved(Object userId) {
+        eligibilities.remove(userId);
+        cancelRefresh(userId);
+        invalidateUser(userId);
+    }
+
+    /**
+     * Event of the crypto type usage change, all users are evaluated again with their last known profiles
+     */
+    public void onCryptoTypeChanged() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<Object, Eligibility> entry : eligibilities.entrySet()) {
+            Eligibility eligibility = Eligibility.evaluate(entry.getValue().cryptoProfiles, now);
+            if (eligibilities.replace(entry.getKey(), entry.getValue(), eligibility)) {
+                scheduleRefresh(entry.getKey(), eligibility, now);
+            }
+        }
+        // Crypto types are shared by the users, the decisions of the users unknown to the view are affected as well
+        if (decisionCache != null) {
+            decisionCache.invalidateAll();
+        }
+        if (contextFactsCache != null) {
+            contextFactsCache.invalidateAll();
+        }
+    }
+
+    /**
+     * Replaces the whole view, users absent in the profiles are removed
+     *
+     * @param cryptoProfilesByUser Crypto profiles of all users
+     */
+    public void rebuild(Map<?, ? extends List<CryptoProfile>> cryptoProfilesByUser) {
+        long now = System.currentTimeMillis();
+        for (Object userId : eligibilities.keySet()) {
+            if (!cryptoProfilesByUser.containsKey(userId)) {
+                onUserRemoved(userId);
+            }
+        }
+        for (Map.Entry<?, ? extends List<CryptoProfile>> entry : cryptoProfilesByUser.entrySet()) {
+            Eligibility eligibility = Eligibility.evaluate(entry.getValue(), now);
+            Eligibility previous = eligibilities.put(entry.getKey(), eligibility);
+            scheduleRefresh(entry.getKey(), eligibility, now);
+            if (previous == null || !previous.isSameAs(eligibility)) {
+                invalidateUser(entry.getKey());
+            }
+        }
+    }
+
+    /**
+     * Compares the view with the full evaluation of the profiles, the view is not changed
+     *
+     * @param cryptoProfilesByUser Crypto profiles of all users
+     *
+     * @return Ids of the users with different or missing eligibility, including users unknown to the profiles
+     */
+    public Set<Object> verify(Map<?, ? extends List<CryptoProfile>> cryptoProfilesByUser) {
+        long now = System.currentTimeMillis();
+        Set<Object> inconsistentUserIds = new HashSet<>();
+        for (Map.Entry<?, ? extends List<CryptoProfile>> entry : cryptoProfilesByUser.entrySet()) {
+            Set<Object> expected = Eligibility.evaluate(entry.getValue(), now).activeOrgIds;
+            if (!expected.equals(getEligibleOrgIds(entry.getKey(), now))) {
+                inconsistentUserIds.add(entry.getKey());
+            }
+        }
+        for (Object userId : eligibilities.keySet()) {
+            if (!cryptoProfilesByUser.containsKey(userId)) {
+                inconsistentUserIds.add(userId);
+            }
+        }
+        return inconsistentUserIds;
+    }
+
+    /**
+     * @param userId User id
+     *
+     * @return Ids of the organizations with active Individual Executive Agency rights, <tt>null</tt> for unknown user
+     */
+    public Set<Object> getEligibleOrgIds(Object userId) {
+        return getEligibleOrgIds(userId, System.currentTimeMillis());
+    }
+
+    public void setDecisionCache(AccessDecisionCache decisionCache) {
+        this.decisionCache = decisionCache;
+    }
+
+    public void setContextFactsCache(ContextFactsCache contextFactsCache) {
+        this.contextFactsCache = contextFactsCache;
+    }
+
+    /**
+     * @return Number of users in the view
+     */
+    public int getUserCount() {
+        return eligibilities.size();
+    }
+
+    /**
+     * @return Number of users with the refresh scheduled at a period boundary
+     */
+    int getScheduledRefreshCount() {
+        return refreshes.size();
+    }
+
+    /**
+     * @param userId         User id
+     * @param cryptoProfiles Crypto profiles of the handler context
+     * @param orgIds         Ids of the context organizations
+     * @param now            Current time
+     *
+     * @return <tt>true</tt> for Individual Executive Agency of any of the organizations, <tt>null</tt> for unknown
+     *         user or the profiles other than the ones the view was evaluated with
+     */
+    Boolean isIndividualExecutiveAgency(Object userId, List<CryptoProfile> cryptoProfiles, Collection<?> orgIds, long now) {
+        Eligibility eligibility = eligibilities.get(userId);
+        if (eligibility == null || !eligibility.isEvaluatedWith(cryptoProfiles)) {
+            return null;
+        }
+        if (now >= eligibility.validUntil) {
+            eligibility = refresh(userId, eligibility, now);
+        }
+        for (Object orgId : orgIds) {
+            if (eligibility.activeOrgIds.contains(orgId)) {
+                return Boolean.TRUE;
+            }
+        }
+        return Boolean.FALSE;
+    }
+
+    /**
+     * @param userId         User id
+     * @param cryptoProfiles Crypto profiles of the handler context
+     * @param now            Current time
+     *
+     * @return Time the user eligibility may change at, <tt>now</tt> for unknown user or the profiles other than
+     *         the ones the view was evaluated with
+     */
+    long getValidUntil(Object userId, List<CryptoProfile> cryptoProfiles, long now) {
+        Eligibility eligibility = eligibilities.get(userId);
+        return eligibility != null && eligibility.isEvaluatedWith(cryptoProfiles) ? eligibility.validUntil : now;
+    }
+
+    private Set<Object> getEligibleOrgIds(Object userId, long now) {
+        Eligibility eligibility = eligibilities.get(userId);
+        if (eligibility == null) {
+            return null;
+        }
+        if (now >= eligibility.validUntil) {
+            eligibility = refresh(userId, eligibility, now);
+        }
+        return eligibility.activeOrgIds;
+    }
+
+    private Eligibility refresh(Object userId, Eligibility eligibility, long now) {
+        Eligibility refreshed = eligibility.refresh(now);
+        if (eligibilities.replace(userId, eligibility, refreshed)) {
+            scheduleRefresh(userId, refreshed, now);
+        }
+        return refreshed;
+    }
+
+    private void invalidateUser(Object userId) {
+        if (decisionCache != null) {
+            decisionCache.invalidateUser(userId);
+        }
+        if (contextFactsCache != null) {
+            contextFactsCache.invalidateUser(userId);
+        }
+    }
+
+    private void scheduleRefresh(final Object userId, Eligibility eligibility, long now) {
+        ScheduledExecutorService currentScheduler = scheduler;
+        if (currentScheduler == null || eligibility.validUntil == Long.MAX_VALUE) {
+            cancelRefresh(userId);
+            return;
+        }
+        ScheduledFuture<?> refresh = currentScheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                long time = System.currentTimeMillis();
+                Eligibility current = eligibilities.get(userId);
+                if (current != null && time >= current.validUntil) {
+                    refresh(userId, current, time);
+                }
+            }
+        }, eligibility.validUntil - now, TimeUnit.MILLISECONDS);
+        ScheduledFuture<?> previous = refreshes.put(userId, refresh);
+        if (previous != null && previous != refresh) {
+            previous.cancel(false);
+        }
+    }
+
+    private void cancelRefresh(Object userId) {
+        ScheduledFuture<?> previous = refreshes.remove(userId);
+        if (previous != null) {
+            previous.cancel(false);
+        }
+    }
+
+    /**
+     * Eligibility of a single user, immutable
+     */
+    private static final class Eligibility {
+
+        private final List<CryptoProfile> cryptoProfiles;
+        private final IeaAssignmentIndex assignmentIndex;
+        private final Set<Object> activeOrgIds;
+        private final long validUntil;
+
+        // Profiles state the eligibility was evaluated with: ids, versions and crypto types usage in the profiles order
+        private final Object[] cryptoProfileIds;
+        private final Object[] cryptoProfileVersions;
+        private final boolean[] cryptoTypesUsed;
+
+        private Eligibility(List<CryptoProfile> cryptoProfiles,
+                            IeaAssignmentIndex assignmentIndex,
+                            Set<Object> activeOrgIds,
+                            long validUntil,
+                            Object[] cryptoProfileIds,
+                            Object[] cryptoProfileVersions,
+                            boolean[] cryptoTypesUsed) {
+            this.cryptoProfiles = cryptoProfiles;
+            this.assignmentIndex = assignmentIndex;
+            this.activeOrgIds = activeOrgIds;
+            this.validUntil = validUntil;
+            this.cryptoProfileIds = cryptoProfileIds;
+            this.cryptoProfileVersions = cryptoProfileVersions;
+            this.cryptoTypesUsed = cryptoTypesUsed;
+        }
+
+        private static Eligibility evaluate(List<CryptoProfile> cryptoProfiles, long now) {
+            Object[] cryptoProfileIds = new Object[cryptoProfiles.size()];
+            Object[] cryptoProfileVersions = new Object[cryptoProfiles.size()];
+            boolean[] cryptoTypesUsed = new boolean[cryptoProfiles.size()];
+            for (int i = 0; i < cryptoProfiles.size(); i++) {
+                CryptoProfile cryptoProfile = cryptoProfiles.get(i);
+                cryptoProfileIds[i] = cryptoProfile.getId();
+                cryptoProfileVersions[i] = cryptoProfile.getVersion();
+                cryptoTypesUsed[i] = cryptoProfile.getCryptoType().isUsed();
+            }
+            return new Eligibility(cryptoProfiles, IeaAssignmentIndex.build(cryptoProfiles), null, Long.MIN_VALUE,
+                    cryptoProfileIds, cryptoProfileVersions, cryptoTypesUsed).refresh(now);
+        }
+
+        /**
+         * @return <tt>true</tt>, if the profiles have the state the eligibility was evaluated with
+         */
+        private boolean isEvaluatedWith(List<CryptoProfile> profiles) {
+            if (profiles.size() != cryptoProfileIds.length) {
+                return false;
+            }
+            for (int i = 0; i < cryptoProfileIds.length; i++) {
+                CryptoProfile cryptoProfile = profiles.get(i);
+                if (!ObjectUtils.equals(cryptoProfileIds[i], cryptoProfile.getId())
+                        || !ObjectUtils.equals(cryptoProfileVersions[i], cryptoProfile.getVersion())
+                        || cryptoTypesUsed[i] != cryptoProfile.getCryptoType().isUsed()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @return <tt>true</tt>, if the other eligibility has the same profiles state and eligible organizations
+         */
+        private boolean isSameAs(Eligibility other) {
+            return other.isEvaluatedWith(cryptoProfiles) && activeOrgIds.equals(other.activeOrgIds);
+        }
+
+        /**
+         * @return Eligibility at the time with the same assignments
+         */
+        private Eligibility refresh(long now) {
+            Date today = new Date(now);
+            Set<Object> orgIds = new HashSet<>();
+            for (Object orgId : assignmentIndex.getOrgIds()) {
+                if (assignmentIndex.isActive(orgId, today)) {
+                    orgIds.add(orgId);
+                }
+            }
+            return new Eligibility(cryptoProfiles, assignmentIndex, Collections.unmodifiableSet(orgIds),
+                    assignmentIndex.nextBoundary(assignmentIndex.getOrgIds(), now),
+                    cryptoProfileIds, cryptoProfileVersions, cryptoTypesUsed);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package permission;
+
+// Project imports:
+//      AccessMode
+
+import export.LatencyHistogram;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Access mode decisions metrics of the permission handlers published over JMX, thread-safe.
+ * <p>
+ * Every decision is counted by the deciding branch; the latency is recorded for the single-context decisions,
+ * bulk decisions are counted only.
+ */
+public class PermissionMetrics implements PermissionMetricsMBean {
+
+    private static final String DEFAULT_OBJECT_NAME = "permission:type=CustomPermission,name=metrics";
+
+    private final String objectName;
+
+    private final LatencyHistogram decisionLatency = new LatencyHistogram();
+    private final LongAdder cachedDecisions = new LongAdder();
+    private final LongAdder bulkDecisions = new LongAdder();
+    private final Map<AccessDecision, LongAdder> decisions = new EnumMap<>(AccessDecision.class);
+
+    public PermissionMetrics() {
+        this(DEFAULT_OBJECT_NAME);
+    }
+
+    public PermissionMetrics(String objectName) {
+        this.objectName = objectName;
+        for (AccessDecision decision : AccessDecision.values()) {
+            decisions.put(decision, new LongAdder());
+        }
+    }
+
+    /**
+     * Registers the MBean in the platform MBean server
+     *
+     * @throws JMException on registration failure
+     */
+    public void register() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(objectName);
+        if (!server.isRegistered(name)) {
+            server.registerMBean(this, name);
+        }
+    }
+
+    /**
+     * Unregisters the MBean from the platform MBean server
+     *
+     * @throws JMException on unregistration failure
+     */
+    public void unregister() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(objectName);
+        if (server.isRegistered(name)) {
+            server.unregisterMBean(name);
+        }
+    }
+
+    /**
+     * @param decision Decision of the single context
+     * @param nanos    Decision latency
+     * @param cached   <tt>true</tt>, if the decision was taken from the decisions cache
+     */
+    public void decided(AccessDecision decision, long nanos, boolean cached) {
+        decisionLatency.record(nanos);
+        decisions.get(decision).increment();
+        if (cached) {
+            cachedDecisions.increment();
+        }
+    }
+
+    /**
+     * @param decision Decision of a bulk request row
+     */
+    public void bulkDecided(AccessDecision decision) {
+        decisions.get(decision).increment();
+        bulkDecisions.increment();
+    }
+
+    @Override
+    public long getDecisionCount() {
+        return decisionLatency.getCount();
+    }
+
+    @Override
+    public long getDecisionMeanMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(decisionLatency.getMeanNanos());
+    }
+
+    @Override
+    public long getDecisionP50Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(decisionLatency.getPercentileNanos(50));
+    }
+
+    @Override
+    public long getDecisionP99Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(decisionLatency.getPercentileNanos(99));
+    }
+
+    @Override
+    public long getCachedDecisionCount() {
+        return cachedDecisions.sum();
+    }
+
+    @Override
+    public long getBulkDecisionCount() {
+        return bulkDecisions.sum();
+    }
+
+    @Override
+    public long getFullAccessCount() {
+        return getAccessModeCount(AccessMode.FULL_ACCESS);
+    }
+
+    @Override
+    public long getReadOnlyCount() {
+        return getAccessModeCount(AccessMode.READ_ONLY);
+    }
+
+    @Override
+    public long getTrusteeWithInfocryptCount() {
+        return decisions.get(AccessDecision.TRUSTEE_WITH_INFOCRYPT).sum();
+    }
+
+    @Override
+    public long getIndividualExecutiveAgencyCount() {
+        return decisions.get(AccessDecision.INDIVIDUAL_EXECUTIVE_AGENCY).sum();
+    }
+
+    @Override
+    public long getDefaultDecisionCount() {
+        return decisions.get(AccessDecision.DEFAULT).sum();
+    }
+
+    private long getAccessModeCount(AccessMode accessMode) {
+        long count = 0;
+        for (Map.Entry<AccessDecision, LongAdder> entry : decisions.entrySet()) {
+            if (entry.getKey().getAccessMode() == accessMode) {
+                count += entry.getValue().sum();
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,29 @@
+package permission;
+
+/**
+ * JMX view of the access mode decisions of the permission handlers since start
+ */
+public interface PermissionMetricsMBean {
+
+    long getDecisionCount();
+
+    long getDecisionMeanMicros();
+
+    long getDecisionP50Micros();
+
+    long getDecisionP99Micros();
+
+    long getCachedDecisionCount();
+
+    long getBulkDecisionCount();
+
+    long getFullAccessCount();
+
+    long getReadOnlyCount();
+
+    long getTrusteeWithInfocryptCount();
+
+    long getIndividualExecutiveAgencyCount();
+
+    long getDefaultDecisionCount();
+}
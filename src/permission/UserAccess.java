@@ -0,0 +1,108 @@
+package permission;
+
+// Project imports:
+//      CryptoProfile
+//      InfocryptCrypto
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * User-level part of the access mode decision: Infocrypt token presence and the index of the Individual Executive
+ * Agency assignments. Does not depend on the handler roles, computed once per user and evaluated for any number of
+ * organization sets. The index is built on the first Individual Executive Agency check, not thread-safe.
+ */
+final class UserAccess {
+
+    private final List<CryptoProfile> cryptoProfiles;
+    private final boolean infocrypt;
+    private IeaAssignmentIndex assignmentIndex;
+
+    private UserAccess(List<CryptoProfile> cryptoProfiles, boolean infocrypt) {
+        this.cryptoProfiles = cryptoProfiles;
+        this.infocrypt = infocrypt;
+    }
+
+    /**
+     * @param cryptoProfiles User crypto profiles
+     *
+     * @return User-level decision part
+     */
+    static UserAccess of(List<CryptoProfile> cryptoProfiles) {
+        return new UserAccess(cryptoProfiles, isInfocrypt(cryptoProfiles));
+    }
+
+    /**
+     * Java doc with business comment
+     *
+     * @param trustee <tt>true</tt>, if the user has a trustee role of the handler
+     * @param orgIds  Ids of the context organizations
+     * @param today   Current date
+     *
+     * @return Decision of the user access mode
+     */
+    AccessDecision decide(boolean trustee, Collection<?> orgIds, Date today) {
+        // FULL_ACCESS for Trustee with Infocrypt token
+        if (trustee && infocrypt) {
+            return AccessDecision.TRUSTEE_WITH_INFOCRYPT;
+        }
+
+        // FULL_ACCESS for Individual Executive Agency
+        if (isIndividualExecutiveAgency(orgIds, today)) {
+            return AccessDecision.INDIVIDUAL_EXECUTIVE_AGENCY;
+        }
+
+        return AccessDecision.DEFAULT;
+    }
+
+    /**
+     * @return <tt>true</tt>, if the user has Infocrypt token
+     */
+    boolean isInfocrypt() {
+        return infocrypt;
+    }
+
+    /**
+     * @param orgIds Ids of the context organizations
+     * @param today  Current date
+     *
+     * @return <tt>true</tt> for Individual Executive Agency of any of the organizations
+     */
+    boolean isIndividualExecutiveAgency(Collection<?> orgIds, Date today) {
+        return getAssignmentIndex().isActive(orgIds, today);
+    }
+
+    /**
+     * @param orgIds Ids of the context organizations
+     * @param now    Current time
+     *
+     * @return Time the Individual Executive Agency of the organizations may change at
+     */
+    long nextBoundary(Collection<?> orgIds, long now) {
+        return getAssignmentIndex().nextBoundary(orgIds, now);
+    }
+
+    private IeaAssignmentIndex getAssignmentIndex() {
+        if (assignmentIndex == null) {
+            assignmentIndex = IeaAssignmentIndex.build(cryptoProfiles);
+        }
+        return assignmentIndex;
+    }
+
+    /**
+     * Java doc with business comment
+     *
+     * @param cryptoProfiles List of crypto-profiles
+     *
+     * @return <tt>true</tt> for Infocrypt
+     */
+    static boolean isInfocrypt(List<CryptoProfile> cryptoProfiles) {
+        for (CryptoProfile cryptoProfile : cryptoProfiles) {
+            if (InfocryptCrypto.CRYPTO_TYPE.equals(cryptoProfile.getCryptoType().getName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
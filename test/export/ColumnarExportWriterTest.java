@@ -0,0 +1,115 @@
+package export;
+
+// Project imports:
+//      Document
+//      DocStates
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static export.TestDocuments.document;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class ColumnarExportWriterTest {
+
+    private static final List<String> NAMES = Arrays.asList("amount", "date", "name");
+
+    private static final List<ColumnPlan.ColumnType> TYPES = Arrays.asList(
+            ColumnPlan.ColumnType.DECIMAL, ColumnPlan.ColumnType.DATE, ColumnPlan.ColumnType.STRING);
+
+    private static final ColumnPlan PLAN = ColumnPlan.compile(Arrays.asList(
+            ColumnPlan.numberField("amount"),
+            ColumnPlan.dateField("date", ColumnPlan.DateStyle.DATE),
+            ColumnPlan.stringField("name")
+    ), ExportContext.defaults());
+
+    @Test
+    public void roundTripsDecimalsBeyondLongRange() throws IOException {
+        BigDecimal large = new BigDecimal("123456789012345678901234567890.123456789");
+        BigDecimal negative = new BigDecimal("-98765432109876543210987654321");
+        TestSinks.MemoryFileSink sink = createSink();
+        ColumnarExportWriter writer = new ColumnarExportWriter(sink, NAMES, TYPES, 2);
+        writer.addRow(row(1, large, new Date(1000), "a"), PLAN);
+        writer.addRow(row(2, negative, null, "b"), PLAN);
+        writer.addRow(row(3, 1.5d, new Date(2000), null), PLAN);
+        writer.finish();
+
+        List<Object[]> rows = read(sink);
+        assertEquals(3, rows.size());
+        assertEquals(large, rows.get(0)[0]);
+        assertEquals(negative, rows.get(1)[0]);
+        assertNull(rows.get(1)[1]);
+        assertEquals(new BigDecimal("1.5"), rows.get(2)[0]);
+        assertEquals(new Date(2000), rows.get(2)[1]);
+    }
+
+    @Test
+    public void rejectsRowWithNotFiniteNumber() throws IOException {
+        TestSinks.MemoryFileSink sink = createSink();
+        ColumnarExportWriter writer = new ColumnarExportWriter(sink, NAMES, TYPES, 2);
+        writer.addRow(row(1, BigDecimal.ONE, new Date(1000), "a"), PLAN);
+        for (Object value : new Object[] {Double.NaN, Double.POSITIVE_INFINITY, Float.NEGATIVE_INFINITY}) {
+            try {
+                writer.addRow(row(2, value, new Date(1000), "b"), PLAN);
+                fail("Not finite number accepted: " + value);
+            } catch (IllegalArgumentException e) {
+                // expected, the row is not added
+            }
+        }
+        writer.addRow(row(3, BigDecimal.TEN, new Date(1000), "c"), PLAN);
+        writer.finish();
+
+        List<Object[]> rows = read(sink);
+        assertEquals(2, rows.size());
+        assertEquals("a", rows.get(0)[2]);
+        assertEquals("c", rows.get(1)[2]);
+    }
+
+    @Test
+    public void rejectsOtherVersions() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        output.write(ColumnarExportWriter.MAGIC);
+        output.writeInt(ColumnarExportWriter.VERSION - 1);
+        output.writeInt(0);
+
+        try {
+            new ColumnarExportReader(new ByteArrayInputStream(bytes.toByteArray()));
+            fail("Version " + (ColumnarExportWriter.VERSION - 1) + " accepted");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    private static TestSinks.MemoryFileSink createSink() throws IOException {
+        return new TestSinks.MemoryFileSink(File.createTempFile("columnar", ".dcol"));
+    }
+
+    private static Document row(long docId, Object amount, Date date, String name) {
+        ImmutableMap.Builder<String, Object> fields = ImmutableMap.builder();
+        fields.put("amount", amount);
+        if (date != null) {
+            fields.put("date", date);
+        }
+        if (name != null) {
+            fields.put("name", name);
+        }
+        return document(docId, 0, DocStates.IMPLEMENTED, fields.build());
+    }
+
+    private static List<Object[]> read(TestSinks.MemoryFileSink sink) throws IOException {
+        return new ColumnarExportReader(new ByteArrayInputStream(sink.toByteArray())).readAll();
+    }
+}
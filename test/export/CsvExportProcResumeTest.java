@@ -0,0 +1,172 @@
+package export;
+
+// Project imports:
+//      Document
+//      ParameterSet
+//      ProcException
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Resumable export of {@link CsvExportProc} from the paged source: the journal of the interrupted run
+ */
+public class CsvExportProcResumeTest {
+
+    // More documents than a sequential block, so the interrupted run writes and checkpoints a block
+    private static final int DOCUMENTS = 3000;
+    private static final int PAGE_SIZE = 500;
+    private static final int CHECKPOINT_ROWS = 100;
+
+    // The source fails on the fifth page, after the first block of the sequential export is written
+    private static final int FAILING_PAGE = 5;
+
+    private static final String JOURNAL_FILE_NAME = ".csv-export.journal";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void resumedRunWritesSameFileAndWatermarkAsUninterruptedRun() throws Exception {
+        List<Document> documents = documents();
+        File uninterrupted = folder.newFolder("uninterrupted");
+        File resumed = folder.newFolder("resumed");
+
+        export(new InMemoryDocumentSource(documents), uninterrupted);
+
+        try {
+            export(new FailingDocumentSource(new InMemoryDocumentSource(documents), FAILING_PAGE), resumed);
+            fail("Export of the failing source");
+        } catch (IllegalStateException e) {
+            // Interrupted
+        }
+        ExportJournal journal = ExportJournal.load(resumed);
+        assertNotNull(journal);
+        assertFalse(journal.isEmpty());
+        assertEquals(0, journal.getRows() % CHECKPOINT_ROWS);
+        assertTrue(new File(resumed, journal.getTarget() + ".tmp").length() >= journal.getOffset());
+
+        InMemoryDocumentSource source = new InMemoryDocumentSource(documents);
+        export(source, resumed);
+
+        // Only the documents after the checkpoint are read again
+        assertEquals(DOCUMENTS - journal.getRows(), source.getFetchedDocuments());
+        assertNull(ExportJournal.load(resumed));
+        assertArrayEquals(readExportFile(uninterrupted), readExportFile(resumed));
+        ExportWatermark expected = ExportWatermark.load(uninterrupted);
+        ExportWatermark actual = ExportWatermark.load(resumed);
+        assertEquals(expected.getLastModifyTime(), actual.getLastModifyTime());
+        assertEquals(expected.getDocId(), actual.getDocId());
+        for (Document document : documents) {
+            assertEquals(expected.isExported(document), actual.isExported(document));
+        }
+    }
+
+    @Test
+    public void journalOfOtherSettingsIsDiscarded() throws Exception {
+        List<Document> documents = documents();
+        File directory = folder.getRoot();
+        // Journal of a run with other settings, its temporary file holds some rows
+        ExportJournal.start("PREFIX_20000101_000000.csv", "other settings", 0, ExportWatermark.INITIAL)
+                .checkpoint(ExportWatermark.of(documents.get(9)), null, 5, 10)
+                .store(directory);
+        File staleTempFile = new File(directory, "PREFIX_20000101_000000.csv.tmp");
+        Files.write(staleTempFile.toPath(), "stale".getBytes(Charsets.UTF_8));
+
+        InMemoryDocumentSource source = new InMemoryDocumentSource(documents);
+        export(source, directory);
+
+        // The run starts over: every document is read and exported into a new file
+        assertEquals(DOCUMENTS, source.getFetchedDocuments());
+        assertFalse(staleTempFile.exists());
+        assertFalse(new File(directory, JOURNAL_FILE_NAME).exists());
+        String exported = new String(readExportFile(directory), Charsets.UTF_8);
+        assertTrue(exported.startsWith(ExportContext.defaults().getMetaLine()));
+        assertEquals(DOCUMENTS + 1, exported.split("\n").length);
+    }
+
+    private static void export(DocumentSource source, File directory) throws ProcException {
+        CsvExportProc proc = TestProcedures.exportProc(
+                new FakeDictionaryService(0, TimeUnit.MILLISECONDS).createCache(), TestSinks.memoryFileFactory());
+        proc.setDocumentSource(source);
+        ParameterSet params = TestProcedures.params(ImmutableMap.of(
+                "targetDir", directory.getPath(),
+                "incremental", "true",
+                "pageSize", Integer.toString(PAGE_SIZE),
+                "resumable", "true",
+                "checkpointRows", Integer.toString(CHECKPOINT_ROWS)));
+        proc.execute(TestProcedures.taskToken(), params, new ArrayList<Document>());
+    }
+
+    private static List<Document> documents() {
+        SyntheticDocuments synthetic = new SyntheticDocuments(DOCUMENTS, 0, 0, new Date());
+        List<Document> documents = new ArrayList<>(DOCUMENTS);
+        for (int i = 0; i < DOCUMENTS; i++) {
+            documents.add(synthetic.get(i));
+        }
+        return documents;
+    }
+
+    /**
+     * @return Content of the single committed export file of the directory
+     */
+    private static byte[] readExportFile(File directory) throws IOException {
+        File[] files = directory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(".csv");
+            }
+        });
+        assertEquals(1, files.length);
+        return Files.readAllBytes(files[0].toPath());
+    }
+
+    /**
+     * Source failing on a page, as the storage connection lost in the middle of the run
+     */
+    private static final class FailingDocumentSource implements DocumentSource {
+
+        private final DocumentSource source;
+        private final int failingPage;
+        private int fetchedPages;
+
+        private FailingDocumentSource(DocumentSource source, int failingPage) {
+            this.source = source;
+            this.failingPage = failingPage;
+        }
+
+        @Override
+        public List<Document> fetchPage(DocumentQuery query, int pageSize) {
+            if (++fetchedPages == failingPage) {
+                throw new IllegalStateException("Storage connection lost");
+            }
+            return source.fetchPage(query, pageSize);
+        }
+
+        @Override
+        public List<Document> load(List<Long> docIds, Set<String> projection) {
+            return source.load(docIds, projection);
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package export;
+
+// Project imports:
+//      ParameterSet
+//      ProcException
+
+import com.google.common.collect.ImmutableMap;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Soak test of {@link CsvExportProc#execute} over millions of generated A/B documents, including documents not
+ * in a final state and modified the day before, with the deposit types resolved by the dictionary with latency.
+ * <p>
+ * Every export is preceded by the export of a tenth of the documents, so the heap growth of the full export over it
+ * shows memory retained per document. The heap is measured by the peak usage of the heap pools other than eden,
+ * which the young collections keep bounded by themselves. The allocation is measured by the allocated bytes of the
+ * calling thread, so it is checked for the sequential export only; it includes the stub dispatch of the generated
+ * documents getters. Budgets are system properties, the defaults hold on a developer machine with the default heap.
+ */
+public class CsvExportProcSoakTest {
+
+    private static final long DOCUMENTS = Long.getLong("export.soak.documents", 2000000);
+
+    private static final long MIN_ROWS_PER_SECOND = Long.getLong("export.soak.minRowsPerSecond", 5000);
+    private static final long MAX_ALLOCATED_BYTES_PER_DOCUMENT = Long.getLong("export.soak.maxAllocatedBytesPerDocument", 32 * 1024);
+    private static final long MAX_HEAP_GROWTH_BYTES = Long.getLong("export.soak.maxHeapGrowthBytes", 128L * 1024 * 1024);
+
+    // Every 10th document is not in a final state, every 7th is modified the day before
+    private static final int NOT_FINAL_EVERY = 10;
+    private static final int OTHER_DAY_EVERY = 7;
+
+    private static final long DICTIONARY_LATENCY_MICROS = 200;
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("csv-export-soak").toFile();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(directory);
+    }
+
+    @Test
+    public void sequentialExportStaysWithinBudgets() throws ProcException {
+        Soak warmUp = soak(DOCUMENTS / 10, 1);
+        Soak soak = soak(DOCUMENTS, 1);
+
+        assertBudgets(warmUp, soak);
+        long allocatedBytesPerDocument = soak.allocatedBytes / DOCUMENTS;
+        assertTrue(String.format("Allocated %s bytes per document", allocatedBytesPerDocument),
+                allocatedBytesPerDocument <= MAX_ALLOCATED_BYTES_PER_DOCUMENT);
+    }
+
+    @Test
+    public void parallelExportStaysWithinBudgets() throws ProcException {
+        Soak warmUp = soak(DOCUMENTS / 10, 4);
+        Soak soak = soak(DOCUMENTS, 4);
+
+        assertBudgets(warmUp, soak);
+    }
+
+    private Soak soak(long documents, int parallelism) throws ProcException {
+        SyntheticDocuments synthetic = new SyntheticDocuments(documents, NOT_FINAL_EVERY, OTHER_DAY_EVERY, new Date());
+        long exported = synthetic.getExportedCount();
+        FakeDictionaryService dictionary = new FakeDictionaryService(DICTIONARY_LATENCY_MICROS, TimeUnit.MICROSECONDS);
+        TestSinks.CountingSinkFactory sinkFactory = new TestSinks.CountingSinkFactory();
+        CsvExportMetrics exportMetrics = new CsvExportMetrics();
+        CsvExportProc proc = TestProcedures.exportProc(dictionary.createCache(), sinkFactory);
+        proc.setExportMetrics(exportMetrics);
+        proc.setMaxParallelism(parallelism);
+        ParameterSet params = TestProcedures.params(ImmutableMap.of(
+                "targetDir", directory.getPath(),
+                "parallelism", Integer.toString(parallelism)));
+
+        com.sun.management.ThreadMXBean threads = getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        System.gc();
+        long heapBefore = getHeapUsed();
+        resetPeakUsage();
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+
+        proc.execute(TestProcedures.taskToken(), params, synthetic);
+
+        long durationNanos = System.nanoTime() - start;
+        Soak soak = new Soak();
+        soak.allocatedBytes = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        soak.heapGrowthBytes = getPeakHeapUsed() - heapBefore;
+        soak.rowsPerSecond = exported * TimeUnit.SECONDS.toNanos(1) / Math.max(durationNanos, 1);
+
+        // Header and the exported documents
+        assertEquals(exported + 1, sinkFactory.getCommittedLines());
+        assertEquals(exported, exportMetrics.getLastRunDocumentsExported());
+        assertEquals(0, exportMetrics.getLastRunDocumentsFailed());
+        assertEquals(0, exportMetrics.getTotalRunsAborted());
+        // The deposit types are resolved once per type, not per document
+        assertTrue(String.format("Dictionary requested %s times", dictionary.getRequests()),
+                dictionary.getRequests() <= 2 * parallelism);
+        return soak;
+    }
+
+    private static void assertBudgets(Soak warmUp, Soak soak) {
+        assertTrue(String.format("Exported %s rows per second", soak.rowsPerSecond),
+                soak.rowsPerSecond >= MIN_ROWS_PER_SECOND);
+        long heapGrowthBytes = soak.heapGrowthBytes - warmUp.heapGrowthBytes;
+        assertTrue(String.format("Heap peak grew by %s bytes over the warm-up export", heapGrowthBytes),
+                heapGrowthBytes <= MAX_HEAP_GROWTH_BYTES);
+    }
+
+    private static com.sun.management.ThreadMXBean getThreadMXBean() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+        return threads;
+    }
+
+    private static void resetPeakUsage() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (isMeasured(pool)) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    private static long getHeapUsed() {
+        long used = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (isMeasured(pool)) {
+                used += pool.getUsage().getUsed();
+            }
+        }
+        return used;
+    }
+
+    private static long getPeakHeapUsed() {
+        long used = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (isMeasured(pool)) {
+                used += pool.getPeakUsage().getUsed();
+            }
+        }
+        return used;
+    }
+
+    /**
+     * @return <tt>true</tt> for the heap pools other than eden
+     */
+    private static boolean isMeasured(MemoryPoolMXBean pool) {
+        return pool.getType() == MemoryType.HEAP && pool.isValid() && !pool.getName().contains("Eden");
+    }
+
+    /**
+     * Measurements of a single export
+     */
+    private static final class Soak {
+
+        private long allocatedBytes;
+        private long heapGrowthBytes;
+        private long rowsPerSecond;
+    }
+}
@@ -0,0 +1,162 @@
+package export;
+
+// Project imports:
+//      Document
+//      DocProcessResultList
+//      DocStates
+//      ParameterSet
+//      ProcException
+//      SpecificDocumentType
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CsvExportProcTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void publishesMetricsOfCompletedRun() throws ProcException {
+        TestSinks.CountingSinkFactory sinkFactory = new TestSinks.CountingSinkFactory();
+        CsvExportMetrics exportMetrics = new CsvExportMetrics();
+        CsvExportProc proc = TestProcedures.exportProc(createCache(), sinkFactory);
+        proc.setExportMetrics(exportMetrics);
+        SyntheticDocuments documents = new SyntheticDocuments(100, 10, 7, new Date());
+
+        proc.execute(TestProcedures.taskToken(), params(), documents);
+
+        assertEquals(1, exportMetrics.getTotalRuns());
+        assertEquals(0, exportMetrics.getTotalRunsAborted());
+        assertEquals(documents.getExportedCount(), exportMetrics.getTotalDocumentsExported());
+        assertEquals(documents.getExportedCount() + 1, sinkFactory.getCommittedLines());
+    }
+
+    @Test
+    public void publishesMetricsOfFailedRun() {
+        CsvExportMetrics exportMetrics = new CsvExportMetrics();
+        CsvExportProc proc = TestProcedures.exportProc(createCache(), new CsvSink.Factory() {
+            @Override
+            public CsvSink create(File target) throws IOException {
+                throw new IOException("No space left");
+            }
+        });
+        proc.setExportMetrics(exportMetrics);
+
+        try {
+            proc.execute(TestProcedures.taskToken(), params(), new SyntheticDocuments(100, 0, 0, new Date()));
+            fail("Export of the failing sink");
+        } catch (ProcException e) {
+            // Expected
+        }
+
+        assertEquals(1, exportMetrics.getTotalRuns());
+        assertEquals(1, exportMetrics.getTotalRunsAborted());
+        assertTrue(exportMetrics.getLastRunDurationMillis() >= 0);
+    }
+
+    @Test
+    public void publishesMetricsOfRuntimeFailure() {
+        CsvExportMetrics exportMetrics = new CsvExportMetrics();
+        // No dictionary entry of the deposit type: the document type cannot be resolved
+        CsvExportProc proc = TestProcedures.exportProc(new DepositTypeCache() {
+            @Override
+            public DepositType getDepositType(Long id) {
+                throw new IllegalStateException(String.format(DepositType.MESSAGE_DEPOSIT_TYPE_NOT_FOUND, id));
+            }
+        }, new TestSinks.CountingSinkFactory());
+        proc.setExportMetrics(exportMetrics);
+
+        try {
+            proc.execute(TestProcedures.taskToken(), params(), new SyntheticDocuments(100, 0, 0, new Date()));
+            fail("Export of the unresolved deposit types");
+        } catch (ProcException | IllegalStateException e) {
+            // Expected
+        }
+
+        assertEquals(1, exportMetrics.getTotalRunsAborted());
+        assertTrue(exportMetrics.getLastRunDurationMillis() >= 0);
+    }
+
+    @Test
+    public void incrementalRunCommitsRowsAndMovesWatermarkPastRejectedDocuments() throws ProcException, IOException {
+        CsvExportMetrics exportMetrics = new CsvExportMetrics();
+        CsvExportProc proc = TestProcedures.exportProc(createCache(), TestSinks.memoryFileFactory());
+        proc.setExportMetrics(exportMetrics);
+        SyntheticDocuments synthetic = new SyntheticDocuments(10, 0, 0, new Date());
+        List<Document> documents = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            documents.add(synthetic.get(i));
+        }
+        // NaN amount is not representable in the columnar decimal column, the document is the last one modified
+        long rejectedDocId = 100;
+        documents.add(TestDocuments.document(rejectedDocId, documents.get(9).getLastModifyDate().getTime() + 1,
+                DocStates.IMPLEMENTED, ImmutableMap.<String, Object>of(
+                        SpecificDocumentType.FIELD_DEPOSITTYPEID, SyntheticDocuments.A_TYPE_ID,
+                        SpecificDocumentType.FIELD_DEPOSITSUM, Double.NaN)));
+        ParameterSet params = TestProcedures.params(ImmutableMap.of(
+                "targetDir", folder.getRoot().getPath(),
+                "incremental", "true",
+                "format", "columnar"));
+
+        DocProcessResultList results = proc.execute(TestProcedures.taskToken(), params, documents);
+
+        assertEquals(1, results.size());
+        assertEquals(10, exportMetrics.getLastRunDocumentsExported());
+        assertEquals(1, exportMetrics.getLastRunDocumentsFailed());
+        assertEquals(0, exportMetrics.getTotalRunsAborted());
+        assertEquals(rejectedDocId, ExportWatermark.load(folder.getRoot()).getDocId());
+
+        // The next run neither exports nor rejects the same documents again
+        results = proc.execute(TestProcedures.taskToken(), params, documents);
+
+        assertTrue(results.isEmpty());
+        assertEquals(0, exportMetrics.getLastRunDocumentsExported());
+        assertEquals(0, exportMetrics.getLastRunDocumentsFailed());
+    }
+
+    @Test
+    public void pagedExportRequestsProjectionOfContext() throws ProcException {
+        CsvExportProc proc = TestProcedures.exportProc(createCache(), TestSinks.memoryFileFactory());
+        SyntheticDocuments synthetic = new SyntheticDocuments(10, 0, 0, new Date());
+        List<Document> documents = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            documents.add(synthetic.get(i));
+        }
+        InMemoryDocumentSource source = new InMemoryDocumentSource(documents);
+        proc.setDocumentSource(source);
+        ParameterSet params = TestProcedures.params(ImmutableMap.of(
+                "targetDir", folder.getRoot().getPath(),
+                "pageSize", "4"));
+
+        proc.execute(TestProcedures.taskToken(), params, new ArrayList<Document>());
+
+        assertEquals(10, source.getFetchedDocuments());
+        Set<String> projection = source.getLastProjection();
+        assertEquals(ExportContext.defaults().getProjection(), projection);
+        assertTrue(projection.contains(SpecificDocumentType.FIELD_DEPOSITTYPEID));
+        assertTrue(projection.contains(SpecificDocumentType.FIELD_DEPOSITSUM));
+    }
+
+    private static DepositTypeCache createCache() {
+        return new FakeDictionaryService(0, TimeUnit.MILLISECONDS).createCache();
+    }
+
+    private ParameterSet params() {
+        return TestProcedures.params(ImmutableMap.of("targetDir", folder.getRoot().getPath()));
+    }
+}
@@ -0,0 +1,179 @@
+package export;
+
+// Project imports:
+//      Document
+//      SpecificDocumentType
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.time.FastDateFormat;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class CsvRowBufferTest {
+
+    private static final String STATE = "DELIVERED";
+
+    // 2026-03-29 00:30 UTC, an hour before the DST start in Europe/Berlin
+    private static final long BEFORE_DST_START = 1774744200000L;
+    private static final long HOUR = 60L * 60 * 1000;
+
+    @Test
+    public void encodesSameBytesAsStringPath() {
+        CsvRowBuffer row = new CsvRowBuffer(16);
+        for (Document document : documents()) {
+            for (DepositType depositType : Arrays.asList(DepositType.A, DepositType.B)) {
+                row.clear();
+                Converter.appendCSVLine(document, depositType, row);
+
+                byte[] expected = LegacyConverter.depositToCSVLine(document, depositType).getBytes(StandardCharsets.UTF_8);
+                assertArrayEquals(new String(expected, StandardCharsets.UTF_8), expected, row.toByteArray());
+            }
+        }
+    }
+
+    @Test
+    public void nullNumberFailsAsStringPath() {
+        Map<String, Object> fields = fields(new BigDecimal("1.5"), new Date(BEFORE_DST_START));
+        fields.put(SpecificDocumentType.FIELD_DEPOSITSUM, null);
+        Document document = TestDocuments.document(1, 0, STATE, fields);
+
+        try {
+            LegacyConverter.depositToCSVLine(document, DepositType.A);
+            fail();
+        } catch (NullPointerException expected) {
+            // String path
+        }
+        try {
+            Converter.appendCSVLine(document, DepositType.A, new CsvRowBuffer());
+            fail();
+        } catch (NullPointerException expected) {
+            // Byte path
+        }
+    }
+
+    @Test
+    public void zoneFormatsAreNotReused() {
+        assertEquals(CsvRowBuffer.DateResolution.NONE, CsvRowBuffer.DateResolution.of("dd.MM.yyyy z"));
+        assertEquals(CsvRowBuffer.DateResolution.NONE, CsvRowBuffer.DateResolution.of("yyyy-MM-dd'T'HH:mm:ss.SSSZ"));
+        assertEquals(CsvRowBuffer.DateResolution.DAY, CsvRowBuffer.DateResolution.of("dd.MM.yyyy"));
+
+        TimeZone berlin = TimeZone.getTimeZone("Europe/Berlin");
+        for (String pattern : Arrays.asList("dd.MM.yyyy z", "dd.MM.yyyy Z", "HH z")) {
+            FastDateFormat format = FastDateFormat.getInstance(pattern, berlin);
+            CsvRowBuffer.DateResolution resolution = CsvRowBuffer.DateResolution.of(pattern);
+            CsvRowBuffer row = new CsvRowBuffer();
+            // Same day and hour of the day in the zone, the zone changes from winter to summer time
+            for (long millis = BEFORE_DST_START; millis < BEFORE_DST_START + 3 * HOUR; millis += HOUR / 2) {
+                Date date = new Date(millis);
+                row.clear();
+                row.appendDate(format, resolution, date);
+                assertEquals(format.format(date), row.toString());
+            }
+        }
+    }
+
+    private static List<Document> documents() {
+        List<Document> documents = new ArrayList<>();
+        List<Object> numbers = Arrays.<Object>asList(
+                new BigDecimal("1.50"), new BigDecimal("1.500000"), new BigDecimal("0.000"), new BigDecimal("1E+3"),
+                new BigDecimal("-0.0000001"), new BigDecimal("12345678901234567890.12"),
+                0L, -1L, Long.MIN_VALUE, Long.MAX_VALUE, 42, 1.5d, Double.NaN);
+        long docId = 0;
+        for (Object number : numbers) {
+            documents.add(TestDocuments.document(++docId, 0, STATE, fields(number, new Date(BEFORE_DST_START))));
+        }
+
+        // Missing and empty strings, non-ASCII strings
+        for (String value : Arrays.asList(null, "", "\u00dcn\u00efc\u00f6d\u00e9 \u20ac", "\ud83d\udcb1")) {
+            Map<String, Object> fields = fields(new BigDecimal("2.25"), new Date(BEFORE_DST_START + docId * HOUR));
+            fields.put(SpecificDocumentType.FIELD_EPOSITSUMCURRCODEISO, value);
+            fields.put(SpecificDocumentType.FIELD_DEPOSITSUMALTCURRCODEISO, value);
+            fields.put(SpecificDocumentType.FIELD_PREMIUMCURRCODEISO, value);
+            fields.put(SpecificDocumentType.FIELD_DEPOSITSUMCURRCODEISO, value);
+            fields.put(SpecificDocumentType.FIELD_BASEASSET, value);
+            documents.add(TestDocuments.document(++docId, 0, STATE, fields));
+        }
+
+        // Dates around midnight and the DST start, the cached values must follow them
+        for (long millis = BEFORE_DST_START - 2 * HOUR; millis < BEFORE_DST_START + 26 * HOUR; millis += HOUR / 2 + 1) {
+            documents.add(TestDocuments.document(++docId, 0, STATE, fields(new BigDecimal("3.1"), new Date(millis))));
+        }
+        return documents;
+    }
+
+    private static Map<String, Object> fields(Object number, Date date) {
+        Map<String, Object> fields = new HashMap<>();
+        fields.put(SpecificDocumentType.FIELD_STRUCTUREID, number);
+        fields.put(SpecificDocumentType.FIELD_CONTRACTDATE, date);
+        fields.put(SpecificDocumentType.FIELD_DEPOSITTERMENDDATE, new Date(date.getTime() + 180 * 24 * HOUR));
+        fields.put(SpecificDocumentType.FIELD_EPOSITSUMCURRCODEISO, "USD");
+        fields.put(SpecificDocumentType.FIELD_DEPOSITSUMALTCURRCODEISO, "EUR");
+        fields.put(SpecificDocumentType.FIELD_BASEINTERESTRATE, number);
+        fields.put(SpecificDocumentType.FIELD_PREMIUM, number);
+        fields.put(SpecificDocumentType.FIELD_PREMIUMCURRCODEISO, "GBP");
+        fields.put(SpecificDocumentType.FIELD_DELTA, number);
+        fields.put(SpecificDocumentType.FIELD_STRIKERANGELOWERBOUND, number);
+        fields.put(SpecificDocumentType.FIELD_STRIKERANGEUPPERBOUND, number);
+        fields.put(SpecificDocumentType.FIELD_DEPOSITSUMCURRCODEISO, "CHF");
+        fields.put(SpecificDocumentType.FIELD_BASEASSET, "USD/EUR");
+        fields.put(SpecificDocumentType.FIELD_DEPOSITSUM, number);
+        return fields;
+    }
+
+    /**
+     * String path of the converter before the byte encoding, kept as the reference of the output
+     */
+    private static final class LegacyConverter {
+
+        private static final String VALUE = "Constant business value";
+
+        private static final FastDateFormat DATE_TIME_FORMAT = FastDateFormat.getInstance(ExportContext.DEFAULT_DATE_TIME_PATTERN);
+        private static final FastDateFormat DATE_FORMAT      = FastDateFormat.getInstance(ExportContext.DEFAULT_DATE_PATTERN);
+
+        private static String depositToCSVLine(Document document, DepositType depositType) {
+            boolean a = depositType == DepositType.A;
+            String[] values = {
+                    document.getFieldValue(SpecificDocumentType.FIELD_STRUCTUREID).toString(),
+                    VALUE,
+                    DATE_TIME_FORMAT.format(document.getFieldValue(SpecificDocumentType.FIELD_CONTRACTDATE)),
+                    DATE_FORMAT.format(document.getFieldValue(SpecificDocumentType.FIELD_DEPOSITTERMENDDATE)),
+                    VALUE + " " + document.getStringFieldValue(SpecificDocumentType.FIELD_EPOSITSUMCURRCODEISO),
+                    document.getStringFieldValue(SpecificDocumentType.FIELD_EPOSITSUMCURRCODEISO),
+                    a ? document.getStringFieldValue(SpecificDocumentType.FIELD_DEPOSITSUMALTCURRCODEISO) : "",
+                    document.getFieldValue(SpecificDocumentType.FIELD_BASEINTERESTRATE).toString(),
+                    a ? document.getFieldValue(SpecificDocumentType.FIELD_PREMIUM).toString() : "",
+                    a ? document.getStringFieldValue(SpecificDocumentType.FIELD_PREMIUMCURRCODEISO) : "",
+                    a ? document.getFieldValue(SpecificDocumentType.FIELD_DELTA).toString() : "",
+                    a ? "" : VALUE,
+                    a ? "" : VALUE,
+                    a ? "" : document.getFieldValue(SpecificDocumentType.FIELD_STRIKERANGELOWERBOUND).toString(),
+                    a ? "" : document.getFieldValue(SpecificDocumentType.FIELD_STRIKERANGEUPPERBOUND).toString(),
+                    VALUE,
+                    a ? "" : document.getStringFieldValue(SpecificDocumentType.FIELD_DEPOSITSUMCURRCODEISO),
+                    VALUE,
+                    a ? "" : DATE_FORMAT.format(document.getFieldValue(SpecificDocumentType.FIELD_CONTRACTDATE)),
+                    a ? "" : DATE_FORMAT.format(document.getFieldValue(SpecificDocumentType.FIELD_DEPOSITTERMENDDATE)),
+                    a ? "" : VALUE,
+                    a ? "" : VALUE,
+                    document.getStringFieldValue(SpecificDocumentType.FIELD_BASEASSET),
+                    document.getFieldValue(SpecificDocumentType.FIELD_DEPOSITSUM).toString(),
+                    depositType.getDepositType(),
+                    document.getBankDocState().getSystemName()
+            };
+            return StringUtils.join(values, ";") + "\n";
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package export;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class DepositTypeCacheTest {
+
+    private static final long UNKNOWN_TYPE_ID = 3;
+
+    @Test
+    public void foundDepositTypesAreRequestedOnce() {
+        FakeDictionaryService dictionary = new FakeDictionaryService(0, TimeUnit.MILLISECONDS);
+        DepositTypeCache cache = dictionary.createCache();
+
+        assertEquals(DepositType.A, cache.getDepositType(SyntheticDocuments.A_TYPE_ID));
+        assertEquals(DepositType.A, cache.getDepositType(SyntheticDocuments.A_TYPE_ID));
+
+        assertEquals(1, dictionary.getRequests());
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    public void notFoundIdsAreCachedByTheirOwnTimeToLive() {
+        FakeDictionaryService dictionary = new FakeDictionaryService(0, TimeUnit.MILLISECONDS);
+        DepositTypeCache cache = dictionary.createCache(1000, 60, 60);
+
+        assertNotFound(cache, UNKNOWN_TYPE_ID);
+        assertNotFound(cache, UNKNOWN_TYPE_ID);
+
+        assertEquals(1, dictionary.getRequests());
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    public void notFoundIdsAreNotCachedWithoutTimeToLive() {
+        FakeDictionaryService dictionary = new FakeDictionaryService(0, TimeUnit.MILLISECONDS);
+        DepositTypeCache cache = dictionary.createCache(1000, 60, 0);
+
+        assertNotFound(cache, UNKNOWN_TYPE_ID);
+        assertNotFound(cache, UNKNOWN_TYPE_ID);
+
+        assertEquals(2, dictionary.getRequests());
+        // Found ids keep the long time-to-live
+        cache.getDepositType(SyntheticDocuments.B_TYPE_ID);
+        cache.getDepositType(SyntheticDocuments.B_TYPE_ID);
+        assertEquals(3, dictionary.getRequests());
+    }
+
+    private static void assertNotFound(DepositTypeCache cache, long id) {
+        try {
+            cache.getDepositType(id);
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals(String.format(DepositType.MESSAGE_DEPOSIT_TYPE_NOT_FOUND, id), e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package export;
+
+// Project imports:
+//      Document
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ExportContextTest {
+
+    private static final int DOCUMENTS = 2000;
+    private static final int ROUNDS = 20;
+
+    @Test
+    public void compilesPlansWithOwnSettings() {
+        ExportContext context = new ExportContext("-", "|", "yyyy-MM-dd'T'HH:mm", "yyyyMMdd");
+        String line = Converter.depositToCSVLine(synthetic().get(0), DepositType.A, context);
+
+        assertTrue(line, line.contains("|"));
+        assertTrue(line, !line.contains(";"));
+        assertEquals(context.getMetaLine().split("\\|").length, line.split("\\|", -1).length);
+    }
+
+    @Test
+    public void convertsConcurrentlyWithDifferentContexts() throws Exception {
+        final List<ExportContext> contexts = new ArrayList<>();
+        contexts.add(ExportContext.defaults());
+        contexts.add(new ExportContext("-", "|", "yyyy-MM-dd'T'HH:mm:ss", "yyyyMMdd"));
+        contexts.add(new ExportContext("NULL", ",", "dd/MM/yyyy HH:mm", "dd/MM/yyyy"));
+        contexts.add(new ExportContext("", "\t", "yyyy-MM-dd", "MM-dd-yyyy"));
+
+        // Lines of every context converted alone
+        List<Document> documents = documents();
+        final List<List<String>> expected = new ArrayList<>();
+        for (ExportContext context : contexts) {
+            expected.add(convert(documents, context));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(contexts.size() * 2);
+        try {
+            final CountDownLatch start = new CountDownLatch(1);
+            List<Future<Void>> results = new ArrayList<>();
+            for (int i = 0; i < contexts.size() * 2; i++) {
+                final int contextIndex = i % contexts.size();
+                results.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        List<Document> documents = documents();
+                        start.await();
+                        // Contexts created in the race compile their plans concurrently as well
+                        ExportContext context = contextIndex == 0 ? ExportContext.defaults() : contexts.get(contextIndex);
+                        for (int round = 0; round < ROUNDS; round++) {
+                            assertEquals(expected.get(contextIndex), convert(documents, context));
+                        }
+                        return null;
+                    }
+                }));
+            }
+            start.countDown();
+            for (Future<Void> result : results) {
+                result.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static SyntheticDocuments synthetic() {
+        return new SyntheticDocuments(DOCUMENTS, 0, 0, new Date(0));
+    }
+
+    /**
+     * @return Standalone documents, the stand-ins are not shared between threads
+     */
+    private static List<Document> documents() {
+        SyntheticDocuments synthetic = synthetic();
+        List<Document> documents = new ArrayList<>(DOCUMENTS);
+        for (int i = 0; i < DOCUMENTS; i++) {
+            documents.add(synthetic.get(i));
+        }
+        return documents;
+    }
+
+    private static List<String> convert(List<Document> documents, ExportContext context) {
+        List<String> lines = new ArrayList<>(DOCUMENTS);
+        for (int i = 0; i < documents.size(); i++) {
+            lines.add(Converter.depositToCSVLine(documents.get(i), SyntheticDocuments.getDepositType(i), context));
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,198 @@
+package export;
+
+// Project imports:
+//      DocProcessResultList
+//      TaskToken
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ExportJobExecutorTest {
+
+    private static final long TIMEOUT_SECONDS = 10;
+
+    private ExportJobExecutor executor;
+
+    @After
+    public void tearDown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void rejectsJobsOverQueueLimit() throws Exception {
+        executor = new ExportJobExecutor(1, 1);
+        BlockingTask running = new BlockingTask();
+        executor.submit(TestProcedures.taskToken(), -1, running);
+        running.awaitStarted();
+        ExportJob queued = executor.submit(TestProcedures.taskToken(), -1, new BlockingTask());
+        assertEquals(ExportJob.State.QUEUED, queued.getState());
+
+        TaskToken rejectedToken = TestProcedures.taskToken();
+        try {
+            executor.submit(rejectedToken, -1, new BlockingTask());
+            fail("Submitted over the queue limit");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+        assertNull(executor.getJob(rejectedToken));
+        assertEquals(1, executor.getRunningJobCount());
+        assertEquals(1, executor.getQueuedJobCount());
+    }
+
+    @Test
+    public void rejectsTaskTokenOfUnfinishedJob() throws Exception {
+        executor = new ExportJobExecutor(1, 1);
+        TaskToken taskToken = TestProcedures.taskToken();
+        BlockingTask running = new BlockingTask();
+        ExportJob job = executor.submit(taskToken, -1, running);
+        running.awaitStarted();
+
+        try {
+            executor.submit(taskToken, -1, new BlockingTask());
+            fail("Submitted the task token of the running job");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+        assertSame(job, executor.getJob(taskToken));
+
+        // The token of the finished job is reused
+        running.release();
+        awaitFinished(job);
+        assertEquals(ExportJob.State.SUCCEEDED, job.getState());
+        BlockingTask next = new BlockingTask();
+        next.release();
+        ExportJob nextJob = executor.submit(taskToken, -1, next);
+        assertSame(nextJob, executor.getJob(taskToken));
+        awaitFinished(nextJob);
+    }
+
+    @Test
+    public void cancelsQueuedJobAndFreesItsSlot() throws Exception {
+        executor = new ExportJobExecutor(1, 1);
+        BlockingTask running = new BlockingTask();
+        executor.submit(TestProcedures.taskToken(), -1, running);
+        running.awaitStarted();
+        TaskToken queuedToken = TestProcedures.taskToken();
+        BlockingTask queuedTask = new BlockingTask();
+        ExportJob queued = executor.submit(queuedToken, -1, queuedTask);
+
+        assertTrue(executor.cancel(queuedToken));
+
+        assertEquals(ExportJob.State.CANCELLED, queued.getState());
+        assertFalse(executor.cancel(queuedToken));
+        // The slot of the cancelled job is purged on the next submit
+        BlockingTask next = new BlockingTask();
+        next.release();
+        ExportJob nextJob = executor.submit(TestProcedures.taskToken(), -1, next);
+        running.release();
+        awaitFinished(nextJob);
+        assertEquals(ExportJob.State.SUCCEEDED, nextJob.getState());
+        assertEquals(1, queuedTask.started.getCount());
+    }
+
+    @Test
+    public void cancelsRunningJob() throws Exception {
+        executor = new ExportJobExecutor(1, 1);
+        TaskToken taskToken = TestProcedures.taskToken();
+        BlockingTask task = new BlockingTask();
+        ExportJob job = executor.submit(taskToken, -1, task);
+        task.awaitStarted();
+        assertEquals(ExportJob.State.RUNNING, job.getState());
+
+        assertTrue(executor.cancel(taskToken));
+
+        awaitFinished(job);
+        assertEquals(ExportJob.State.CANCELLED, job.getState());
+        assertTrue(task.cancelled.get());
+        assertFalse(executor.cancel(taskToken));
+    }
+
+    @Test
+    public void purgesFinishedJobsAfterRetention() throws Exception {
+        executor = new ExportJobExecutor(1, 1, 50);
+        TaskToken finishedToken = TestProcedures.taskToken();
+        BlockingTask finished = new BlockingTask();
+        finished.release();
+        ExportJob job = executor.submit(finishedToken, -1, finished);
+        awaitFinished(job);
+        assertSame(job, executor.getJob(finishedToken));
+
+        Thread.sleep(100);
+        TaskToken nextToken = TestProcedures.taskToken();
+        BlockingTask next = new BlockingTask();
+        next.release();
+        executor.submit(nextToken, -1, next);
+
+        assertNull(executor.getJob(finishedToken));
+        assertNotNull(executor.getJob(nextToken));
+        assertEquals(1, executor.getJobs().size());
+    }
+
+    @Test
+    public void shutdownWaitsForCancelledJobs() throws Exception {
+        executor = new ExportJobExecutor(1, 1);
+        BlockingTask task = new BlockingTask();
+        ExportJob job = executor.submit(TestProcedures.taskToken(), -1, task);
+        task.awaitStarted();
+
+        executor.shutdown();
+
+        assertEquals(ExportJob.State.CANCELLED, job.getState());
+        assertTrue(task.cancelled.get());
+    }
+
+    private static void awaitFinished(ExportJob job) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+        while (!job.isFinished()) {
+            assertTrue("Job not finished: " + job, System.nanoTime() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Task running until released or until the job cancellation, as the export stops at the next document
+     */
+    private static final class BlockingTask implements ExportJob.Task {
+
+        private final CountDownLatch started = new CountDownLatch(1);
+        private final CountDownLatch released = new CountDownLatch(1);
+        private final AtomicBoolean cancelled = new AtomicBoolean();
+
+        @Override
+        public DocProcessResultList run(ExportJob job) throws Exception {
+            started.countDown();
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+            while (!released.await(1, TimeUnit.MILLISECONDS)) {
+                if (job.isCancelRequested()) {
+                    cancelled.set(true);
+                    return null;
+                }
+                assertTrue("Task not released", System.nanoTime() < deadline);
+            }
+            return null;
+        }
+
+        private void awaitStarted() throws InterruptedException {
+            assertTrue(started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        }
+
+        private void release() {
+            released.countDown();
+        }
+    }
+}
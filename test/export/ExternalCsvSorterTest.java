@@ -0,0 +1,205 @@
+package export;
+
+import com.google.common.base.Charsets;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ExternalCsvSorterTest {
+
+    // Spills a run on every line
+    private static final long RUN_PER_LINE_MEMORY = 1;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void sortsBufferWithoutRuns() throws IOException {
+        List<Entry> entries = entries(100, 1000, 1000);
+
+        assertEquals(expected(entries), sort(entries, Long.MAX_VALUE, 0));
+    }
+
+    @Test
+    public void mergesRuns() throws IOException {
+        List<Entry> entries = entries(1000, 1000, 1000);
+
+        // About a hundred lines per run, the last lines stay in the buffer
+        assertEquals(expected(entries), sort(entries, 100 * 120, 5));
+    }
+
+    @Test
+    public void mergesRunsOverFanInByIntermediateMerges() throws IOException {
+        int lines = 3 * ExternalCsvSorter.MAX_MERGE_FAN_IN + 10;
+        List<Entry> entries = entries(lines, 50, 50);
+
+        assertEquals(expected(entries), sort(entries, RUN_PER_LINE_MEMORY, lines));
+    }
+
+    @Test
+    public void keepsAdditionOrderOfEqualKeys() throws IOException {
+        // Few distinct keys, missing trade dates and ids included, equal keys spread over many runs
+        int lines = 2 * ExternalCsvSorter.MAX_MERGE_FAN_IN + 30;
+        List<Entry> entries = entries(lines, 3, 3);
+
+        assertEquals(expected(entries), sort(entries, RUN_PER_LINE_MEMORY, lines));
+    }
+
+    @Test
+    public void closeDeletesRunsAfterFailedWrite() throws IOException {
+        ExternalCsvSorter sorter = new ExternalCsvSorter(folder.getRoot(), "export", RUN_PER_LINE_MEMORY);
+        for (Entry entry : entries(ExternalCsvSorter.MAX_MERGE_FAN_IN + 10, 10, 10)) {
+            add(sorter, entry);
+        }
+        assertTrue(runFiles().length > ExternalCsvSorter.MAX_MERGE_FAN_IN);
+
+        try {
+            sorter.writeTo(new LinesSink(5));
+            fail("Written into the failing sink");
+        } catch (IOException e) {
+            // expected
+        }
+        assertTrue(runFiles().length > 0);
+
+        sorter.close();
+
+        assertEquals(0, runFiles().length);
+        assertEquals(0, sorter.getRunCount());
+    }
+
+    /**
+     * @return Lines written by the sorter, the run files are checked and deleted
+     */
+    private List<String> sort(List<Entry> entries, long maxMemoryBytes, int minRuns) throws IOException {
+        LinesSink sink = new LinesSink(Integer.MAX_VALUE);
+        ExternalCsvSorter sorter = new ExternalCsvSorter(folder.getRoot(), "export", maxMemoryBytes);
+        try {
+            for (Entry entry : entries) {
+                add(sorter, entry);
+            }
+            assertTrue(String.format("Spilled %s runs", sorter.getRunCount()), sorter.getRunCount() >= minRuns);
+            sorter.writeTo(sink);
+        } finally {
+            sorter.close();
+        }
+        assertEquals(0, runFiles().length);
+        return sink.lines;
+    }
+
+    private static void add(ExternalCsvSorter sorter, Entry entry) throws IOException {
+        byte[] bytes = (" " + entry.line).getBytes(Charsets.UTF_8);
+        // The line is taken at an offset of the buffer
+        sorter.add(new ExternalCsvSorter.Key(entry.tradeDate, entry.tradeId), bytes, 1, bytes.length - 1);
+    }
+
+    /**
+     * @return Lines of the entries stable-sorted by the trade date and id, missing values first
+     */
+    private static List<String> expected(List<Entry> entries) {
+        List<Entry> sorted = new ArrayList<>(entries);
+        Collections.sort(sorted, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry first, Entry second) {
+                int result = Long.compare(first.tradeDate, second.tradeDate);
+                if (result != 0) {
+                    return result;
+                }
+                if (first.tradeId == null || second.tradeId == null) {
+                    return Boolean.compare(second.tradeId == null, first.tradeId == null);
+                }
+                return new BigDecimal(first.tradeId.toString()).compareTo(new BigDecimal(second.tradeId.toString()));
+            }
+        });
+        List<String> lines = new ArrayList<>(sorted.size());
+        for (Entry entry : sorted) {
+            lines.add(entry.line);
+        }
+        return lines;
+    }
+
+    /**
+     * @param count      Number of the entries
+     * @param tradeDates Number of the distinct trade dates, the first one is missing
+     * @param tradeIds   Number of the distinct trade ids, the first one is missing
+     *
+     * @return Entries with the random keys and the lines numbered in the order of addition
+     */
+    private static List<Entry> entries(int count, int tradeDates, int tradeIds) {
+        Random random = new Random(count);
+        List<Entry> entries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int tradeDate = random.nextInt(tradeDates);
+            int tradeId = random.nextInt(tradeIds);
+            entries.add(new Entry(
+                    tradeDate == 0 ? Long.MIN_VALUE : tradeDate * 86400000L,
+                    tradeId == 0 ? null : tradeId % 2 == 0 ? Long.valueOf(tradeId) : new BigDecimal(tradeId + ".50"),
+                    String.format("%s;%s;%s\n", tradeDate, tradeId, i)));
+        }
+        return entries;
+    }
+
+    private File[] runFiles() {
+        return folder.getRoot().listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(".sortrun");
+            }
+        });
+    }
+
+    private static final class Entry {
+
+        private final long tradeDate;
+        private final Number tradeId;
+        private final String line;
+
+        private Entry(long tradeDate, Number tradeId, String line) {
+            this.tradeDate = tradeDate;
+            this.tradeId = tradeId;
+            this.line = line;
+        }
+    }
+
+    /**
+     * Sink of the written lines failing after the number of lines
+     */
+    private static final class LinesSink implements CsvSink {
+
+        private final List<String> lines = new ArrayList<>();
+        private final int failAfter;
+
+        private LinesSink(int failAfter) {
+            this.failAfter = failAfter;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            if (lines.size() == failAfter) {
+                throw new IOException("Disk full");
+            }
+            lines.add(new String(bytes, offset, length, Charsets.UTF_8));
+        }
+
+        @Override
+        public void commit() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
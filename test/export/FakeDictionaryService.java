@@ -0,0 +1,138 @@
+package export;
+
+// Project imports:
+//      Document
+//      DictionaryService
+//      FieldSet
+//      SpecificDictionary
+
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.lang.reflect.Field;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.mockito.Mockito.RETURNS_DEFAULTS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * Deposit types dictionary stand-in with a configurable latency of every request.
+ * <p>
+ * The dictionary answers the entries of the {@link SyntheticDocuments} deposit type ids. The requested id is not
+ * readable from the platform query, so it is passed by the resolving thread: use {@link #resolve} or the cache
+ * of {@link #createCache}, the requests of the other callers get no entry.
+ */
+final class FakeDictionaryService {
+
+    private static final ThreadLocal<Long> REQUESTED_ID = new ThreadLocal<>();
+
+    private final long latencyNanos;
+    private final AtomicLong requests = new AtomicLong();
+    private final DictionaryService service;
+    private final FieldSet aEntry;
+    private final FieldSet bEntry;
+
+    /**
+     * @param latency  Latency of a dictionary request
+     * @param timeUnit Unit of the latency
+     */
+    FakeDictionaryService(long latency, TimeUnit timeUnit) {
+        this.latencyNanos = timeUnit.toNanos(latency);
+        this.aEntry = createEntry(DepositType.A);
+        this.bEntry = createEntry(DepositType.B);
+        this.service = mock(DictionaryService.class, withSettings().stubOnly().defaultAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                if (!"getFirst".equals(invocation.getMethod().getName())) {
+                    return RETURNS_DEFAULTS.answer(invocation);
+                }
+                requests.incrementAndGet();
+                pause();
+                Long id = REQUESTED_ID.get();
+                if (id == null) {
+                    return null;
+                }
+                return id == SyntheticDocuments.A_TYPE_ID ? aEntry : id == SyntheticDocuments.B_TYPE_ID ? bEntry : null;
+            }
+        }));
+    }
+
+    DictionaryService getService() {
+        return service;
+    }
+
+    /**
+     * @return Number of the dictionary requests
+     */
+    long getRequests() {
+        return requests.get();
+    }
+
+    /**
+     * Resolves deposit type of the document by the dictionary without caching
+     */
+    DepositType resolve(Document document) {
+        REQUESTED_ID.set(DepositType.getDepositTypeId(document));
+        try {
+            return DepositType.getDepositType(document, service);
+        } finally {
+            REQUESTED_ID.remove();
+        }
+    }
+
+    /**
+     * @return Cache of the deposit types over the dictionary
+     */
+    DepositTypeCache createCache() {
+        return createCache(1000, 60, 60);
+    }
+
+    /**
+     * @return Cache of the deposit types over the dictionary with the settings
+     */
+    DepositTypeCache createCache(long maximumSize, long timeToLiveMinutes, long notFoundTimeToLiveSeconds) {
+        DepositTypeCache cache = new DepositTypeCache(maximumSize, timeToLiveMinutes, notFoundTimeToLiveSeconds) {
+            @Override
+            public DepositType getDepositType(Long id) {
+                REQUESTED_ID.set(id);
+                try {
+                    return super.getDepositType(id);
+                } finally {
+                    REQUESTED_ID.remove();
+                }
+            }
+        };
+        // The platform injects the dictionary service into the field
+        try {
+            Field field = DepositTypeCache.class.getDeclaredField("dictionaryService");
+            field.setAccessible(true);
+            field.set(cache, service);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+        return cache;
+    }
+
+    private void pause() {
+        long deadline = System.nanoTime() + latencyNanos;
+        for (long remaining = latencyNanos; remaining > 0; remaining = deadline - System.nanoTime()) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+
+    private static FieldSet createEntry(final DepositType depositType) {
+        return mock(FieldSet.class, withSettings().stubOnly().defaultAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                if ("getStringFieldValue".equals(invocation.getMethod().getName())
+                        && SpecificDictionary.TYPEDEPOSITID.equals(invocation.getArguments()[0])) {
+                    return depositType.getDepositTypeId();
+                }
+                return RETURNS_DEFAULTS.answer(invocation);
+            }
+        }));
+    }
+}
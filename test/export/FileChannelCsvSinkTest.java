@@ -0,0 +1,86 @@
+package export;
+
+import com.google.common.base.Charsets;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FileChannelCsvSinkTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void resumedSinkTruncatesTemporaryFileToOffset() throws IOException {
+        File target = new File(folder.getRoot(), "export.csv");
+        File tempFile = new File(folder.getRoot(), "export.csv.tmp");
+        FileChannelCsvSink sink = FileChannelCsvSink.resume(target, 0);
+        write(sink, "header\nrow1\n");
+        long offset = sink.checkpoint();
+        // Written after the checkpoint, lost by the interruption
+        write(sink, "row2\nro");
+        sink.checkpoint();
+        sink.close();
+        assertEquals("header\nrow1\nrow2\nro", read(tempFile));
+
+        sink = FileChannelCsvSink.resume(target, offset);
+        assertEquals("header\nrow1\n", read(tempFile));
+        write(sink, "row2\nrow3\n");
+        sink.commit();
+        sink.close();
+
+        assertEquals("header\nrow1\nrow2\nrow3\n", read(target));
+        assertFalse(tempFile.exists());
+    }
+
+    @Test
+    public void resumeFailsOnTemporaryFileShorterThanOffset() throws IOException {
+        File target = new File(folder.getRoot(), "export.csv");
+        File tempFile = new File(folder.getRoot(), "export.csv.tmp");
+        Files.write(tempFile.toPath(), "header\n".getBytes(Charsets.UTF_8));
+
+        try {
+            FileChannelCsvSink.resume(target, 100);
+            fail("Resumed after the end of the temporary file");
+        } catch (IOException e) {
+            // expected
+        }
+
+        // The temporary file is kept for the inspection
+        assertEquals("header\n", read(tempFile));
+        assertFalse(target.exists());
+    }
+
+    @Test
+    public void resumableSinkKeepsTemporaryFileOnClose() throws IOException {
+        File target = new File(folder.getRoot(), "export.csv");
+        FileChannelCsvSink sink = FileChannelCsvSink.resume(target, 0);
+        write(sink, "header\n");
+        sink.checkpoint();
+        sink.close();
+
+        assertTrue(new File(folder.getRoot(), "export.csv.tmp").exists());
+
+        FileChannelCsvSink.discard(target);
+
+        assertFalse(new File(folder.getRoot(), "export.csv.tmp").exists());
+    }
+
+    private static void write(CsvSink sink, String value) throws IOException {
+        byte[] bytes = value.getBytes(Charsets.UTF_8);
+        sink.write(bytes, 0, bytes.length);
+    }
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), Charsets.UTF_8);
+    }
+}
@@ -0,0 +1,46 @@
+package export;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class GzipCsvSinkTest {
+
+    @Test
+    public void compressesCommittedOutput() throws IOException {
+        TestSinks.MemoryFileSink delegate = new TestSinks.MemoryFileSink(File.createTempFile("gzip", ".csv.gz"));
+        GzipCsvSink sink = new GzipCsvSink(delegate);
+        byte[] line = "a;b;c\n".getBytes(Charsets.UTF_8);
+        for (int i = 0; i < 1000; i++) {
+            sink.write(line, 0, line.length);
+        }
+        sink.commit();
+        sink.close();
+
+        byte[] uncompressed = ByteStreams.toByteArray(new GZIPInputStream(new ByteArrayInputStream(delegate.toByteArray())));
+        assertEquals(1000 * line.length, uncompressed.length);
+        assertTrue(delegate.isCommitted());
+        assertTrue(delegate.isClosed());
+    }
+
+    @Test
+    public void closesDelegateWithoutCommit() throws IOException {
+        TestSinks.MemoryFileSink delegate = new TestSinks.MemoryFileSink(File.createTempFile("gzip", ".csv.gz"));
+        GzipCsvSink sink = new GzipCsvSink(delegate);
+        byte[] line = "a;b;c\n".getBytes(Charsets.UTF_8);
+        sink.write(line, 0, line.length);
+        sink.close();
+
+        assertFalse(delegate.isCommitted());
+        assertTrue(delegate.isClosed());
+    }
+}
@@ -0,0 +1,68 @@
+package export;
+
+// Project imports:
+//      Document
+//      DocStates
+//      SpecificDocumentType
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import static export.TestDocuments.document;
+import static org.junit.Assert.assertEquals;
+
+public class LoadedDocumentsTest {
+
+    @Test
+    public void loadsDocumentsInIdsOrderByPages() {
+        List<Document> documents = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            documents.add(document(i, 1000L - i, DocStates.IMPLEMENTED));
+        }
+        InMemoryDocumentSource source = new InMemoryDocumentSource(documents);
+        long[] docIds = LoadedDocuments.getDocIds(documents);
+
+        List<Long> loaded = docIds(new LoadedDocuments(source, docIds, Collections.<String>emptySet(), 10));
+
+        assertEquals(25, loaded.size());
+        for (int i = 0; i < loaded.size(); i++) {
+            assertEquals(Long.valueOf(i), loaded.get(i));
+        }
+        assertEquals(3, source.getFetchedPages());
+    }
+
+    @Test
+    public void skipsDeletedDocumentsAndEmptyPages() {
+        InMemoryDocumentSource source = new InMemoryDocumentSource(Arrays.asList(
+                document(1, 1000L, DocStates.IMPLEMENTED),
+                document(5, 1000L, DocStates.IMPLEMENTED)));
+
+        List<Long> loaded = docIds(new LoadedDocuments(source, new long[]{1, 2, 3, 4, 5}, Collections.<String>emptySet(), 2));
+
+        assertEquals(Arrays.asList(1L, 5L), loaded);
+        assertEquals(3, source.getFetchedPages());
+    }
+
+    @Test
+    public void loadsDocumentsWithProjection() {
+        InMemoryDocumentSource source = new InMemoryDocumentSource(Arrays.asList(document(1, 1000L, DocStates.IMPLEMENTED)));
+        Set<String> projection = Collections.singleton(SpecificDocumentType.FIELD_DEPOSITSUM);
+
+        docIds(new LoadedDocuments(source, new long[]{1}, projection, 10));
+
+        assertEquals(projection, source.getLastProjection());
+    }
+
+    private static List<Long> docIds(Iterable<Document> documents) {
+        List<Long> docIds = new ArrayList<>();
+        for (Document document : documents) {
+            docIds.add(document.getDocId());
+        }
+        return docIds;
+    }
+}
@@ -0,0 +1,127 @@
+package export;
+
+// Project imports:
+//      Document
+//      DocStates
+
+import com.google.common.collect.ImmutableSet;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+
+import static export.TestDocuments.document;
+import static org.junit.Assert.assertEquals;
+
+public class PagedDocumentsTest {
+
+    private static final Set<String> STATES = ImmutableSet.of(DocStates.IMPLEMENTED);
+
+    private static final long DAY = 24L * 60 * 60 * 1000;
+
+    @Test
+    public void readsAllDocumentsInQueryOrderAcrossPages() {
+        List<Document> documents = new ArrayList<>();
+        // Same modify time for the pairs, ordered by the id within the time
+        for (int i = 0; i < 25; i++) {
+            documents.add(document(100 - i, (i / 2) * 1000L, DocStates.IMPLEMENTED));
+        }
+        Collections.shuffle(documents);
+        InMemoryDocumentSource source = new InMemoryDocumentSource(documents);
+
+        List<Document> read = read(new PagedDocuments(source, query(null, null, ExportWatermark.INITIAL), 10));
+
+        assertEquals(25, read.size());
+        for (int i = 1; i < read.size(); i++) {
+            assertEquals(true, ExportWatermark.of(read.get(i - 1)).isBefore(read.get(i)));
+        }
+        assertEquals(3, source.getFetchedPages());
+        assertEquals(25, source.getFetchedDocuments());
+    }
+
+    @Test
+    public void fetchesEmptyPageAfterFullLastPage() {
+        List<Document> documents = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            documents.add(document(i, i, DocStates.IMPLEMENTED));
+        }
+        InMemoryDocumentSource source = new InMemoryDocumentSource(documents);
+
+        assertEquals(20, read(new PagedDocuments(source, query(null, null, ExportWatermark.INITIAL), 10)).size());
+        assertEquals(3, source.getFetchedPages());
+    }
+
+    @Test
+    public void filtersStatesAndModifyDateRange() {
+        List<Document> documents = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            documents.add(document(i, i * DAY / 10, i % 3 == 0 ? DocStates.INVALIDEDS : DocStates.IMPLEMENTED));
+        }
+        InMemoryDocumentSource source = new InMemoryDocumentSource(documents);
+
+        List<Document> read = read(new PagedDocuments(source, query(new Date(DAY), new Date(2 * DAY), ExportWatermark.INITIAL), 4));
+
+        List<Long> docIds = docIds(read);
+        assertEquals(Arrays.asList(10L, 11L, 13L, 14L, 16L, 17L, 19L), docIds);
+        assertEquals(7, source.getFetchedDocuments());
+    }
+
+    @Test
+    public void continuesAfterCursor() {
+        List<Document> documents = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            documents.add(document(i, 1000L, DocStates.IMPLEMENTED));
+            documents.add(document(10 + i, 2000L, DocStates.IMPLEMENTED));
+        }
+        InMemoryDocumentSource source = new InMemoryDocumentSource(documents);
+
+        List<Document> read = read(new PagedDocuments(source, query(null, null, ExportWatermark.of(1000L, 7)), 3));
+
+        List<Long> expected = new ArrayList<>();
+        expected.add(8L);
+        expected.add(9L);
+        for (long docId = 10; docId < 20; docId++) {
+            expected.add(docId);
+        }
+        assertEquals(expected, docIds(read));
+        assertEquals(12, source.getFetchedDocuments());
+    }
+
+    @Test
+    public void readsNothingFromEmptySource() {
+        InMemoryDocumentSource source = new InMemoryDocumentSource(Collections.<Document>emptyList());
+
+        assertEquals(0, read(new PagedDocuments(source, query(null, null, ExportWatermark.INITIAL), 5)).size());
+        assertEquals(1, source.getFetchedPages());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsInvalidPageSize() {
+        new PagedDocuments(new InMemoryDocumentSource(Collections.<Document>emptyList()),
+                query(null, null, ExportWatermark.INITIAL), 0);
+    }
+
+    private static DocumentQuery query(Date modifiedFrom, Date modifiedTo, ExportWatermark cursor) {
+        return new DocumentQuery(STATES, modifiedFrom, modifiedTo, cursor);
+    }
+
+    private static List<Document> read(Iterable<Document> documents) {
+        List<Document> read = new ArrayList<>();
+        for (Document document : documents) {
+            read.add(document);
+        }
+        return read;
+    }
+
+    private static List<Long> docIds(List<Document> documents) {
+        List<Long> docIds = new ArrayList<>();
+        for (Document document : documents) {
+            docIds.add(document.getDocId());
+        }
+        return docIds;
+    }
+}
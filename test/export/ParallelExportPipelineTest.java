@@ -0,0 +1,260 @@
+package export;
+
+// Project imports:
+//      Document
+//      DocStates
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import static export.TestDocuments.document;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ParallelExportPipelineTest {
+
+    private static final int CHUNK_SIZE = 16;
+    private static final int PARALLELISM = 4;
+    private static final int MAX_IN_FLIGHT = PARALLELISM * ParallelExportPipeline.IN_FLIGHT_CHUNKS_PER_WORKER;
+
+    private final ParallelExportPipeline pipeline = new ParallelExportPipeline(CHUNK_SIZE);
+
+    @After
+    public void tearDown() {
+        pipeline.shutdown();
+    }
+
+    @Test
+    public void orderedOutputMatchesSequentialExport() throws IOException {
+        List<Document> documents = documents(1000);
+        CollectingWriter writer = new CollectingWriter();
+
+        pipeline.run(documents, PARALLELISM, true, new JitterEncoder(), writer);
+
+        assertArrayEquals(encodeSequentially(documents), writer.toByteArray());
+    }
+
+    @Test
+    public void unorderedOutputHasRowsOfSequentialExport() throws IOException {
+        List<Document> documents = documents(1000);
+        CollectingWriter writer = new CollectingWriter();
+
+        pipeline.run(documents, PARALLELISM, false, new JitterEncoder(), writer);
+
+        assertEquals(sortedLines(encodeSequentially(documents)), sortedLines(writer.toByteArray()));
+    }
+
+    @Test
+    public void writerHoldsBackIteratorAtMaxInFlightChunks() throws IOException {
+        final CountingDocuments documents = new CountingDocuments(documents(1000));
+        final AtomicInteger written = new AtomicInteger();
+
+        ParallelExportPipeline.RowEncoder encoder = new ParallelExportPipeline.RowEncoder() {
+            @Override
+            public boolean encode(Document document, CsvRowBuffer row) {
+                row.append(document.getDocId()).append("\n");
+                return true;
+            }
+        };
+
+        pipeline.run(documents, PARALLELISM, true, encoder, new ParallelExportPipeline.RowWriter() {
+            @Override
+            public void write(Document document, byte[] bytes, int offset, int length) {
+                // Documents of the chunk being written and of the chunks in flight after it
+                int writtenChunks = written.getAndIncrement() / CHUNK_SIZE;
+                assertTrue(documents.pulled.get() <= (writtenChunks + MAX_IN_FLIGHT) * CHUNK_SIZE);
+            }
+        });
+
+        assertEquals(1000, written.get());
+    }
+
+    @Test
+    public void chunkBuffersAreReused() throws IOException {
+        final Map<byte[], Boolean> buffers = new IdentityHashMap<>();
+        ParallelExportPipeline.RowWriter writer = new ParallelExportPipeline.RowWriter() {
+            @Override
+            public void write(Document document, byte[] bytes, int offset, int length) {
+                buffers.put(bytes, Boolean.TRUE);
+            }
+        };
+
+        pipeline.run(documents(1000), PARALLELISM, true, new JitterEncoder(), writer);
+        pipeline.run(documents(1000), PARALLELISM, false, new JitterEncoder(), writer);
+
+        assertTrue(String.format("%s buffers", buffers.size()), buffers.size() <= MAX_IN_FLIGHT);
+    }
+
+    @Test
+    public void workerFailureStopsRun() throws Exception {
+        final AtomicInteger encoded = new AtomicInteger();
+        ParallelExportPipeline.RowEncoder failing = new ParallelExportPipeline.RowEncoder() {
+            @Override
+            public boolean encode(Document document, CsvRowBuffer row) {
+                if (document.getDocId() == 100) {
+                    throw new IllegalStateException("Conversion failed");
+                }
+                encoded.incrementAndGet();
+                return new JitterEncoder().encode(document, row);
+            }
+        };
+
+        try {
+            pipeline.run(documents(10000), PARALLELISM, true, failing, new CollectingWriter());
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("Conversion failed", e.getMessage());
+        }
+
+        assertTrue(encoded.get() < 10000);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (pipeline.getActiveWorkerCount() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, pipeline.getActiveWorkerCount());
+
+        // The pipeline runs the next export
+        List<Document> documents = documents(100);
+        CollectingWriter writer = new CollectingWriter();
+        pipeline.run(documents, PARALLELISM, true, new JitterEncoder(), writer);
+        assertArrayEquals(encodeSequentially(documents), writer.toByteArray());
+    }
+
+    @Test
+    public void writerFailureStopsRun() throws Exception {
+        try {
+            pipeline.run(documents(10000), PARALLELISM, false, new JitterEncoder(), new ParallelExportPipeline.RowWriter() {
+                @Override
+                public void write(Document document, byte[] bytes, int offset, int length) throws IOException {
+                    throw new IOException("Disk full");
+                }
+            });
+            fail();
+        } catch (IOException e) {
+            assertEquals("Disk full", e.getMessage());
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (pipeline.getActiveWorkerCount() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, pipeline.getActiveWorkerCount());
+    }
+
+    private static List<Document> documents(int count) {
+        List<Document> documents = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++) {
+            documents.add(document(i, i, DocStates.IMPLEMENTED));
+        }
+        return documents;
+    }
+
+    private static byte[] encodeSequentially(List<Document> documents) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        CsvRowBuffer row = new CsvRowBuffer();
+        for (Document document : documents) {
+            row.clear();
+            if (encode(document, row)) {
+                output.write(row.array(), 0, row.size());
+            }
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * Every third document is not exported
+     */
+    private static boolean encode(Document document, CsvRowBuffer row) {
+        if (document.getDocId() % 3 == 0) {
+            return false;
+        }
+        row.append(document.getDocId()).append(";row\n");
+        return true;
+    }
+
+    private static List<String> sortedLines(byte[] bytes) {
+        List<String> lines = new ArrayList<>(Arrays.asList(new String(bytes, StandardCharsets.UTF_8).split("\n")));
+        Collections.sort(lines);
+        return lines;
+    }
+
+    /**
+     * Encoder with random delays, so the chunks complete out of order
+     */
+    private static final class JitterEncoder implements ParallelExportPipeline.RowEncoder {
+
+        @Override
+        public boolean encode(Document document, CsvRowBuffer row) {
+            if (ThreadLocalRandom.current().nextInt(50) == 0) {
+                LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(200));
+            }
+            return ParallelExportPipelineTest.encode(document, row);
+        }
+    }
+
+    private static final class CollectingWriter implements ParallelExportPipeline.RowWriter {
+
+        private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        @Override
+        public void write(Document document, byte[] bytes, int offset, int length) {
+            output.write(bytes, offset, length);
+        }
+
+        private byte[] toByteArray() {
+            return output.toByteArray();
+        }
+    }
+
+    /**
+     * Documents counting the documents pulled by the pipeline
+     */
+    private static final class CountingDocuments implements Iterable<Document> {
+
+        private final List<Document> documents;
+        private final AtomicInteger pulled = new AtomicInteger();
+
+        private CountingDocuments(List<Document> documents) {
+            this.documents = documents;
+        }
+
+        @Override
+        public Iterator<Document> iterator() {
+            final Iterator<Document> iterator = documents.iterator();
+            return new Iterator<Document>() {
+                @Override
+                public boolean hasNext() {
+                    return iterator.hasNext();
+                }
+
+                @Override
+                public Document next() {
+                    pulled.incrementAndGet();
+                    return iterator.next();
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+    }
+}
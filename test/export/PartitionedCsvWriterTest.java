@@ -0,0 +1,152 @@
+package export;
+
+import com.google.common.base.Charsets;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PartitionedCsvWriterTest {
+
+    private static final byte[] HEADER = "header\n".getBytes(Charsets.UTF_8);
+
+    // Rows of a 64 KB block
+    private static final int ROW_LENGTH = 1024;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void writesPartitionsWithBoundedThreads() throws IOException {
+        File directory = folder.getRoot();
+        try (PartitionedCsvWriter writer = new PartitionedCsvWriter(directory, "export", ".csv",
+                TestSinks.memoryFileFactory(), HEADER, 100, 3)) {
+            for (int row = 0; row < 1000; row++) {
+                write(writer, "p" + row % 50, row, "row" + row + "\n");
+            }
+            assertTrue(countWriterThreads() <= 3);
+            writer.commit();
+
+            assertEquals(50, writer.getRowCounts().size());
+            assertEquals(Long.valueOf(20), writer.getRowCounts().get("p7"));
+        }
+        String partition = new String(Files.readAllBytes(new File(directory, "export_p7.csv").toPath()), Charsets.UTF_8);
+        assertTrue(partition, partition.startsWith("header\nrow7\nrow57\n"));
+        assertTrue(new File(directory, "export.manifest").isFile());
+    }
+
+    @Test
+    public void rejectsPartitionOverLimit() throws IOException {
+        try (PartitionedCsvWriter writer = new PartitionedCsvWriter(folder.getRoot(), "export", ".csv",
+                TestSinks.memoryFileFactory(), HEADER, 2, 2)) {
+            write(writer, "a", 1, "row1\n");
+            write(writer, "b", 2, "row2\n");
+            try {
+                write(writer, "c", 3, "row3\n");
+                fail("Partition over the limit");
+            } catch (IOException e) {
+                assertTrue(!(e instanceof PartitionedCsvWriter.PartitionWriteException));
+            }
+            // Existing partitions are still written
+            write(writer, "a", 4, "row4\n");
+            writer.commit();
+            assertEquals(Long.valueOf(2), writer.getRowCounts().get("a"));
+        }
+    }
+
+    @Test
+    public void reportsRowsLostByFailedPartition() throws IOException {
+        // The sink of the partition fails on the second block: the rows of the first block are written
+        final int failingBlock = 2;
+        CsvSink.Factory factory = new CsvSink.Factory() {
+            @Override
+            public CsvSink create(File target) throws IOException {
+                final CsvSink sink = TestSinks.memoryFileFactory().create(target);
+                if (!target.getName().contains("failing")) {
+                    return sink;
+                }
+                return new CsvSink() {
+
+                    private int writes;
+
+                    @Override
+                    public void write(byte[] bytes, int offset, int length) throws IOException {
+                        // The header is the first write
+                        if (++writes == failingBlock + 1) {
+                            throw new IOException("Disk failure");
+                        }
+                        sink.write(bytes, offset, length);
+                    }
+
+                    @Override
+                    public void commit() throws IOException {
+                        sink.commit();
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                        sink.close();
+                    }
+                };
+            }
+        };
+
+        int rowsPerBlock = 64 * 1024 / ROW_LENGTH;
+        int rows = rowsPerBlock * 4;
+        Set<Long> lost = new HashSet<>();
+        try (PartitionedCsvWriter writer = new PartitionedCsvWriter(folder.getRoot(), "export", ".csv", factory, HEADER)) {
+            try {
+                for (int row = 0; row < rows; row++) {
+                    write(writer, "healthy", -row, line(row));
+                    write(writer, "failing", row, line(row));
+                }
+                writer.commit();
+                fail("Failed partition committed");
+            } catch (PartitionedCsvWriter.PartitionWriteException e) {
+                assertEquals("failing", e.getPartition());
+                for (long rowId : e.getLostRowIds()) {
+                    lost.add(rowId);
+                }
+            }
+        }
+
+        // Rows of the first block are written, the rows from the failed block on are lost
+        assertTrue(!lost.isEmpty());
+        for (long row = 0; row < rowsPerBlock + lost.size(); row++) {
+            assertEquals(Long.toString(row), row >= rowsPerBlock, lost.contains(row));
+        }
+    }
+
+    private static String line(int row) {
+        StringBuilder line = new StringBuilder(ROW_LENGTH);
+        line.append(row);
+        while (line.length() < ROW_LENGTH - 1) {
+            line.append('x');
+        }
+        return line.append('\n').toString();
+    }
+
+    private static void write(PartitionedCsvWriter writer, String partition, long rowId, String line) throws IOException {
+        byte[] bytes = line.getBytes(Charsets.UTF_8);
+        writer.write(partition, rowId, bytes, 0, bytes.length);
+    }
+
+    private static int countWriterThreads() {
+        int count = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().startsWith("csv-export-partition-writer-") && thread.isAlive()) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,119 @@
+package export;
+
+import com.google.common.base.Charsets;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RollingCsvSinkTest {
+
+    private static final byte[] HEADER = "header\n".getBytes(Charsets.UTF_8);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void publishesPartsOnlyOnCommit() throws IOException {
+        File directory = folder.getRoot();
+        RollingCsvSink sink = createSink(directory, 2);
+        for (int i = 0; i < 5; i++) {
+            write(sink, "row" + i + "\n");
+        }
+        assertEquals(0, listParts(directory).size());
+
+        sink.commit();
+        sink.close();
+
+        assertEquals(Arrays.asList("export_part001.csv", "export_part002.csv", "export_part003.csv"), listParts(directory));
+        assertEquals("header\nrow4\n", new String(Files.readAllBytes(sink.getCommittedParts().get(2).toPath()), Charsets.UTF_8));
+        assertEquals(0, listPending(directory).size());
+    }
+
+    @Test
+    public void deletesPendingPartsWithoutCommit() throws IOException {
+        File directory = folder.getRoot();
+        RollingCsvSink sink = createSink(directory, 1);
+        for (int i = 0; i < 3; i++) {
+            write(sink, "row" + i + "\n");
+        }
+        assertEquals(2, listPending(directory).size());
+
+        sink.close();
+
+        assertEquals(0, listPending(directory).size());
+        assertEquals(0, listParts(directory).size());
+        assertTrue(sink.getCommittedParts().isEmpty());
+    }
+
+    @Test
+    public void widensPartNumbersPastThreeDigits() throws IOException {
+        File directory = folder.getRoot();
+        RollingCsvSink sink = createSink(directory, 1);
+        for (int i = 0; i < 1001; i++) {
+            write(sink, "row" + i + "\n");
+        }
+        sink.commit();
+        sink.close();
+
+        List<String> parts = listParts(directory);
+        assertEquals(1001, parts.size());
+        assertEquals("export_part0001.csv", parts.get(0));
+        assertEquals("export_part1001.csv", parts.get(1000));
+        // Name order is the order of writing
+        for (int i = 0; i < parts.size(); i++) {
+            assertEquals("header\nrow" + i + "\n",
+                    new String(Files.readAllBytes(new File(directory, parts.get(i)).toPath()), Charsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void commitsHeaderOnlyPartWithoutRows() throws IOException {
+        File directory = folder.getRoot();
+        RollingCsvSink sink = createSink(directory, 10);
+        sink.commit();
+        sink.close();
+
+        assertEquals(Arrays.asList("export_part001.csv"), listParts(directory));
+    }
+
+    private static RollingCsvSink createSink(File directory, long maxPartRows) {
+        return new RollingCsvSink(directory, "export", ".csv", TestSinks.memoryFileFactory(), HEADER, 0, maxPartRows);
+    }
+
+    private static void write(CsvSink sink, String line) throws IOException {
+        byte[] bytes = line.getBytes(Charsets.UTF_8);
+        sink.write(bytes, 0, bytes.length);
+    }
+
+    private static List<String> listParts(File directory) {
+        List<String> parts = new ArrayList<>();
+        for (String name : directory.list()) {
+            if (name.endsWith(".csv")) {
+                parts.add(name);
+            }
+        }
+        Collections.sort(parts);
+        return parts;
+    }
+
+    private static List<String> listPending(File directory) {
+        List<String> pending = new ArrayList<>();
+        for (String name : directory.list()) {
+            if (name.endsWith(".pending")) {
+                pending.add(name);
+            }
+        }
+        return pending;
+    }
+}
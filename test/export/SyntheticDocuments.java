@@ -0,0 +1,229 @@
+package export;
+
+// Project imports:
+//      Document
+//      DocStates
+//      SpecificDocumentType
+
+import org.apache.commons.lang.time.DateUtils;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.math.BigDecimal;
+import java.util.AbstractCollection;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import static org.mockito.Mockito.RETURNS_DEFAULTS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * Generated A/B deposit documents for the soak tests.
+ * <p>
+ * Documents are generated lazily from their index, so millions of documents take no memory: the collection
+ * hands out a ring of {@link #RING_SIZE} reusable stub-only documents, each one is reset to the next index.
+ * A document is reused after {@link #RING_SIZE} further documents, so consumers must not hold more documents
+ * than that at once (the sequential export holds a block, the parallel one its chunks in flight).
+ * <p>
+ * Even indexes are deposits of type {@link DepositType#A} with the deposit type id {@link #A_TYPE_ID}, odd ones
+ * of type {@link DepositType#B} with {@link #B_TYPE_ID}. Every <tt>notFinalEvery</tt>-th document is not in a final
+ * state and every <tt>otherDayEvery</tt>-th one is modified the day before, the others are modified today in the
+ * <tt>(lastModifyDate, docId)</tt> order.
+ */
+final class SyntheticDocuments extends AbstractCollection<Document> {
+
+    static final long A_TYPE_ID = 1;
+    static final long B_TYPE_ID = 2;
+
+    static final int RING_SIZE = 1 << 16;
+
+    private static final long DAY = 24L * 60 * 60 * 1000;
+
+    private static final String NOT_FINAL_STATE = "SYNTHETIC_IN_PROCESS";
+
+    private static final String[] CURRENCIES = {"USD", "EUR", "GBP", "CHF", "JPY"};
+
+    private final long count;
+    private final int notFinalEvery;
+    private final int otherDayEvery;
+    private final long startOfToday;
+
+    /**
+     * @param count         Number of documents
+     * @param notFinalEvery Period of the documents not in a final state, <tt>0</tt> for none
+     * @param otherDayEvery Period of the documents modified the day before, <tt>0</tt> for none
+     * @param today         Day of the export
+     */
+    SyntheticDocuments(long count, int notFinalEvery, int otherDayEvery, Date today) {
+        this.count = count;
+        this.notFinalEvery = notFinalEvery;
+        this.otherDayEvery = otherDayEvery;
+        this.startOfToday = DateUtils.truncate(today, Calendar.DAY_OF_MONTH).getTime();
+    }
+
+    /**
+     * @return Number of the documents exported by a full export of today
+     */
+    long getExportedCount() {
+        long exported = 0;
+        for (long index = 0; index < count; index++) {
+            if (isFinal(index) && !isOtherDay(index)) {
+                exported++;
+            }
+        }
+        return exported;
+    }
+
+    /**
+     * @return Deposit type of the document index
+     */
+    static DepositType getDepositType(long index) {
+        return index % 2 == 0 ? DepositType.A : DepositType.B;
+    }
+
+    /**
+     * @param index Document index
+     *
+     * @return Standalone document of the index, not reused
+     */
+    Document get(long index) {
+        DocumentAnswer answer = new DocumentAnswer();
+        Document document = mock(Document.class, withSettings().stubOnly().defaultAnswer(answer));
+        answer.reset(index);
+        return document;
+    }
+
+    @Override
+    public Iterator<Document> iterator() {
+        return new Iterator<Document>() {
+
+            private final Document[] ring = new Document[(int) Math.min(RING_SIZE, Math.max(count, 1))];
+            private final DocumentAnswer[] answers = new DocumentAnswer[ring.length];
+            private long index;
+
+            @Override
+            public boolean hasNext() {
+                return index < count;
+            }
+
+            @Override
+            public Document next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                int slot = (int) (index % ring.length);
+                if (ring[slot] == null) {
+                    answers[slot] = new DocumentAnswer();
+                    ring[slot] = mock(Document.class, withSettings().stubOnly().defaultAnswer(answers[slot]));
+                }
+                answers[slot].reset(index++);
+                return ring[slot];
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    @Override
+    public int size() {
+        return (int) Math.min(count, Integer.MAX_VALUE);
+    }
+
+    private boolean isFinal(long index) {
+        return notFinalEvery <= 0 || index % notFinalEvery != notFinalEvery - 1;
+    }
+
+    private boolean isOtherDay(long index) {
+        return otherDayEvery > 0 && index % otherDayEvery == otherDayEvery - 1;
+    }
+
+    /**
+     * Answers of a reusable document: attributes and fields of the current index
+     */
+    private final class DocumentAnswer implements Answer<Object> {
+
+        private final Map<String, Object> fields = new HashMap<>();
+        private final Map<String, Object> states = new HashMap<>();
+        private long docId;
+        private Date lastModifyDate;
+        private String state;
+
+        private void reset(long index) {
+            docId = index + 1;
+            // Today's documents are spread over the day in the index order
+            lastModifyDate = new Date(isOtherDay(index) ? startOfToday - DAY + index % DAY : startOfToday + index % DAY);
+            state = isFinal(index) ? DocStates.IMPLEMENTED : NOT_FINAL_STATE;
+            String currency = CURRENCIES[(int) (index % CURRENCIES.length)];
+            String altCurrency = CURRENCIES[(int) ((index + 1) % CURRENCIES.length)];
+            fields.clear();
+            fields.put(SpecificDocumentType.FIELD_DEPOSITTYPEID, getDepositType(index) == DepositType.A ? A_TYPE_ID : B_TYPE_ID);
+            fields.put(SpecificDocumentType.FIELD_STRUCTUREID, 1000000L + index);
+            fields.put(SpecificDocumentType.FIELD_CONTRACTDATE, new Date(startOfToday - index % 30 * DAY));
+            fields.put(SpecificDocumentType.FIELD_DEPOSITTERMENDDATE, new Date(startOfToday + index % 365 * DAY));
+            fields.put(SpecificDocumentType.FIELD_EPOSITSUMCURRCODEISO, currency);
+            fields.put(SpecificDocumentType.FIELD_DEPOSITSUMCURRCODEISO, currency);
+            fields.put(SpecificDocumentType.FIELD_DEPOSITSUMALTCURRCODEISO, altCurrency);
+            fields.put(SpecificDocumentType.FIELD_BASEASSET, currency + altCurrency);
+            fields.put(SpecificDocumentType.FIELD_BASEINTERESTRATE, BigDecimal.valueOf(index % 1000, 2));
+            fields.put(SpecificDocumentType.FIELD_DEPOSITSUM, BigDecimal.valueOf(100000 + index % 100000, 2));
+            if (getDepositType(index) == DepositType.A) {
+                fields.put(SpecificDocumentType.FIELD_PREMIUM, BigDecimal.valueOf(index % 5000, 2));
+                fields.put(SpecificDocumentType.FIELD_PREMIUMCURRCODEISO, currency);
+                fields.put(SpecificDocumentType.FIELD_DELTA, BigDecimal.valueOf(index % 100, 2));
+            } else {
+                fields.put(SpecificDocumentType.FIELD_STRIKERANGELOWERBOUND, BigDecimal.valueOf(9000 + index % 500, 4));
+                fields.put(SpecificDocumentType.FIELD_STRIKERANGEUPPERBOUND, BigDecimal.valueOf(11000 + index % 500, 4));
+            }
+        }
+
+        @Override
+        public Object answer(InvocationOnMock invocation) throws Throwable {
+            String method = invocation.getMethod().getName();
+            if ("getDocId".equals(method)) {
+                return docId;
+            }
+            if ("getLastModifyDate".equals(method)) {
+                return lastModifyDate;
+            }
+            if ("getBankDocState".equals(method)) {
+                return getState(invocation.getMethod().getReturnType());
+            }
+            if ("getFieldValue".equals(method)) {
+                return fields.get((String) invocation.getArguments()[0]);
+            }
+            if ("getStringFieldValue".equals(method)) {
+                Object value = fields.get((String) invocation.getArguments()[0]);
+                return value != null ? value.toString() : null;
+            }
+            return RETURNS_DEFAULTS.answer(invocation);
+        }
+
+        /**
+         * @return Stub-only state of the current state name, the state type is the return type of the document
+         */
+        private Object getState(Class<?> stateType) {
+            Object stateStub = states.get(state);
+            if (stateStub == null) {
+                final String systemName = state;
+                stateStub = mock(stateType, withSettings().stubOnly().defaultAnswer(new Answer<Object>() {
+                    @Override
+                    public Object answer(InvocationOnMock invocation) throws Throwable {
+                        return "getSystemName".equals(invocation.getMethod().getName())
+                                ? systemName
+                                : RETURNS_DEFAULTS.answer(invocation);
+                    }
+                }));
+                states.put(state, stateStub);
+            }
+            return stateStub;
+        }
+    }
+}
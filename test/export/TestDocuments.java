@@ -0,0 +1,66 @@
+package export;
+
+// Project imports:
+//      Document
+
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * Stand-ins of the platform documents for the offline tests: stub-only mocks backed by the field values
+ */
+final class TestDocuments {
+
+    private TestDocuments() {
+    }
+
+    /**
+     * @param docId          Document id
+     * @param lastModifyTime Modify time
+     * @param state          System name of the document state
+     *
+     * @return Document without fields
+     */
+    static Document document(long docId, long lastModifyTime, String state) {
+        return document(docId, lastModifyTime, state, Collections.<String, Object>emptyMap());
+    }
+
+    /**
+     * @param docId          Document id
+     * @param lastModifyTime Modify time
+     * @param state          System name of the document state
+     * @param fields         Field values by field names
+     *
+     * @return Document with the fields
+     */
+    static Document document(long docId, long lastModifyTime, String state, final Map<String, ?> fields) {
+        Document document = mock(Document.class, withSettings().stubOnly().defaultAnswer(RETURNS_DEEP_STUBS));
+        when(document.getDocId()).thenReturn(docId);
+        when(document.getLastModifyDate()).thenReturn(new Date(lastModifyTime));
+        when(document.getBankDocState().getSystemName()).thenReturn(state);
+        when(document.getFieldValue(anyString())).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) {
+                return fields.get((String) invocation.getArguments()[0]);
+            }
+        });
+        when(document.getStringFieldValue(anyString())).thenAnswer(new Answer<String>() {
+            @Override
+            public String answer(InvocationOnMock invocation) {
+                Object value = fields.get((String) invocation.getArguments()[0]);
+                return value != null ? value.toString() : null;
+            }
+        });
+        return document;
+    }
+}
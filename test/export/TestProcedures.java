@@ -0,0 +1,64 @@
+package export;
+
+// Project imports:
+//      ParameterSet
+//      TaskToken
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.mockito.Mockito.RETURNS_DEFAULTS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * Stand-ins of the platform procedure arguments for the offline tests
+ */
+final class TestProcedures {
+
+    private TestProcedures() {
+    }
+
+    /**
+     * @param depositTypeCache Deposit types of the exported documents
+     * @param sinkFactory      Factory of the export sinks
+     *
+     * @return Export procedure logging warnings only
+     */
+    static CsvExportProc exportProc(DepositTypeCache depositTypeCache, CsvSink.Factory sinkFactory) {
+        Logger logger = Logger.getLogger(CsvExportProc.class.getName() + ".offline");
+        logger.setLevel(Level.WARN);
+        CsvExportProc proc = new CsvExportProc();
+        proc.setLogger(logger);
+        proc.setDepositTypeCache(depositTypeCache);
+        proc.setSinkFactory(sinkFactory);
+        return proc;
+    }
+
+    /**
+     * @param values Param values by param names
+     *
+     * @return Procedure params answering the values, other params are absent
+     */
+    static ParameterSet params(Map<String, String> values) {
+        final Map<String, String> params = new HashMap<>(values);
+        return mock(ParameterSet.class, withSettings().stubOnly().defaultAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                if ("get".equals(invocation.getMethod().getName())) {
+                    return params.get((String) invocation.getArguments()[0]);
+                }
+                return RETURNS_DEFAULTS.answer(invocation);
+            }
+        }));
+    }
+
+    static TaskToken taskToken() {
+        return mock(TaskToken.class, withSettings().stubOnly());
+    }
+}
@@ -0,0 +1,125 @@
+package export;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sinks of the offline tests writing the target file on commit
+ */
+final class TestSinks {
+
+    private TestSinks() {
+    }
+
+    /**
+     * @return Factory of the sinks buffering the output in memory until commit
+     */
+    static CsvSink.Factory memoryFileFactory() {
+        return new CsvSink.Factory() {
+            @Override
+            public CsvSink create(File target) {
+                return new MemoryFileSink(target);
+            }
+        };
+    }
+
+    /**
+     * Factory of the sinks counting the committed lines and bytes, the output is discarded
+     */
+    static final class CountingSinkFactory implements CsvSink.Factory {
+
+        private final AtomicLong committedLines = new AtomicLong();
+        private final AtomicLong committedBytes = new AtomicLong();
+
+        @Override
+        public CsvSink create(File target) {
+            return new CsvSink() {
+
+                private long lines;
+                private long bytes;
+
+                @Override
+                public void write(byte[] source, int offset, int length) {
+                    for (int i = offset; i < offset + length; i++) {
+                        if (source[i] == '\n') {
+                            lines++;
+                        }
+                    }
+                    bytes += length;
+                }
+
+                @Override
+                public void commit() {
+                    committedLines.addAndGet(lines);
+                    committedBytes.addAndGet(bytes);
+                }
+
+                @Override
+                public void close() {
+                }
+            };
+        }
+
+        /**
+         * @return Lines of the committed sinks, headers included
+         */
+        long getCommittedLines() {
+            return committedLines.get();
+        }
+
+        long getCommittedBytes() {
+            return committedBytes.get();
+        }
+
+        void reset() {
+            committedLines.set(0);
+            committedBytes.set(0);
+        }
+    }
+
+    static final class MemoryFileSink implements CsvSink {
+
+        private final File target;
+        private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        private boolean committed;
+        private boolean closed;
+
+        MemoryFileSink(File target) {
+            this.target = target;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            if (committed || closed) {
+                throw new IOException("Sink is finished");
+            }
+            output.write(bytes, offset, length);
+        }
+
+        @Override
+        public void commit() throws IOException {
+            Files.write(target.toPath(), output.toByteArray());
+            committed = true;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+
+        byte[] toByteArray() {
+            return output.toByteArray();
+        }
+
+        boolean isCommitted() {
+            return committed;
+        }
+
+        boolean isClosed() {
+            return closed;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package permission;
+
+// Project imports:
+//      CryptoProfile
+//      CustomPermissionContext
+//      InfocryptCrypto
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class AccessDecisionCacheTest {
+
+    private static final long USER_ID = 1;
+    private static final long ORG_ID = 10;
+
+    @Test
+    public void keyChangesWhenCryptoTypeSwitchedOff() {
+        CryptoProfile profile = ieaProfile();
+        AccessDecisionCache.Key before = key(context(profile));
+
+        SyntheticPermissions.setCryptoTypeUsed(profile, false);
+
+        AccessDecisionCache.Key after = key(context(profile));
+        assertFalse(before.equals(after));
+        SyntheticPermissions.setCryptoTypeUsed(profile, true);
+        assertEquals(before, key(context(profile)));
+    }
+
+    @Test
+    public void revokedInfocryptProfileLosesCachedFullAccess() {
+        CustomPermission permission = new CustomPermission();
+        AccessDecisionCache decisionCache = new AccessDecisionCache();
+        permission.setDecisionCache(decisionCache);
+        CryptoProfile profile = ieaProfile();
+
+        assertEquals(AccessDecision.INDIVIDUAL_EXECUTIVE_AGENCY.getAccessMode(),
+                permission.getAccessMode(null, context(profile)));
+        assertEquals(AccessDecision.INDIVIDUAL_EXECUTIVE_AGENCY.getAccessMode(),
+                permission.getAccessMode(null, context(profile)));
+        assertEquals(1, decisionCache.getHitCount());
+
+        // The crypto type is switched off, the profile version stays the same
+        SyntheticPermissions.setCryptoTypeUsed(profile, false);
+
+        assertEquals(AccessDecision.DEFAULT.getAccessMode(), permission.getAccessMode(null, context(profile)));
+    }
+
+    private static CryptoProfile ieaProfile() {
+        return SyntheticPermissions.profile(100, 1, InfocryptCrypto.CRYPTO_TYPE, true, true,
+                Arrays.asList(SyntheticPermissions.assignment(ORG_ID, true, true, null, null)));
+    }
+
+    private static CustomPermissionContext context(CryptoProfile profile) {
+        return SyntheticPermissions.context(USER_ID, Collections.<String>emptyList(),
+                Collections.singletonList(profile), Collections.singletonList(ORG_ID));
+    }
+
+    private static AccessDecisionCache.Key key(CustomPermissionContext context) {
+        return AccessDecisionCache.key(context, Collections.<Object>singleton(ORG_ID), false);
+    }
+}
@@ -0,0 +1,87 @@
+package permission;
+
+// Project imports:
+//      CryptoProfile
+//      CustomPermissionContext
+//      InfocryptCrypto
+//      SignAssignment
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+
+public class ContextFactsCacheTest {
+
+    private static final long USER_ID = 1;
+    private static final long ORG_ID = 10;
+    private static final String TRUSTEE_ROLE = "firstSpecialistRole";
+
+    @Test
+    public void factsAreSharedByHandlersAndContextsOfSameProfilesState() {
+        ContextFactsCache contextFactsCache = new ContextFactsCache();
+        CustomPermission trusteeHandler = handler(contextFactsCache, TRUSTEE_ROLE);
+        CustomPermission otherHandler = handler(contextFactsCache, "secondSpecialistRole");
+        CryptoProfile profile = ieaProfile(1);
+
+        // Contexts of two requests of the same user
+        for (CustomPermissionContext context : Arrays.asList(context(profile), context(profile))) {
+            assertEquals(AccessDecision.TRUSTEE_WITH_INFOCRYPT.getAccessMode(), trusteeHandler.getAccessMode(null, context));
+            assertEquals(AccessDecision.INDIVIDUAL_EXECUTIVE_AGENCY.getAccessMode(), otherHandler.getAccessMode(null, context));
+        }
+
+        assertEquals(1, contextFactsCache.getSize());
+        assertEquals(1, contextFactsCache.getMissCount());
+        assertEquals(3, contextFactsCache.getHitCount());
+    }
+
+    @Test
+    public void changedProfilesStateGetsNewFacts() {
+        ContextFactsCache contextFactsCache = new ContextFactsCache();
+        CustomPermission handler = handler(contextFactsCache, TRUSTEE_ROLE);
+        CryptoProfile profile = ieaProfile(1);
+        assertEquals(AccessDecision.TRUSTEE_WITH_INFOCRYPT.getAccessMode(), handler.getAccessMode(null, context(profile)));
+
+        // The crypto type is switched off, the profile version stays the same
+        SyntheticPermissions.setCryptoTypeUsed(profile, false);
+        assertEquals(AccessDecision.TRUSTEE_WITH_INFOCRYPT.getAccessMode(), handler.getAccessMode(null, context(profile)));
+        assertEquals(2, contextFactsCache.getSize());
+
+        // New version of the profile without the Individual Executive Agency assignment
+        CryptoProfile changed = SyntheticPermissions.profile(100, 2, InfocryptCrypto.CRYPTO_TYPE, true, true,
+                Collections.<SignAssignment>emptyList());
+        CustomPermission otherHandler = handler(contextFactsCache, "secondSpecialistRole");
+        assertEquals(AccessDecision.DEFAULT.getAccessMode(), otherHandler.getAccessMode(null, context(changed)));
+        assertEquals(3, contextFactsCache.getSize());
+        assertEquals(0, contextFactsCache.getHitCount());
+    }
+
+    @Test
+    public void invalidatesFactsOfUser() {
+        ContextFactsCache contextFactsCache = new ContextFactsCache();
+        handler(contextFactsCache, TRUSTEE_ROLE).getAccessMode(null, context(ieaProfile(1)));
+
+        contextFactsCache.invalidateUser(USER_ID + 1);
+        assertEquals(1, contextFactsCache.getSize());
+        contextFactsCache.invalidateUser(USER_ID);
+        assertEquals(0, contextFactsCache.getSize());
+    }
+
+    private static CustomPermission handler(ContextFactsCache contextFactsCache, String fullAccessRole) {
+        CustomPermission permission = new CustomPermission(Collections.singletonList(fullAccessRole));
+        permission.setContextFactsCache(contextFactsCache);
+        return permission;
+    }
+
+    private static CryptoProfile ieaProfile(long version) {
+        return SyntheticPermissions.profile(100, version, InfocryptCrypto.CRYPTO_TYPE, true, true,
+                Arrays.asList(SyntheticPermissions.assignment(ORG_ID, true, true, null, null)));
+    }
+
+    private static CustomPermissionContext context(CryptoProfile profile) {
+        return SyntheticPermissions.context(USER_ID, Collections.singletonList(TRUSTEE_ROLE),
+                Collections.singletonList(profile), Collections.singletonList(ORG_ID));
+    }
+}
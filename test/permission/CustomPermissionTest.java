@@ -0,0 +1,121 @@
+package permission;
+
+// Project imports:
+//      AccessMode
+//      CryptoProfile
+//      CustomPermissionContext
+//      InfocryptCrypto
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CustomPermissionTest {
+
+    private static final long USER_ID = 1;
+    private static final long TRUSTEE_USER_ID = 2;
+    private static final String TRUSTEE_ROLE = "firstSpecialistRole";
+
+    private static final List<List<Long>> ORG_ID_SETS = Arrays.asList(
+            Arrays.asList(10L), Arrays.asList(20L), Arrays.asList(30L), Arrays.asList(10L, 20L),
+            Arrays.asList(40L), Collections.<Long>emptyList());
+
+    @Test
+    public void bulkDecisionsEqualSingleContextDecisions() {
+        assertBulkEqualsSingle(new CustomPermission(Collections.singletonList(TRUSTEE_ROLE)), profiles());
+    }
+
+    @Test
+    public void bulkDecisionsEqualSingleContextDecisionsWithCaches() {
+        CustomPermission permission = new CustomPermission(Collections.singletonList(TRUSTEE_ROLE));
+        AccessDecisionCache decisionCache = new AccessDecisionCache();
+        permission.setDecisionCache(decisionCache);
+        permission.setContextFactsCache(new ContextFactsCache());
+
+        assertBulkEqualsSingle(permission, profiles());
+        // The bulk decisions are cached and reused by the single-context ones
+        assertTrue(decisionCache.getSize() > 0);
+        assertTrue(decisionCache.getHitCount() > 0);
+    }
+
+    @Test
+    public void bulkDecisionsEqualSingleContextDecisionsWithEligibilityView() {
+        CustomPermission permission = new CustomPermission(Collections.singletonList(TRUSTEE_ROLE));
+        IeaEligibilityView view = new IeaEligibilityView();
+        AccessDecisionCache decisionCache = new AccessDecisionCache();
+        ContextFactsCache contextFactsCache = new ContextFactsCache();
+        view.setDecisionCache(decisionCache);
+        view.setContextFactsCache(contextFactsCache);
+        permission.setDecisionCache(decisionCache);
+        permission.setContextFactsCache(contextFactsCache);
+        permission.setEligibilityView(view);
+        // The view holds the assignment of the organization 40 published with the profiles state of the contexts,
+        // so the decisions of the view differ from the evaluation of the context profiles
+        List<CryptoProfile> profiles = profiles();
+        view.onApplicationEvent(CryptoProfileChangeEvent.profilesChanged(this, USER_ID, Arrays.asList(
+                SyntheticPermissions.profile(100, 1, InfocryptCrypto.CRYPTO_TYPE, true, true,
+                        Arrays.asList(SyntheticPermissions.assignment(40, true, true, null, null))),
+                profiles.get(1))));
+
+        List<AccessMode> accessModes = assertBulkEqualsSingle(permission, profiles);
+        assertEquals(AccessMode.FULL_ACCESS, accessModes.get(ORG_ID_SETS.indexOf(Arrays.asList(40L))));
+    }
+
+    /**
+     * @return Access modes of the user contexts
+     */
+    private static List<AccessMode> assertBulkEqualsSingle(CustomPermission permission, List<CryptoProfile> profiles) {
+        List<AccessMode> userAccessModes = null;
+        for (long userId : Arrays.asList(USER_ID, TRUSTEE_USER_ID)) {
+            List<String> roles = userId == TRUSTEE_USER_ID
+                    ? Collections.singletonList(TRUSTEE_ROLE)
+                    : Collections.<String>emptyList();
+            List<CustomPermissionContext> contexts = new ArrayList<>();
+            for (List<Long> orgIds : ORG_ID_SETS) {
+                contexts.add(SyntheticPermissions.context(userId, roles, profiles, orgIds));
+            }
+
+            List<AccessMode> byContexts = permission.getAccessModes(contexts);
+            List<AccessMode> byOrgIdSets = permission.getAccessModes(contexts.get(0),
+                    new ArrayList<Collection<?>>(ORG_ID_SETS));
+
+            List<AccessMode> expected = new ArrayList<>();
+            for (CustomPermissionContext context : contexts) {
+                expected.add(permission.getAccessMode(null, context));
+            }
+            assertEquals(expected, byContexts);
+            assertEquals(expected, byOrgIdSets);
+            if (userId == USER_ID) {
+                userAccessModes = expected;
+            }
+        }
+        return userAccessModes;
+    }
+
+    /**
+     * @return Infocrypt profile with the Individual Executive Agency of the organization 10 and the other profile
+     *         with the current assignment of the organization 20 and the expired one of the organization 30
+     */
+    private static List<CryptoProfile> profiles() {
+        long now = System.currentTimeMillis();
+        Date yesterday = new Date(now - TimeUnit.DAYS.toMillis(1));
+        Date tomorrow = new Date(now + TimeUnit.DAYS.toMillis(1));
+        Date lastMonth = new Date(now - TimeUnit.DAYS.toMillis(30));
+        Date lastWeek = new Date(now - TimeUnit.DAYS.toMillis(7));
+        return Arrays.asList(
+                SyntheticPermissions.profile(100, 1, InfocryptCrypto.CRYPTO_TYPE, true, true,
+                        Arrays.asList(SyntheticPermissions.assignment(10, true, true, null, null))),
+                SyntheticPermissions.profile(200, 1, SyntheticPermissions.OTHER_CRYPTO_TYPE, true, true,
+                        Arrays.asList(SyntheticPermissions.assignment(20, true, false, yesterday, tomorrow),
+                                SyntheticPermissions.assignment(30, true, false, lastMonth, lastWeek))));
+    }
+}
@@ -0,0 +1,137 @@
+package permission;
+
+// Project imports:
+//      CryptoProfile
+//      SignAssignment
+//      InfocryptCrypto
+//      CustomPermissionContext
+//      DateUtilities
+
+import org.apache.commons.lang.time.DateUtils;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Property checks of the index against the linear scan of {@link CustomPermission#isIndividualExecutiveAgencyByScan}
+ * over random profiles. Period bounds and checked times are drawn around the day boundaries, where the whole-day
+ * widening of the index meets the soft range of {@link DateUtilities#isDateInSoftRange}.
+ */
+public class IeaAssignmentIndexTest {
+
+    private static final long SEED = 20261018L;
+    private static final int CASES = 2000;
+    private static final int TIMES_PER_CASE = 40;
+
+    private static final long DAY = 24L * 60 * 60 * 1000;
+    private static final long BASE_DAY = DateUtils.truncate(new Date(1767225600000L), Calendar.DAY_OF_MONTH).getTime();
+    private static final int DAYS = 6;
+    private static final int ORGS = 4;
+
+    @Test
+    public void decidesAsLinearScan() {
+        Random random = new Random(SEED);
+        for (int i = 0; i < CASES; i++) {
+            List<CryptoProfile> profiles = randomProfiles(random);
+            List<Long> orgIds = randomOrgIds(random);
+            CustomPermissionContext context = SyntheticPermissions.context(1, Collections.<String>emptyList(), profiles, orgIds);
+            IeaAssignmentIndex index = IeaAssignmentIndex.build(profiles);
+            for (int j = 0; j < TIMES_PER_CASE; j++) {
+                Date today = new Date(randomTime(random));
+                assertEquals(describe(i, today), CustomPermission.isIndividualExecutiveAgencyByScan(context, today),
+                        index.isActive(orgIds, today));
+            }
+        }
+    }
+
+    @Test
+    public void keepsDecisionUntilNextBoundary() {
+        Random random = new Random(SEED + 1);
+        for (int i = 0; i < CASES; i++) {
+            List<CryptoProfile> profiles = randomProfiles(random);
+            List<Long> orgIds = randomOrgIds(random);
+            CustomPermissionContext context = SyntheticPermissions.context(1, Collections.<String>emptyList(), profiles, orgIds);
+            IeaAssignmentIndex index = IeaAssignmentIndex.build(profiles);
+            for (int j = 0; j < TIMES_PER_CASE / 4; j++) {
+                long now = randomTime(random);
+                long boundary = index.nextBoundary(orgIds, now);
+                assertTrue(describe(i, new Date(now)), boundary > now);
+                boolean decision = CustomPermission.isIndividualExecutiveAgencyByScan(context, new Date(now));
+
+                // The scan decision holds at any time before the boundary the decision is cached until
+                long last = boundary == Long.MAX_VALUE ? BASE_DAY + (DAYS + 2) * DAY : boundary - 1;
+                for (long time : new long[]{now + 1, (now / 2 + last / 2), last}) {
+                    if (time > now && time <= last) {
+                        assertEquals(describe(i, new Date(time)), decision,
+                                CustomPermission.isIndividualExecutiveAgencyByScan(context, new Date(time)));
+                    }
+                }
+            }
+        }
+    }
+
+    private static List<CryptoProfile> randomProfiles(Random random) {
+        List<CryptoProfile> profiles = new ArrayList<>();
+        int profileCount = random.nextInt(4);
+        for (int i = 0; i < profileCount; i++) {
+            List<SignAssignment> assignments = new ArrayList<>();
+            int assignmentCount = random.nextInt(5);
+            for (int j = 0; j < assignmentCount; j++) {
+                assignments.add(SyntheticPermissions.assignment(
+                        1 + random.nextInt(ORGS),
+                        random.nextInt(4) > 0,
+                        random.nextInt(8) == 0,
+                        random.nextInt(6) == 0 ? null : new Date(randomTime(random)),
+                        random.nextInt(6) == 0 ? null : new Date(randomTime(random))));
+            }
+            profiles.add(SyntheticPermissions.profile(i, 1,
+                    random.nextInt(5) > 0 ? InfocryptCrypto.CRYPTO_TYPE : SyntheticPermissions.OTHER_CRYPTO_TYPE,
+                    random.nextInt(5) > 0, random.nextInt(5) > 0, assignments));
+        }
+        return profiles;
+    }
+
+    private static List<Long> randomOrgIds(Random random) {
+        List<Long> orgIds = new ArrayList<>();
+        for (long orgId = 1; orgId <= ORGS + 1; orgId++) {
+            if (random.nextBoolean()) {
+                orgIds.add(orgId);
+            }
+        }
+        return orgIds;
+    }
+
+    /**
+     * @return Time near a day boundary: the start or the last millisecond of a day, a millisecond around them,
+     *         or a time inside the day
+     */
+    private static long randomTime(Random random) {
+        long dayStart = BASE_DAY + random.nextInt(DAYS) * DAY;
+        switch (random.nextInt(6)) {
+            case 0:
+                return dayStart;
+            case 1:
+                return dayStart - 1;
+            case 2:
+                return dayStart + 1;
+            case 3:
+                return dayStart + DAY - 1;
+            case 4:
+                return dayStart + DAY / 2;
+            default:
+                return dayStart + (long) (random.nextDouble() * DAY);
+        }
+    }
+
+    private static String describe(int testCase, Date time) {
+        return String.format("Case %s at %tF %<tT.%<tL", testCase, time);
+    }
+}
@@ -0,0 +1,181 @@
+package permission;
+
+// Project imports:
+//      CryptoProfile
+//      CustomPermissionContext
+//      InfocryptCrypto
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class IeaEligibilityViewTest {
+
+    private static final long USER_ID = 1;
+    private static final long OTHER_USER_ID = 2;
+    private static final long ORG_ID = 10;
+    private static final long OTHER_ORG_ID = 20;
+
+    @Test
+    public void unknownUserIsDecidedFromContextAndNotPublished() {
+        IeaEligibilityView view = new IeaEligibilityView();
+        CustomPermission permission = new CustomPermission();
+        permission.setEligibilityView(view);
+
+        assertEquals(AccessDecision.INDIVIDUAL_EXECUTIVE_AGENCY.getAccessMode(),
+                permission.getAccessMode(null, context(ieaProfile(ORG_ID), ORG_ID)));
+        assertEquals(AccessDecision.DEFAULT.getAccessMode(),
+                permission.getAccessMode(null, context(ieaProfile(ORG_ID), OTHER_ORG_ID)));
+        assertEquals(0, view.getUserCount());
+        assertNull(view.getEligibleOrgIds(USER_ID));
+    }
+
+    @Test
+    public void knownUserIsDecidedByLookup() {
+        IeaEligibilityView view = new IeaEligibilityView();
+        CustomPermission permission = new CustomPermission();
+        permission.setEligibilityView(view);
+        // The event holds the assignments of the other organization, the context profile has the same state
+        view.onApplicationEvent(CryptoProfileChangeEvent.profilesChanged(this, USER_ID,
+                Collections.singletonList(ieaProfile(OTHER_ORG_ID))));
+
+        assertEquals(Collections.<Object>singleton(OTHER_ORG_ID), view.getEligibleOrgIds(USER_ID));
+        assertEquals(AccessDecision.INDIVIDUAL_EXECUTIVE_AGENCY.getAccessMode(),
+                permission.getAccessMode(null, context(ieaProfile(ORG_ID), OTHER_ORG_ID)));
+        assertEquals(AccessDecision.DEFAULT.getAccessMode(),
+                permission.getAccessMode(null, context(ieaProfile(ORG_ID), ORG_ID)));
+    }
+
+    @Test
+    public void profilesOtherThanEvaluatedAreDecidedFromContext() {
+        IeaEligibilityView view = new IeaEligibilityView();
+        CustomPermission permission = new CustomPermission();
+        permission.setEligibilityView(view);
+        CryptoProfile profile = ieaProfile(ORG_ID);
+        CustomPermissionContext context = context(profile, ORG_ID);
+        view.onApplicationEvent(CryptoProfileChangeEvent.profilesChanged(this, USER_ID, context.getCryptoProfiles()));
+        assertEquals(AccessDecision.INDIVIDUAL_EXECUTIVE_AGENCY.getAccessMode(), permission.getAccessMode(null, context));
+
+        // The crypto type is switched off, the profile version stays the same
+        SyntheticPermissions.setCryptoTypeUsed(profile, false);
+
+        assertEquals(AccessDecision.DEFAULT.getAccessMode(), permission.getAccessMode(null, context));
+        // The lookups do not change the view, only the events do
+        assertEquals(Collections.<Object>singleton(ORG_ID), view.getEligibleOrgIds(USER_ID));
+    }
+
+    @Test
+    public void eventsInvalidateCaches() {
+        IeaEligibilityView view = new IeaEligibilityView();
+        AccessDecisionCache decisionCache = new AccessDecisionCache();
+        ContextFactsCache contextFactsCache = new ContextFactsCache();
+        view.setDecisionCache(decisionCache);
+        view.setContextFactsCache(contextFactsCache);
+        CustomPermissionContext context = context(ieaProfile(ORG_ID), ORG_ID);
+
+        cache(decisionCache, contextFactsCache, context);
+        view.onApplicationEvent(CryptoProfileChangeEvent.profilesChanged(this, context.getUserId(), context.getCryptoProfiles()));
+        assertEquals(0, decisionCache.getSize());
+        assertEquals(0, contextFactsCache.getSize());
+        assertNotNull(view.getEligibleOrgIds(context.getUserId()));
+
+        cache(decisionCache, contextFactsCache, context);
+        view.onApplicationEvent(CryptoProfileChangeEvent.cryptoTypeChanged(this));
+        assertEquals(0, decisionCache.getSize());
+        assertEquals(0, contextFactsCache.getSize());
+
+        cache(decisionCache, contextFactsCache, context);
+        view.onApplicationEvent(CryptoProfileChangeEvent.userRemoved(this, context.getUserId()));
+        assertEquals(0, decisionCache.getSize());
+        assertEquals(0, contextFactsCache.getSize());
+        assertNull(view.getEligibleOrgIds(context.getUserId()));
+    }
+
+    @Test
+    public void rebuildInvalidatesChangedUsers() {
+        IeaEligibilityView view = new IeaEligibilityView();
+        AccessDecisionCache decisionCache = new AccessDecisionCache();
+        ContextFactsCache contextFactsCache = new ContextFactsCache();
+        view.setDecisionCache(decisionCache);
+        view.setContextFactsCache(contextFactsCache);
+        CustomPermissionContext context = context(ieaProfile(ORG_ID), ORG_ID);
+        view.rebuild(ImmutableMap.of(USER_ID, context.getCryptoProfiles()));
+
+        // Same profiles, the cached entries stay
+        cache(decisionCache, contextFactsCache, context);
+        view.rebuild(ImmutableMap.of(USER_ID, context.getCryptoProfiles()));
+        assertEquals(1, decisionCache.getSize());
+        assertEquals(1, contextFactsCache.getSize());
+
+        // Other eligible organizations with the same profiles state
+        view.rebuild(ImmutableMap.of(USER_ID, Collections.singletonList(ieaProfile(OTHER_ORG_ID))));
+        assertEquals(0, decisionCache.getSize());
+        assertEquals(0, contextFactsCache.getSize());
+        assertEquals(Collections.<Object>singleton(OTHER_ORG_ID), view.getEligibleOrgIds(USER_ID));
+    }
+
+    @Test
+    public void evictedUserDropsScheduledRefresh() {
+        IeaEligibilityView view = new IeaEligibilityView(1, 60);
+        view.start();
+        try {
+            view.onApplicationEvent(CryptoProfileChangeEvent.profilesChanged(this, USER_ID, limitedIeaProfiles()));
+            assertEquals(1, view.getScheduledRefreshCount());
+
+            view.onApplicationEvent(CryptoProfileChangeEvent.profilesChanged(this, OTHER_USER_ID, limitedIeaProfiles()));
+
+            assertEquals(1, view.getUserCount());
+            assertNull(view.getEligibleOrgIds(USER_ID));
+            assertEquals(1, view.getScheduledRefreshCount());
+        } finally {
+            view.stop();
+        }
+    }
+
+    private static void cache(AccessDecisionCache decisionCache,
+                              ContextFactsCache contextFactsCache,
+                              CustomPermissionContext context) {
+        Set<Object> orgIds = Collections.<Object>singleton(ORG_ID);
+        AccessDecisionCache.Key key = AccessDecisionCache.key(context, orgIds, false);
+        decisionCache.put(key, AccessDecision.INDIVIDUAL_EXECUTIVE_AGENCY, Long.MAX_VALUE, now());
+        contextFactsCache.get(key, context, orgIds, null);
+        assertEquals(1, decisionCache.getSize());
+        assertEquals(1, contextFactsCache.getSize());
+    }
+
+    /**
+     * @return Profile with the unlimited Individual Executive Agency assignment of the organization
+     */
+    private static CryptoProfile ieaProfile(long orgId) {
+        return SyntheticPermissions.profile(100, 1, InfocryptCrypto.CRYPTO_TYPE, true, true,
+                Arrays.asList(SyntheticPermissions.assignment(orgId, true, true, null, null)));
+    }
+
+    /**
+     * @return Profiles with the Individual Executive Agency assignment ending tomorrow, refreshed at its end
+     */
+    private static List<CryptoProfile> limitedIeaProfiles() {
+        Date tomorrow = new Date(now() + TimeUnit.DAYS.toMillis(1));
+        return Collections.singletonList(SyntheticPermissions.profile(100, 1, InfocryptCrypto.CRYPTO_TYPE, true, true,
+                Arrays.asList(SyntheticPermissions.assignment(ORG_ID, true, false, null, tomorrow))));
+    }
+
+    private static CustomPermissionContext context(CryptoProfile profile, long orgId) {
+        return SyntheticPermissions.context(USER_ID, Collections.<String>emptyList(),
+                Collections.singletonList(profile), Collections.singletonList(orgId));
+    }
+
+    private static long now() {
+        return System.currentTimeMillis();
+    }
+}
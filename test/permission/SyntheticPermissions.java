@@ -0,0 +1,204 @@
+package permission;
+
+// Project imports:
+//      CryptoProfile
+//      SignAssignment
+//      InfocryptCrypto
+//      CustomPermissionContext
+
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.mockito.Mockito.RETURNS_DEFAULTS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * Stand-ins of the platform permission classes for the offline tests.
+ * <p>
+ * Stand-ins are stub-only mocks answering the platform getters by the method name from the mutable value maps,
+ * so a test can change a value, e.g. switch a crypto type off, the way the platform objects change. Values of the
+ * platform classes nested in the stand-ins, e.g. the crypto type of a profile, are created from the getter
+ * return types.
+ */
+final class SyntheticPermissions {
+
+    static final String OTHER_CRYPTO_TYPE = "SYNTHETIC_CRYPTO";
+
+    // Values of the stand-ins by the stand-ins, the mocks keep the identity equality
+    private static final Map<Object, Map<String, Object>> STUB_VALUES =
+            Collections.synchronizedMap(new WeakHashMap<Object, Map<String, Object>>());
+
+    private SyntheticPermissions() {
+    }
+
+    /**
+     * @param id           Profile id
+     * @param version      Profile version
+     * @param cryptoType   Crypto type name, {@link InfocryptCrypto#CRYPTO_TYPE} for Infocrypt
+     * @param used         Crypto type usage
+     * @param allowSign    Sign permission of the profile
+     * @param assignments  Sign assignments of the profile
+     *
+     * @return Crypto profile
+     */
+    static CryptoProfile profile(long id,
+                                 long version,
+                                 String cryptoType,
+                                 boolean used,
+                                 boolean allowSign,
+                                 List<SignAssignment> assignments) {
+        Map<String, Object> cryptoTypeValues = new HashMap<>();
+        cryptoTypeValues.put("getName", cryptoType);
+        cryptoTypeValues.put("isUsed", used);
+        Map<Object, SignAssignment> signAssignments = new LinkedHashMap<>();
+        for (SignAssignment assignment : assignments) {
+            signAssignments.put(signAssignments.size(), assignment);
+        }
+        Map<String, Object> values = new HashMap<>();
+        values.put("getId", id);
+        values.put("getVersion", version);
+        values.put("getCryptoType", new Nested(cryptoTypeValues));
+        values.put("isAllowSign", allowSign);
+        values.put("getSignAssignments", signAssignments);
+        return stub(CryptoProfile.class, values);
+    }
+
+    /**
+     * @param orgId     Organization id
+     * @param iea       Individual Executive Agency assignment
+     * @param unlimited Unlimited assignment
+     * @param from      Period start, <tt>null</tt> for open start
+     * @param to        Period end, <tt>null</tt> for open end
+     *
+     * @return Sign assignment
+     */
+    static SignAssignment assignment(long orgId, boolean iea, boolean unlimited, Date from, Date to) {
+        Map<String, Object> orgValues = new HashMap<>();
+        orgValues.put("getId", orgId);
+        Map<String, Object> values = new HashMap<>();
+        values.put("getOrg", new Nested(orgValues));
+        values.put("isIndividualExecutiveAgency", iea);
+        values.put("isUnlimited", unlimited);
+        values.put("getPeriodFrom", from);
+        values.put("getPeriodTo", to);
+        return stub(SignAssignment.class, values);
+    }
+
+    /**
+     * @param userId         User id
+     * @param funcRoleNames  User roles
+     * @param cryptoProfiles User crypto profiles
+     * @param orgIds         Ids of the context organizations
+     *
+     * @return Handler context
+     */
+    static CustomPermissionContext context(long userId,
+                                           Collection<String> funcRoleNames,
+                                           List<CryptoProfile> cryptoProfiles,
+                                           Collection<Long> orgIds) {
+        List<CustomPermissionContext.PermissionOrg> orgs = new ArrayList<>(orgIds.size());
+        for (Long orgId : orgIds) {
+            orgs.add(stub(CustomPermissionContext.PermissionOrg.class, Collections.<String, Object>singletonMap("getOrgId", orgId)));
+        }
+        Map<String, Object> values = new HashMap<>();
+        values.put("getUserId", userId);
+        values.put("getFuncRoleNames", funcRoleNames);
+        values.put("getCryptoProfiles", Collections.unmodifiableList(new ArrayList<>(cryptoProfiles)));
+        values.put("getOrgs", Collections.unmodifiableList(orgs));
+        return stub(CustomPermissionContext.class, values);
+    }
+
+    /**
+     * Switches the crypto type of the profile on or off, the profile version is not changed
+     */
+    static void setCryptoTypeUsed(CryptoProfile profile, boolean used) {
+        STUB_VALUES.get(profile.getCryptoType()).put("isUsed", used);
+    }
+
+    private static <T> T stub(Class<T> type, Map<String, ?> values) {
+        StubAnswer answer = new StubAnswer(values);
+        T stub = mock(type, withSettings().stubOnly().defaultAnswer(answer));
+        STUB_VALUES.put(stub, answer.values);
+        return stub;
+    }
+
+    /**
+     * Values of a nested stand-in of the getter return type
+     */
+    private static final class Nested {
+
+        private final Map<String, ?> values;
+
+        private Nested(Map<String, ?> values) {
+            this.values = values;
+        }
+    }
+
+    private static final class StubAnswer implements Answer<Object> {
+
+        // Null value, the concurrent map has no nulls
+        private static final Object NULL = new Object();
+
+        private final Map<String, Object> values;
+        private final Map<String, Object> nested = new HashMap<>();
+
+        private StubAnswer(Map<String, ?> values) {
+            this.values = new ConcurrentHashMap<>();
+            for (Map.Entry<String, ?> entry : values.entrySet()) {
+                this.values.put(entry.getKey(), entry.getValue() != null ? entry.getValue() : NULL);
+            }
+        }
+
+        @Override
+        public Object answer(InvocationOnMock invocation) throws Throwable {
+            String method = invocation.getMethod().getName();
+            if (!values.containsKey(method)) {
+                return RETURNS_DEFAULTS.answer(invocation);
+            }
+            Object value = values.get(method);
+            if (value == NULL) {
+                return null;
+            }
+            if (value instanceof Nested) {
+                synchronized (nested) {
+                    Object stub = nested.get(method);
+                    if (stub == null) {
+                        stub = stub(invocation.getMethod().getReturnType(), ((Nested) value).values);
+                        nested.put(method, stub);
+                    }
+                    return stub;
+                }
+            }
+            return coerce(value, invocation.getMethod().getReturnType());
+        }
+
+        /**
+         * @return Number value of the numeric return type, e.g. the <tt>int</tt> version
+         */
+        private static Object coerce(Object value, Class<?> returnType) {
+            if (!(value instanceof Number)) {
+                return value;
+            }
+            Number number = (Number) value;
+            if (returnType == int.class || returnType == Integer.class) {
+                return number.intValue();
+            }
+            if (returnType == String.class) {
+                return number.toString();
+            }
+            return number;
+        }
+    }
+}